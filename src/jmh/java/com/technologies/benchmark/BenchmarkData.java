@@ -0,0 +1,98 @@
+package com.technologies.benchmark;
+
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.Account;
+import com.technologies.model.User;
+import com.technologies.service.AccountService;
+import com.technologies.service.UserService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Embedded H2 filled with accounts and users, shared by every benchmark thread.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkData {
+
+    static final int ACCOUNTS = 1000;
+    static final int USERS = 1000;
+    static final int HOT_ACCOUNTS = 8;
+    static final int HOT_PERCENT = 90;
+
+    AccountService accountService;
+    UserService userService;
+    long[] accountIds;
+    String[] userNames;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException, AccountTransferException {
+        DbConfig.getConnection().close();
+        accountService = new AccountService();
+        userService = new UserService();
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account();
+            account.setAccountNumber("BENCH-" + i);
+            account.setAccountBalance(new BigDecimal("1000000000.000"));
+            accountService.addAccount(account);
+        }
+        List<Account> accounts = accountService.getAccountsPage(null, ACCOUNTS * 2);
+        accountIds = accounts.stream().mapToLong(Account::getAccountId).toArray();
+
+        userNames = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setUserName("Bench User " + i);
+            user.setUserPhone("555-" + i);
+            user.setUserEmail("bench_" + i + "@bench.io");
+            userService.addUser(user);
+            userNames[i] = user.getUserName();
+        }
+    }
+
+    /**
+     * Any account with the same probability
+     */
+    long uniformAccount() {
+        return accountIds[ThreadLocalRandom.current().nextInt(accountIds.length)];
+    }
+
+    /**
+     * Most picks land on a few hot accounts, the rest are spread over all of them
+     */
+    long hotAccount() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < HOT_PERCENT) {
+            return accountIds[random.nextInt(HOT_ACCOUNTS)];
+        }
+        return accountIds[random.nextInt(accountIds.length)];
+    }
+
+    long account(boolean hot) {
+        return hot ? hotAccount() : uniformAccount();
+    }
+
+    /**
+     * Payee of a transfer from the account, never the account itself
+     */
+    long otherAccount(long fromAccountId, boolean hot) {
+        long toAccountId = account(hot);
+        if (toAccountId == fromAccountId) {
+            return accountIds[0] == fromAccountId ? accountIds[1] : accountIds[0];
+        }
+        return toAccountId;
+    }
+
+    String userName() {
+        return userNames[ThreadLocalRandom.current().nextInt(userNames.length)];
+    }
+
+}
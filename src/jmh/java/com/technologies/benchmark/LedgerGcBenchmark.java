@@ -0,0 +1,80 @@
+package com.technologies.benchmark;
+
+import com.technologies.transfer.BalanceTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Full GC pause with ledger balances on the heap and in the off-heap balance table.
+ *
+ * The heap storage is what the ledger kept before the table: a map of account objects
+ * with their own locks. Each operation is one System.gc(), a stop-the-world collection
+ * that traces everything alive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g", "-XX:+UseG1GC"})
+public class LedgerGcBenchmark {
+
+    @Param({"heap", "table"})
+    public String storage;
+
+    @Param({"1000000", "4000000"})
+    public int accounts;
+
+    private ConcurrentHashMap<Long, HeapAccount> heap;
+    private BalanceTable table;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("heap".equals(storage)) {
+            heap = new ConcurrentHashMap<>(accounts * 2);
+            for (long accountId = 1; accountId <= accounts; accountId++) {
+                heap.put(accountId, new HeapAccount(accountId * 1000));
+            }
+        } else {
+            table = new BalanceTable(accounts);
+            for (long accountId = 1; accountId <= accounts; accountId++) {
+                table.insert(accountId, accountId * 1000);
+            }
+        }
+    }
+
+    @Benchmark
+    public int fullGc() {
+        System.gc();
+        return heap != null ? heap.size() : table.size();
+    }
+
+    /**
+     * Account of the ledger before the balance table.
+     */
+    private static class HeapAccount {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private long balance;
+
+        HeapAccount(long balance) {
+            this.balance = balance;
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.technologies.benchmark;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.Account;
+import com.technologies.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the service reads behind the GET endpoints.
+ *
+ * Reads by id go through the entity cache, which holds every benchmark account,
+ * so {@link #getAccountById} measures cache hits. Set entity_cache_size = 0 in
+ * application.properties to measure the database read instead, {@link UncachedReadBenchmark}
+ * measures the read behind a miss with its JSON body.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Cache hit after the first read of each account
+     */
+    @Benchmark
+    public Account getAccountById(BenchmarkData data) throws AccountTransferException {
+        return data.accountService.getAccountById(data.uniformAccount());
+    }
+
+    @Benchmark
+    public User getUserByName(BenchmarkData data) throws AccountTransferException {
+        return data.userService.getUserByName(data.userName());
+    }
+
+    @Benchmark
+    public List<Account> getAccountsPage(BenchmarkData data) throws AccountTransferException {
+        return data.accountService.getAccountsPage(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<User> getUsersPage(BenchmarkData data) throws AccountTransferException {
+        return data.userService.getUsersPage(null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void streamAccounts(BenchmarkData data, Blackhole blackhole) throws AccountTransferException, IOException {
+        data.accountService.streamAccounts(blackhole::consume);
+    }
+
+    @Benchmark
+    public void streamUsers(BenchmarkData data, Blackhole blackhole) throws AccountTransferException, IOException {
+        data.userService.streamUsers(blackhole::consume);
+    }
+
+}
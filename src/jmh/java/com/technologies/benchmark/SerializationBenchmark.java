@@ -0,0 +1,87 @@
+package com.technologies.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.model.Account;
+import com.technologies.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the entities returned by the resources.
+ *
+ * The custom serializer is the one of the entities, bean is what Jackson makes of them
+ * without annotations. Run with -prof gc for bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final int LIST_SIZE = 100;
+
+    @Param({"custom", "bean"})
+    public String serializer;
+
+    private ObjectMapper mapper;
+    private Account account;
+    private User user;
+    private List<Account> accounts;
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper().configure(MapperFeature.USE_ANNOTATIONS, !"bean".equals(serializer));
+        account = account(1);
+        user = new User();
+        user.setUserId(1L);
+        user.setUserName("Den Cook");
+        user.setUserPhone("4564-345-89");
+        user.setUserEmail("den_cook@gmail.com");
+        accounts = new ArrayList<>(LIST_SIZE);
+        for (int i = 0; i < LIST_SIZE; i++) {
+            accounts.add(account(i));
+        }
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public byte[] writeUser() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] writeAccountList() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(accounts);
+    }
+
+    private static Account account(long id) {
+        Account account = new Account();
+        account.setAccountId(id);
+        account.setAccountNumber(String.valueOf(34557685 + id));
+        account.setAccountBalance(new BigDecimal("150.005").add(BigDecimal.valueOf(id)));
+        return account;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.technologies.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of AccountService.transferBalance in the transfer mode of application.properties.
+ *
+ * Failed transfers (lock timeouts after all retries) are counted by {@link TransferCounters},
+ * not thrown, so a hot run measures the retries instead of stopping at the first failure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+
+    @Param({"uniform", "hot"})
+    public String distribution;
+
+    private boolean hot;
+    private TransferCounters.Transfer transfer;
+
+    @Setup
+    public void setup(BenchmarkData data) {
+        hot = "hot".equals(distribution);
+        transfer = data.accountService::transferBalance;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transferOneThread(BenchmarkData data, TransferCounters counters, Blackhole blackhole) {
+        counters.transfer(data, hot, transfer, blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void transferFourThreads(BenchmarkData data, TransferCounters counters, Blackhole blackhole) {
+        counters.transfer(data, hot, transfer, blackhole);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void transferAllCores(BenchmarkData data, TransferCounters counters, Blackhole blackhole) {
+        counters.transfer(data, hot, transfer, blackhole);
+    }
+
+}
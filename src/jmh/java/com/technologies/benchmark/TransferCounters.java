@@ -0,0 +1,63 @@
+package com.technologies.benchmark;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.TransferResult;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+
+/**
+ * Transfers of one benchmark thread, reported next to the throughput as succeeded and failed per second.
+ *
+ * A failed transfer (overdraft, lock timeout after all retries) is counted instead of thrown,
+ * so a hot run goes on, and the primary score can be read against the failure rate.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TransferCounters {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    public long succeeded;
+    public long failed;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        succeeded = 0;
+        failed = 0;
+    }
+
+    /**
+     * Transfer between two different accounts picked by the distribution
+     *
+     * @param data {@link BenchmarkData}
+     * @param hot pick mostly hot accounts
+     * @param transfer {@link Transfer}
+     * @param blackhole {@link Blackhole}
+     */
+    void transfer(BenchmarkData data, boolean hot, Transfer transfer, Blackhole blackhole) {
+        long from = data.account(hot);
+        long to = data.otherAccount(from, hot);
+        try {
+            blackhole.consume(transfer.run(from, to, AMOUNT));
+            succeeded++;
+        } catch (AccountTransferException ex) {
+            failed++;
+        }
+    }
+
+    /**
+     * Transfer under measurement.
+     */
+    interface Transfer {
+
+        TransferResult run(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException;
+
+    }
+
+}
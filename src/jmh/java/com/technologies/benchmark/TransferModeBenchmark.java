@@ -0,0 +1,67 @@
+package com.technologies.benchmark;
+
+import com.technologies.transfer.JdbcTransferEngine;
+import com.technologies.transfer.OptimisticTransferEngine;
+import com.technologies.transfer.TransferEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the two database transfer engines side by side, whatever transfer_mode is set:
+ * jdbc locks both rows with SELECT ... FOR UPDATE before writing them, optimistic writes them
+ * with guarded updates right away. Uniform picks rarely collide, hot ones mostly do.
+ * Failed transfers are counted by {@link TransferCounters}, not thrown.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferModeBenchmark {
+
+    @Param({"jdbc", "optimistic"})
+    public String engine;
+
+    @Param({"uniform", "hot"})
+    public String distribution;
+
+    private boolean hot;
+    private TransferCounters.Transfer transfer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TransferEngine transferEngine = "optimistic".equals(engine)
+                ? new OptimisticTransferEngine()
+                : new JdbcTransferEngine();
+        hot = "hot".equals(distribution);
+        transfer = transferEngine::transfer;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transferOneThread(BenchmarkData data, TransferCounters counters, Blackhole blackhole) {
+        counters.transfer(data, hot, transfer, blackhole);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void transferEightThreads(BenchmarkData data, TransferCounters counters, Blackhole blackhole) {
+        counters.transfer(data, hot, transfer, blackhole);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.technologies.benchmark;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.config.DbConfig;
+import com.technologies.model.Account;
+import com.technologies.service.AccountRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read of one account behind an entity cache miss, from the query to the JSON body.
+ *
+ * index selects the mapper's columns, maps them by index and writes the custom serializer,
+ * name is the mapping it replaced: SELECT *, columns looked up by name and the bean serializer.
+ * Run with -prof gc for bytes allocated per read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UncachedReadBenchmark {
+
+    private static final String GET_BY_INDEX = "SELECT " + AccountRowMapper.COLUMNS
+            + " FROM Account WHERE accountId = ? ";
+    private static final String GET_BY_NAME = "SELECT * FROM Account WHERE accountId = ? ";
+
+    @Param({"index", "name"})
+    public String mapping;
+
+    private boolean byName;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() {
+        byName = "name".equals(mapping);
+        mapper = new ObjectMapper().configure(MapperFeature.USE_ANNOTATIONS, !byName);
+    }
+
+    @Benchmark
+    public byte[] readAccount(BenchmarkData data) throws SQLException, IOException {
+        Account account;
+        try (Connection conn = DbConfig.getConnection();
+             PreparedStatement prepStatement = conn.prepareStatement(byName ? GET_BY_NAME : GET_BY_INDEX)) {
+            prepStatement.setLong(1, data.uniformAccount());
+            try (ResultSet resultSet = prepStatement.executeQuery()) {
+                resultSet.next();
+                account = byName ? mapByName(resultSet) : AccountRowMapper.INSTANCE.map(resultSet);
+            }
+        }
+        return mapper.writeValueAsBytes(account);
+    }
+
+    private static Account mapByName(ResultSet resultSet) throws SQLException {
+        Account account = new Account();
+        account.setAccountId(resultSet.getLong("accountId"));
+        account.setAccountNumber(resultSet.getString("accountNumber"));
+        account.setAccountBalance(resultSet.getBigDecimal("accountBalance"));
+        account.setVersion(resultSet.getLong("version"));
+        return account;
+    }
+
+}
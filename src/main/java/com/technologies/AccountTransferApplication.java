@@ -1,13 +1,9 @@
 package com.technologies;
 
 import com.technologies.config.DbConfig;
-import com.technologies.resource.AccountResource;
-import com.technologies.resource.UserResource;
+import com.technologies.config.ServerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.servlet.ServletContextHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
-import org.glassfish.jersey.servlet.ServletContainer;
 
 /**
  * Application entry point.
@@ -18,7 +14,7 @@ public class AccountTransferApplication {
     public static void main(String[] args) throws Exception {
         log.info("Start application ...");
 
-        DbConfig.getConnection();
+        DbConfig.getConnection().close();
         startServer();
     }
 
@@ -28,13 +24,7 @@ public class AccountTransferApplication {
      * @throws Exception
      */
     private static void startServer() throws Exception {
-        Server server = new Server(8088);
-        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
-        context.setContextPath("/");
-        server.setHandler(context);
-        ServletHolder servletHolder = context.addServlet(ServletContainer.class, "/*");
-        servletHolder.setInitParameter("jersey.config.server.provider.classnames",
-                UserResource.class.getCanonicalName() + "," + AccountResource.class.getCanonicalName());
+        Server server = ServerFactory.createServer();
         try {
             server.start();
             server.join();
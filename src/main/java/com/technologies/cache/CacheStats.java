@@ -0,0 +1,20 @@
+package com.technologies.cache;
+
+import lombok.Value;
+
+/**
+ * Snapshot of an entity cache.
+ */
+@Value
+public class CacheStats {
+
+    private String name;
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private double hitRate;
+
+}
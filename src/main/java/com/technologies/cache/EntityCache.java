@@ -0,0 +1,183 @@
+package com.technologies.cache;
+
+import com.technologies.exception.AccountTransferException;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of entities by id with size and TTL eviction.
+ *
+ * Writers wrap their change with beginWrite and endWrite. While a key is written
+ * readers bypass the cache, and every begin and end bumps the generation of the
+ * key's stripe, so a value loaded before or during a write is never kept: the loader
+ * checks the generation again after it put the value and takes it back if it moved.
+ * Entries are evicted oldest first when the cache is full.
+ */
+public class EntityCache<K, V> {
+
+    private static final int STRIPES = 1024;
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<K, V>> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ordered = new AtomicInteger();
+    private final AtomicIntegerArray writers = new AtomicIntegerArray(STRIPES);
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param name of the cache in stats
+     * @param maxSize max count of entries, 0 disables caching
+     * @param ttlMillis time an entry lives after it was loaded
+     */
+    public EntityCache(String name, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.maxSize = Math.max(0, maxSize);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Get cached entity or load it, missing entities are not cached
+     *
+     * @param key id of the entity
+     * @param loader {@link Loader} reading the entity from the database
+     *
+     * @return entity or null
+     *
+     * @throws AccountTransferException
+     */
+    public V get(K key, Loader<V> loader) throws AccountTransferException {
+        if (maxSize == 0) {
+            return loader.load();
+        }
+        int stripe = stripe(key);
+        long now = System.nanoTime();
+        if (writers.get(stripe) == 0) {
+            Entry<K, V> entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt - now > 0) {
+                    hits.increment();
+                    return entry.value;
+                }
+                if (entries.remove(key, entry)) {
+                    evictions.increment();
+                }
+            }
+        }
+        misses.increment();
+
+        long generation = generations.get(stripe);
+        V value = loader.load();
+        if (value == null || writers.get(stripe) != 0 || generations.get(stripe) != generation) {
+            return value;
+        }
+        Entry<K, V> created = new Entry<>(key, value, now + ttlNanos);
+        entries.put(key, created);
+        if (generations.get(stripe) != generation) {
+            // a write started after the load
+            entries.remove(key, created);
+            return value;
+        }
+        order.add(created);
+        ordered.incrementAndGet();
+        evict();
+        return value;
+    }
+
+    /**
+     * Key is going to change, readers skip the cache until endWrite
+     *
+     * @param key id of the entity
+     */
+    public void beginWrite(K key) {
+        int stripe = stripe(key);
+        writers.incrementAndGet(stripe);
+        generations.incrementAndGet(stripe);
+        entries.remove(key);
+    }
+
+    /**
+     * Change of the key is committed or failed, drop what was cached meanwhile
+     *
+     * @param key id of the entity
+     */
+    public void endWrite(K key) {
+        int stripe = stripe(key);
+        generations.incrementAndGet(stripe);
+        if (entries.remove(key) != null) {
+            invalidations.increment();
+        }
+        writers.decrementAndGet(stripe);
+    }
+
+    /**
+     * Get cache state
+     *
+     * @return CacheStats {@link CacheStats}
+     */
+    public CacheStats getStats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return new CacheStats(name, entries.size(), maxSize, hitCount, misses.sum(), evictions.sum(),
+                invalidations.sum(), lookups == 0 ? 0 : hitCount / (double) lookups);
+    }
+
+    private void evict() {
+        Entry<K, V> oldest;
+        long now = System.nanoTime();
+        while ((oldest = order.peek()) != null && (ordered.get() > maxSize || oldest.expiresAt - now < 0)) {
+            oldest = order.poll();
+            if (oldest == null) {
+                return;
+            }
+            ordered.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Reads entity from the database.
+     */
+    public interface Loader<V> {
+
+        V load() throws AccountTransferException;
+
+    }
+
+    /**
+     * Cached entity.
+     */
+    private static class Entry<K, V> {
+
+        private final K key;
+        private final V value;
+        private final long expiresAt;
+
+        Entry(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.technologies.config;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.technologies.resource.AccountResource;
+import com.technologies.resource.DbExecutor;
+import com.technologies.resource.IdempotencyCache;
+import com.technologies.resource.MetricsFilter;
+import com.technologies.resource.MetricsResource;
+import com.technologies.resource.StatsResource;
+import com.technologies.resource.UserResource;
+import com.technologies.service.AccountService;
+import com.technologies.service.UserService;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
+
+import javax.inject.Singleton;
+
+/**
+ * Jersey application: resources, providers and services for injection.
+ */
+public final class ApplicationConfig extends ResourceConfig {
+
+    public ApplicationConfig() {
+        DbExecutor dbExecutor = new DbExecutor(ConfigLoader.getIntProperty("db_executor_threads", 10),
+                ConfigLoader.getIntProperty("db_executor_queue_size", 1000),
+                ConfigLoader.getLongProperty("db_executor_retry_after_s", 1),
+                ConfigLoader.getBooleanProperty("db_executor_virtual_threads", false));
+        register(UserResource.class);
+        register(AccountResource.class);
+        register(StatsResource.class);
+        register(MetricsResource.class);
+        register(MetricsFilter.class);
+        register(JacksonJsonProvider.class);
+        register(new AbstractBinder() {
+            @Override
+            protected void configure() {
+                bindAsContract(UserService.class).in(Singleton.class);
+                bindAsContract(AccountService.class).in(Singleton.class);
+                bind(new IdempotencyCache(ConfigLoader.getIntProperty("idempotency_cache_size", 100000),
+                        ConfigLoader.getLongProperty("idempotency_ttl_s", 3600))).to(IdempotencyCache.class);
+                bind(dbExecutor).to(DbExecutor.class);
+            }
+        });
+        // every application has its own executor, a stopped server doesn't leave its threads behind
+        register(new ContainerLifecycleListener() {
+            @Override
+            public void onStartup(Container container) {
+            }
+
+            @Override
+            public void onReload(Container container) {
+            }
+
+            @Override
+            public void onShutdown(Container container) {
+                dbExecutor.shutdown();
+            }
+        });
+    }
+
+}
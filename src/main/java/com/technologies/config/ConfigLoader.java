@@ -50,4 +50,53 @@ public class ConfigLoader {
         return valueProperty;
     }
 
+    /**
+     * Get one of the application property by key or the default value if it's not set
+     *
+     * @param keyProperty {@link String}
+     * @param defaultValue {@link String}
+     *
+     * @return valueProperty {@link String}
+     */
+    public static String getAppProperty(String keyProperty, String defaultValue) {
+        String valueProperty = appProperties.getProperty(keyProperty);
+        return valueProperty == null ? defaultValue : valueProperty.trim();
+    }
+
+    /**
+     * Get integer application property by key or the default value if it's not set
+     *
+     * @param keyProperty {@link String}
+     * @param defaultValue int
+     *
+     * @return int
+     */
+    public static int getIntProperty(String keyProperty, int defaultValue) {
+        return Integer.parseInt(getAppProperty(keyProperty, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Get long application property by key or the default value if it's not set
+     *
+     * @param keyProperty {@link String}
+     * @param defaultValue long
+     *
+     * @return long
+     */
+    public static long getLongProperty(String keyProperty, long defaultValue) {
+        return Long.parseLong(getAppProperty(keyProperty, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Get boolean application property by key or the default value if it's not set
+     *
+     * @param keyProperty {@link String}
+     * @param defaultValue boolean
+     *
+     * @return boolean
+     */
+    public static boolean getBooleanProperty(String keyProperty, boolean defaultValue) {
+        return Boolean.parseBoolean(getAppProperty(keyProperty, String.valueOf(defaultValue)));
+    }
+
 }
@@ -0,0 +1,24 @@
+package com.technologies.config;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Snapshot of the HTTP connections of the server.
+ *
+ * Bytes and messages are counted when a connection closes, so they cover closed connections only.
+ */
+@Value
+public class ConnectionStats {
+
+    private List<String> protocols;
+    private long open;
+    private long maxOpen;
+    private long total;
+    private long receivedBytes;
+    private long sentBytes;
+    private long receivedMessages;
+    private long sentMessages;
+
+}
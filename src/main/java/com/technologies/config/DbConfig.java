@@ -1,11 +1,14 @@
 package com.technologies.config;
 
+import com.technologies.db.ConnectionPool;
+import com.technologies.db.PoolSettings;
+import com.technologies.db.PoolStats;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.dbutils.DbUtils;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * Database configuration.
@@ -17,20 +20,100 @@ public class DbConfig {
     private static final String dbConnectionUrl = ConfigLoader.getAppProperty("h2_connection_url");
     private static final String dbUser = ConfigLoader.getAppProperty("h2_user");
     private static final String dbPassword = ConfigLoader.getAppProperty("h2_password");
+    private static final String dbInitSql = ConfigLoader.getAppProperty("h2_init_sql", "");
+    private static final int streamFetchSize = ConfigLoader.getIntProperty("stream_fetch_size", 500);
+
+    private static final ConnectionPool connectionPool;
 
     static {
         DbUtils.loadDriver(dbDriver);
+        connectionPool = new ConnectionPool(PoolSettings.builder()
+                .url(dbConnectionUrl)
+                .user(dbUser)
+                .password(dbPassword)
+                .minIdle(ConfigLoader.getIntProperty("pool_min_idle", 2))
+                .maxSize(ConfigLoader.getIntProperty("pool_max_size", 10))
+                .acquireTimeoutMillis(ConfigLoader.getLongProperty("pool_acquire_timeout_ms", 5000))
+                .idleTimeoutMillis(ConfigLoader.getLongProperty("pool_idle_timeout_ms", 60000))
+                .leakThresholdMillis(ConfigLoader.getLongProperty("pool_leak_threshold_ms", 30000))
+                .housekeepingIntervalMillis(ConfigLoader.getLongProperty("pool_housekeeping_interval_ms", 5000))
+                .validateOnBorrow(ConfigLoader.getBooleanProperty("pool_validate_on_borrow", true))
+                .validationTimeoutSeconds(ConfigLoader.getIntProperty("pool_validation_timeout_s", 1))
+                .statementCacheSize(ConfigLoader.getIntProperty("pool_statement_cache_size", 32))
+                .build());
+        initDatabase();
     }
 
     /**
-     * Get current connection
+     * Get connection from the pool, close it to give it back
      *
      * @return Connection {@link Connection}
      *
      * @throws SQLException
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(dbConnectionUrl, dbUser, dbPassword);
+        return connectionPool.getConnection();
+    }
+
+    /**
+     * Get current state of the connection pool
+     *
+     * @return PoolStats {@link PoolStats}
+     */
+    public static PoolStats getPoolStats() {
+        return connectionPool.getStats();
+    }
+
+    /**
+     * Get fetch size for queries streamed to the client
+     *
+     * @return int
+     */
+    public static int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    /**
+     * Switch H2 lazy query execution for the connection, a lazy query reads rows while they are fetched
+     * instead of building the whole result first
+     *
+     * @param conn {@link Connection}
+     * @param lazy boolean
+     */
+    public static void setLazyQueries(Connection conn, boolean lazy) {
+        if (conn == null) {
+            return;
+        }
+        Statement statement = null;
+        try {
+            statement = conn.createStatement();
+            statement.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? 1 : 0));
+        } catch (SQLException ex) {
+            log.warn("Can't switch lazy query execution: " + ex.getMessage());
+        } finally {
+            DbUtils.closeQuietly(statement);
+        }
+    }
+
+    /**
+     * Run init script once, not on every new physical connection
+     */
+    private static void initDatabase() {
+        if (dbInitSql.isEmpty()) {
+            return;
+        }
+        Connection conn = null;
+        Statement statement = null;
+        try {
+            conn = connectionPool.getConnection();
+            statement = conn.createStatement();
+            statement.execute(dbInitSql);
+        } catch (SQLException ex) {
+            log.error("Can't initialize database: " + ex.getMessage());
+        } finally {
+            DbUtils.closeQuietly(statement);
+            DbUtils.closeQuietly(conn);
+        }
     }
 
 }
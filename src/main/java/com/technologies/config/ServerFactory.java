@@ -0,0 +1,114 @@
+package com.technologies.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.glassfish.jersey.servlet.ServletContainer;
+
+/**
+ * Jetty server with the port and threading from application.properties.
+ *
+ * The connector speaks HTTP/1.1 and, when enabled, HTTP/2 cleartext (h2c) on the same port,
+ * by prior knowledge or by Upgrade from HTTP/1.1, so many small concurrent calls of a client
+ * share one connection. Responses of the configured types are gzipped for clients that accept it.
+ */
+@Slf4j
+public class ServerFactory {
+
+    private static volatile ServerConnector serverConnector;
+
+    private ServerFactory() {
+    }
+
+    /**
+     * Create server with the Jersey application, not started
+     *
+     * @return Server {@link Server}
+     */
+    public static Server createServer() {
+        int port = ConfigLoader.getIntProperty("server_port", 8088);
+        int acceptors = ConfigLoader.getIntProperty("server_acceptors", -1);
+        int selectors = ConfigLoader.getIntProperty("server_selectors", -1);
+        int minThreads = ConfigLoader.getIntProperty("server_min_threads", 8);
+        int maxThreads = ConfigLoader.getIntProperty("server_max_threads", 200);
+        int idleTimeoutMs = ConfigLoader.getIntProperty("server_idle_timeout_ms", 30000);
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMs);
+        threadPool.setName("http");
+        Server server = new Server(threadPool);
+
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        ServerConnector connector;
+        if (ConfigLoader.getBooleanProperty("server_h2c_enabled", true)) {
+            HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(httpConfig);
+            h2c.setMaxConcurrentStreams(ConfigLoader.getIntProperty("server_h2c_max_concurrent_streams", 128));
+            connector = new ServerConnector(server, acceptors, selectors, new HttpConnectionFactory(httpConfig), h2c);
+        } else {
+            connector = new ServerConnector(server, acceptors, selectors, new HttpConnectionFactory(httpConfig));
+        }
+        connector.setPort(port);
+        connector.setIdleTimeout(idleTimeoutMs);
+        connector.addBean(new ConnectionStatistics());
+        server.addConnector(connector);
+        serverConnector = connector;
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/");
+        server.setHandler(withCompression(context));
+        ServletHolder servletHolder = context.addServlet(ServletContainer.class, "/*");
+        servletHolder.setAsyncSupported(true);
+        servletHolder.setInitParameter("javax.ws.rs.Application", ApplicationConfig.class.getCanonicalName());
+
+        log.info("Server on port " + port + " with " + connector.getProtocols()
+                + ", threads " + minThreads + ".." + maxThreads);
+        return server;
+    }
+
+    /**
+     * Get connection counts and bytes on the wire of the last created server
+     *
+     * @return ConnectionStats {@link ConnectionStats}, null before a server is created
+     */
+    public static ConnectionStats getConnectionStats() {
+        ServerConnector connector = serverConnector;
+        if (connector == null) {
+            return null;
+        }
+        ConnectionStatistics statistics = connector.getBean(ConnectionStatistics.class);
+        return new ConnectionStats(
+                connector.getProtocols(),
+                statistics.getConnections(),
+                statistics.getConnectionsMax(),
+                statistics.getConnectionsTotal(),
+                statistics.getReceivedBytes(),
+                statistics.getSentBytes(),
+                statistics.getReceivedMessages(),
+                statistics.getSentMessages());
+    }
+
+    /**
+     * Wrap handler into gzip of responses, the handler itself when compression is disabled
+     */
+    private static Handler withCompression(Handler handler) {
+        if (!ConfigLoader.getBooleanProperty("gzip_enabled", true)) {
+            return handler;
+        }
+        GzipHandler gzip = new GzipHandler();
+        gzip.setMinGzipSize(ConfigLoader.getIntProperty("gzip_min_size", 1024));
+        gzip.setCompressionLevel(ConfigLoader.getIntProperty("gzip_level", 6));
+        gzip.setIncludedMimeTypes(ConfigLoader.getAppProperty("gzip_mime_types", "application/json").split("\\s*,\\s*"));
+        gzip.setIncludedMethods("GET", "POST");
+        gzip.setHandler(handler);
+        return gzip;
+    }
+
+}
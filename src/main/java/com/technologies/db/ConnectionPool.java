@@ -0,0 +1,216 @@
+package com.technologies.db;
+
+import com.technologies.metrics.Histogram;
+import com.technologies.metrics.LatencyRecorder;
+import com.technologies.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded JDBC connection pool.
+ *
+ * At most maxSize connections are borrowed at the same time, other callers wait up to
+ * acquireTimeoutMillis. Idle connections are reused most recently returned first, so the
+ * least used ones age out and get evicted by the housekeeper down to minIdle.
+ */
+@Slf4j
+public class ConnectionPool {
+
+    private static final int ACQUIRE_SAMPLES = 4096;
+    private static final Histogram ACQUIRE_TIME = Metrics.histogram(Metrics.CONNECTION_ACQUIRE);
+
+    private final PoolSettings settings;
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+    private final LatencyRecorder acquireTimes = new LatencyRecorder(ACQUIRE_SAMPLES);
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(PoolSettings settings) {
+        this.settings = settings;
+        this.permits = new Semaphore(settings.getMaxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fillIdle();
+        housekeeper.scheduleWithFixedDelay(this::houseKeeping, settings.getHousekeepingIntervalMillis(),
+                settings.getHousekeepingIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow connection from the pool, close() of returned connection gives it back
+     *
+     * @return Connection {@link Connection}
+     *
+     * @throws SQLException
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(settings.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("Can't get connection in "
+                        + settings.getAcquireTimeoutMillis() + " ms, pool: " + getStats());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connection", ex);
+        }
+
+        try {
+            PooledConnection pooled = pollIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.markBorrowed(settings.getLeakThresholdMillis() > 0 ? new Throwable("Connection borrowed here") : null);
+            borrowed.add(pooled);
+            acquired.increment();
+            long acquireNanos = System.nanoTime() - start;
+            acquireTimes.record(acquireNanos);
+            ACQUIRE_TIME.record(acquireNanos);
+            return pooled.lease(this);
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Get current pool state
+     *
+     * @return PoolStats {@link PoolStats}
+     */
+    public PoolStats getStats() {
+        return new PoolStats(settings.getMaxSize(), total.get(), borrowed.size(), idle.size(),
+                permits.getQueueLength(), acquired.sum(), timeouts.sum(), leaks.sum(),
+                acquireTimes.getPercentileMicros(50), acquireTimes.getPercentileMicros(95),
+                acquireTimes.getPercentileMicros(99), acquireTimes.getPercentileMicros(100),
+                statementCounters.hits.sum(), statementCounters.misses.sum(), statementCounters.evictions.sum());
+    }
+
+    /**
+     * Close all idle connections and stop housekeeping, borrowed ones are closed on return
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            pooled.reset();
+            pooled.markReturned();
+            if (closed) {
+                destroy(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException ex) {
+            log.warn("Dropping connection which can't be reset: " + ex.getMessage());
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private PooledConnection pollIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (!settings.isValidateOnBorrow() || pooled.isValid(settings.getValidationTimeoutSeconds())) {
+                return pooled;
+            }
+            log.warn("Dropping broken connection");
+            destroy(pooled);
+        }
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(settings.getUrl(), settings.getUser(), settings.getPassword());
+        total.incrementAndGet();
+        return new PooledConnection(connection, settings.getStatementCacheSize(), statementCounters);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.closePhysical();
+    }
+
+    private void houseKeeping() {
+        try {
+            evictIdle();
+            detectLeaks();
+            fillIdle();
+        } catch (RuntimeException ex) {
+            log.error("Connection pool housekeeping failed", ex);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && idle.size() > settings.getMinIdle()) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.getLastReturnedAt() > settings.getIdleTimeoutMillis() && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+    }
+
+    private void detectLeaks() {
+        if (settings.getLeakThresholdMillis() <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : borrowed) {
+            long heldMillis = now - pooled.getBorrowedAt();
+            if (heldMillis > settings.getLeakThresholdMillis() && !pooled.isLeakReported()) {
+                pooled.markLeakReported();
+                leaks.increment();
+                log.warn("Connection is held for " + heldMillis + " ms, possible leak", pooled.getBorrowSite());
+            }
+        }
+    }
+
+    private void fillIdle() {
+        while (!closed && total.get() < settings.getMinIdle()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException ex) {
+                log.error("Can't open connection for the pool: " + ex.getMessage());
+                return;
+            }
+        }
+    }
+
+}
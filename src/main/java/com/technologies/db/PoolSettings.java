@@ -0,0 +1,26 @@
+package com.technologies.db;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings of the connection pool.
+ */
+@Value
+@Builder
+public class PoolSettings {
+
+    private String url;
+    private String user;
+    private String password;
+    private int minIdle;
+    private int maxSize;
+    private long acquireTimeoutMillis;
+    private long idleTimeoutMillis;
+    private long leakThresholdMillis;
+    private long housekeepingIntervalMillis;
+    private boolean validateOnBorrow;
+    private int validationTimeoutSeconds;
+    private int statementCacheSize;
+
+}
@@ -0,0 +1,27 @@
+package com.technologies.db;
+
+import lombok.Value;
+
+/**
+ * Snapshot of the connection pool state.
+ */
+@Value
+public class PoolStats {
+
+    private int maxSize;
+    private int total;
+    private int active;
+    private int idle;
+    private int waiting;
+    private long acquired;
+    private long timeouts;
+    private long leaks;
+    private long acquireP50Micros;
+    private long acquireP95Micros;
+    private long acquireP99Micros;
+    private long acquireMaxMicros;
+    private long statementCacheHits;
+    private long statementCacheMisses;
+    private long statementCacheEvictions;
+
+}
@@ -0,0 +1,159 @@
+package com.technologies.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Physical connection owned by the pool.
+ */
+class PooledConnection {
+
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long lastReturnedAt = createdAt;
+    private volatile long borrowedAt;
+    private volatile Throwable borrowSite;
+    private volatile boolean leakReported;
+
+    PooledConnection(Connection connection, int statementCacheSize, StatementCache.Counters statementCounters) {
+        this.connection = connection;
+        this.statementCache = statementCacheSize > 0
+                ? new StatementCache(connection, statementCacheSize, statementCounters)
+                : null;
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    long getLastReturnedAt() {
+        return lastReturnedAt;
+    }
+
+    long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    Throwable getBorrowSite() {
+        return borrowSite;
+    }
+
+    boolean isLeakReported() {
+        return leakReported;
+    }
+
+    void markLeakReported() {
+        leakReported = true;
+    }
+
+    void markBorrowed(Throwable borrowSite) {
+        this.borrowedAt = System.currentTimeMillis();
+        this.borrowSite = borrowSite;
+        this.leakReported = false;
+    }
+
+    void markReturned() {
+        this.lastReturnedAt = System.currentTimeMillis();
+        this.borrowSite = null;
+    }
+
+    /**
+     * Reset connection state changed by the previous borrower
+     *
+     * @throws SQLException
+     */
+    void reset() throws SQLException {
+        if (statementCache != null) {
+            statementCache.releaseAll();
+        }
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        connection.clearWarnings();
+    }
+
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    void closePhysical() {
+        if (statementCache != null) {
+            statementCache.closeAll();
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // nothing to do, the connection is dropped anyway
+        }
+    }
+
+    /**
+     * Wrap the physical connection for one borrower, close() returns it to the pool
+     *
+     * @param pool {@link ConnectionPool}
+     *
+     * @return Connection {@link Connection}
+     */
+    Connection lease(ConnectionPool pool) {
+        return (Connection) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Lease(pool));
+    }
+
+    /**
+     * Borrower's view of the connection, it's unusable after close.
+     */
+    private class Lease implements InvocationHandler {
+
+        private final ConnectionPool pool;
+        private boolean closed;
+
+        Lease(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + connection;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (statementCache != null && "prepareStatement".equals(method.getName()) && args.length == 1) {
+                return statementCache.prepare((String) args[0], (Connection) proxy);
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.technologies.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of prepared statements of one physical connection, keyed by SQL text.
+ *
+ * The connection is used by one borrower at a time, so the cache isn't thread safe.
+ * A statement is handed out to one caller until it's closed, the same SQL prepared
+ * again meanwhile gets a plain uncached statement. Every borrow of the connection is
+ * a new lease generation, a handle of an older lease is dead: its close does nothing
+ * and anything else fails, so it can't touch the statement of the next borrower.
+ * A statement evicted while handed out is closed when it's given back or the lease ends.
+ */
+class StatementCache {
+
+    private final Connection connection;
+    private final Map<String, CachedStatement> statements;
+    private final List<CachedStatement> evictedInUse = new ArrayList<>();
+    private final Counters counters;
+    private volatile long lease;
+
+    StatementCache(Connection connection, int maxSize, Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                counters.evictions.increment();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get cached statement for the SQL or prepare new one
+     *
+     * @param sql {@link String}
+     * @param owner lease proxy the statement reports as its connection
+     *
+     * @return PreparedStatement {@link PreparedStatement}
+     *
+     * @throws SQLException
+     */
+    PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && cached.evicted) {
+            statements.remove(sql);
+            cached = null;
+        }
+        if (cached == null) {
+            counters.misses.increment();
+            cached = new CachedStatement(connection.prepareStatement(sql));
+            statements.put(sql, cached);
+        } else if (cached.inUse) {
+            counters.misses.increment();
+            return connection.prepareStatement(sql);
+        } else {
+            counters.hits.increment();
+        }
+        return cached.handOut(owner);
+    }
+
+    /**
+     * Take back statements which borrower didn't close, their handles become stale
+     */
+    void releaseAll() {
+        lease++;
+        for (CachedStatement cached : statements.values()) {
+            cached.inUse = false;
+        }
+        closeEvictedInUse();
+    }
+
+    void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            cached.closePhysical();
+        }
+        statements.clear();
+        closeEvictedInUse();
+    }
+
+    private void closeEvictedInUse() {
+        for (CachedStatement cached : evictedInUse) {
+            cached.inUse = false;
+            cached.closePhysical();
+        }
+        evictedInUse.clear();
+    }
+
+    /**
+     * Counters shared by caches of all pooled connections.
+     */
+    static class Counters {
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+    }
+
+    private class CachedStatement {
+
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement handOut(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(lease, owner));
+        }
+
+        void evict() {
+            evicted = true;
+            if (inUse) {
+                evictedInUse.add(this);
+            } else {
+                closePhysical();
+            }
+        }
+
+        void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // statement is dropped anyway
+            }
+        }
+
+        /**
+         * Caller's view of the statement, close() keeps the statement open for reuse.
+         */
+        private class Handle implements InvocationHandler {
+
+            private final long handedOutInLease;
+            private final Connection owner;
+            private boolean closed;
+
+            Handle(long handedOutInLease, Connection owner) {
+                this.handedOutInLease = handedOutInLease;
+                this.owner = owner;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                boolean stale = handedOutInLease != lease;
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            if (!stale) {
+                                giveBack();
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || stale || statement.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Cached" + statement;
+                    default:
+                        break;
+                }
+                if (closed) {
+                    throw new SQLException("Statement is closed");
+                }
+                if (stale) {
+                    throw new SQLException("Statement's connection has already been returned to the pool");
+                }
+                if ("getConnection".equals(method.getName())) {
+                    // the physical connection would let the caller close it past the pool
+                    return owner;
+                }
+                try {
+                    return method.invoke(statement, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+
+            private void giveBack() {
+                inUse = false;
+                if (evicted) {
+                    evictedInUse.remove(CachedStatement.this);
+                    closePhysical();
+                    return;
+                }
+                try {
+                    statement.clearParameters();
+                    statement.clearBatch();
+                } catch (SQLException ex) {
+                    evicted = true;
+                    closePhysical();
+                }
+            }
+
+        }
+
+    }
+
+}
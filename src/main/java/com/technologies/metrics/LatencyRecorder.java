@@ -0,0 +1,75 @@
+package com.technologies.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latest latency samples in a fixed ring and computes percentiles over them.
+ */
+public class LatencyRecorder {
+
+    private final AtomicLongArray samples;
+    private final AtomicLong recorded = new AtomicLong();
+
+    public LatencyRecorder(int capacity) {
+        this.samples = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * Record one sample
+     *
+     * @param nanos long
+     */
+    public void record(long nanos) {
+        long index = recorded.getAndIncrement();
+        samples.set((int) (index % samples.length()), nanos);
+    }
+
+    /**
+     * Get count of recorded samples since start
+     *
+     * @return long
+     */
+    public long getCount() {
+        return recorded.get();
+    }
+
+    /**
+     * Get percentile over the latest samples in microseconds
+     *
+     * @param percentile double from 0 to 100
+     *
+     * @return long
+     */
+    public long getPercentileMicros(double percentile) {
+        return getPercentileNanos(percentile) / 1000;
+    }
+
+    /**
+     * Get percentile over the latest samples in nanoseconds
+     *
+     * @param percentile double from 0 to 100
+     *
+     * @return long
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = snapshot();
+        if (snapshot.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * snapshot.length) - 1;
+        return snapshot[Math.max(0, Math.min(index, snapshot.length - 1))];
+    }
+
+    private long[] snapshot() {
+        int size = (int) Math.min(recorded.get(), samples.length());
+        long[] snapshot = new long[size];
+        for (int i = 0; i < size; i++) {
+            snapshot[i] = samples.get(i);
+        }
+        Arrays.sort(snapshot);
+        return snapshot;
+    }
+
+}
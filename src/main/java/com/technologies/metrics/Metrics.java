@@ -0,0 +1,164 @@
+package com.technologies.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of counters and histograms, written in Prometheus text format.
+ *
+ * Look up a metric once and keep it in a field where the call site is hot,
+ * recording is lock free.
+ */
+public class Metrics {
+
+    public static final String HTTP_REQUEST_DURATION = "http_request_duration_seconds";
+    public static final String HTTP_REQUESTS = "http_requests_total";
+    public static final String SQL_QUERY_DURATION = "sql_query_duration_seconds";
+    public static final String CONNECTION_ACQUIRE = "db_connection_acquire_seconds";
+    public static final String TRANSFER_LOCK_WAIT = "transfer_lock_wait_seconds";
+    public static final String TRANSFER_COMMIT = "transfer_commit_seconds";
+
+    private static final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    static {
+        describe(HTTP_REQUEST_DURATION, "Time to handle a request by resource method");
+        describe(HTTP_REQUESTS, "Requests by resource method and status");
+        describe(SQL_QUERY_DURATION, "Time to run a service SQL statement and read its rows");
+        describe(CONNECTION_ACQUIRE, "Time to borrow a connection from the pool");
+        describe(TRANSFER_LOCK_WAIT, "Time to lock the accounts of a transfer");
+        describe(TRANSFER_COMMIT, "Time to commit a transfer");
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Get histogram, created on first use
+     *
+     * @param name metric name
+     * @param labels label pairs: name, value, name, value ...
+     *
+     * @return Histogram {@link Histogram}
+     */
+    public static Histogram histogram(String name, String... labels) {
+        return (Histogram) family(name, "histogram").metrics.computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    /**
+     * Get counter, created on first use
+     *
+     * @param name metric name
+     * @param labels label pairs: name, value, name, value ...
+     *
+     * @return LongAdder
+     */
+    public static LongAdder counter(String name, String... labels) {
+        return (LongAdder) family(name, "counter").metrics.computeIfAbsent(labels(labels), key -> new LongAdder());
+    }
+
+    /**
+     * Get histogram of one service SQL statement
+     *
+     * @param query short name of the statement
+     *
+     * @return Histogram {@link Histogram}
+     */
+    public static Histogram sql(String query) {
+        return histogram(SQL_QUERY_DURATION, "query", query);
+    }
+
+    /**
+     * Write every metric in Prometheus text format
+     *
+     * @return String
+     */
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family family : new TreeMap<>(families).values()) {
+            if (family.type == null || family.metrics.isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> metric : new TreeMap<>(family.metrics).entrySet()) {
+                if (metric.getValue() instanceof Histogram) {
+                    writeHistogram(out, family.name, metric.getKey(), (Histogram) metric.getValue());
+                } else {
+                    writeSample(out, family.name, metric.getKey(), ((LongAdder) metric.getValue()).sum());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] counts = histogram.getBucketCounts();
+        String separator = labels.isEmpty() ? "" : ",";
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String bound = i < Histogram.BOUNDS_SECONDS.length ? Double.toString(Histogram.BOUNDS_SECONDS[i]) : "+Inf";
+            writeSample(out, name + "_bucket", labels + separator + "le=\"" + bound + "\"", cumulative);
+        }
+        writeSample(out, name + "_sum", labels, histogram.getSumSeconds());
+        writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void describe(String name, String help) {
+        families.put(name, new Family(name, help));
+    }
+
+    private static Family family(String name, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(key, key));
+        if (family.type == null) {
+            family.type = type;
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Metrics with the same name and different labels.
+     */
+    private static class Family {
+
+        private final String name;
+        private final String help;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+        private volatile String type;
+
+        private Family(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+    }
+
+}
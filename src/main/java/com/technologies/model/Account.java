@@ -1,5 +1,6 @@
 package com.technologies.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Data;
 
 import javax.persistence.Id;
@@ -7,6 +8,7 @@ import javax.persistence.Table;
 import javax.persistence.Entity;
 import javax.persistence.Column;
 import javax.persistence.ManyToOne;
+import javax.persistence.Version;
 import javax.persistence.JoinColumn;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -21,6 +23,7 @@ import java.math.BigDecimal;
 @Entity
 @Table(name = "account")
 @XmlRootElement(name = "Account")
+@JsonSerialize(using = AccountSerializer.class)
 public class Account implements Serializable {
 
     private static final Long serialVersionUid = 23487982311093L;
@@ -35,6 +38,10 @@ public class Account implements Serializable {
     @Column(name = "balance")
     private BigDecimal accountBalance;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     @ManyToOne
     @JoinColumn(name = "userId")
     private User user;
@@ -0,0 +1,78 @@
+package com.technologies.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes account fields directly, with the same names and order as bean serialization.
+ *
+ * Null fields follow the default property inclusion of the mapper: they are written with
+ * ALWAYS and left out otherwise, stricter settings than NON_NULL are not applied.
+ */
+public class AccountSerializer extends StdSerializer<Account> {
+
+    static final AccountSerializer INSTANCE = new AccountSerializer();
+
+    private static final SerializedString ACCOUNT_ID = new SerializedString("accountId");
+    private static final SerializedString ACCOUNT_NUMBER = new SerializedString("accountNumber");
+    private static final SerializedString ACCOUNT_BALANCE = new SerializedString("accountBalance");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString USER = new SerializedString("user");
+
+    public AccountSerializer() {
+        super(Account.class);
+    }
+
+    @Override
+    public void serialize(Account account, JsonGenerator json, SerializerProvider provider) throws IOException {
+        boolean nulls = writesNulls(provider, Account.class);
+        json.writeStartObject();
+        if (field(json, ACCOUNT_ID, account.getAccountId(), nulls)) {
+            json.writeNumber(account.getAccountId());
+        }
+        if (field(json, ACCOUNT_NUMBER, account.getAccountNumber(), nulls)) {
+            json.writeString(account.getAccountNumber());
+        }
+        if (field(json, ACCOUNT_BALANCE, account.getAccountBalance(), nulls)) {
+            json.writeNumber(account.getAccountBalance());
+        }
+        if (field(json, VERSION, account.getVersion(), nulls)) {
+            json.writeNumber(account.getVersion());
+        }
+        if (field(json, USER, account.getUser(), nulls)) {
+            UserSerializer.INSTANCE.serialize(account.getUser(), json, provider);
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Check that the mapper writes null properties of the type
+     */
+    static boolean writesNulls(SerializerProvider provider, Class<?> type) {
+        JsonInclude.Include inclusion = provider.getConfig().getDefaultPropertyInclusion(type).getValueInclusion();
+        return inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+    }
+
+    /**
+     * Write field name, a null value is written here or the field is left out
+     *
+     * @return true if the caller writes the value
+     */
+    static boolean field(JsonGenerator json, SerializedString name, Object value, boolean nulls) throws IOException {
+        if (value == null) {
+            if (nulls) {
+                json.writeFieldName(name);
+                json.writeNull();
+            }
+            return false;
+        }
+        json.writeFieldName(name);
+        return true;
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.technologies.model;
+
+/**
+ * How a batch of transfers reacts to a failed item.
+ */
+public enum BatchMode {
+
+    /**
+     * All transfers are applied in one transaction or none of them
+     */
+    ALL_OR_NOTHING,
+
+    /**
+     * Failed transfers are skipped, the rest are committed in chunks
+     */
+    BEST_EFFORT
+
+}
@@ -0,0 +1,34 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Outcome of a batch of transfers.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "BatchTransferResult")
+public class BatchTransferResult implements Serializable {
+
+    private static final Long serialVersionUid = 6039871724410982361L;
+
+    private BatchMode mode;
+
+    private int done;
+
+    private int failed;
+
+    private int commits;
+
+    private long elapsedMicros;
+
+    private List<TransferItemResult> items;
+
+}
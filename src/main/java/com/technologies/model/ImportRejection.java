@@ -0,0 +1,25 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * Row of a bulk import which wasn't inserted.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "ImportRejection")
+public class ImportRejection implements Serializable {
+
+    private static final Long serialVersionUid = 8830915947245502378L;
+
+    private long line;
+
+    private String message;
+
+}
@@ -0,0 +1,35 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "ImportResult")
+public class ImportResult implements Serializable {
+
+    private static final Long serialVersionUid = 4417362210859380116L;
+
+    private long imported;
+
+    private long rejected;
+
+    private int commits;
+
+    private long elapsedMillis;
+
+    /**
+     * First rejected rows, the count of all of them is in rejected
+     */
+    private List<ImportRejection> rejections;
+
+}
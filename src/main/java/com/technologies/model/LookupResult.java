@@ -0,0 +1,32 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Entities looked up by a list of ids.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "LookupResult")
+public class LookupResult<T> implements Serializable {
+
+    private static final Long serialVersionUid = 5120938475620193847L;
+
+    /**
+     * Entity for every requested id in request order, null where the id wasn't found
+     */
+    private List<T> items;
+
+    /**
+     * Requested ids which weren't found
+     */
+    private List<Long> missing;
+
+}
@@ -0,0 +1,32 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * Outcome of one transfer of a batch.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "TransferItemResult")
+public class TransferItemResult implements Serializable {
+
+    private static final Long serialVersionUid = 2290475619038127765L;
+
+    /**
+     * Item status: DONE, FAILED or ROLLED_BACK because another item of its transaction failed
+     */
+    public enum Status { DONE, FAILED, ROLLED_BACK }
+
+    private int index;
+
+    private Status status;
+
+    private String message;
+
+}
@@ -0,0 +1,28 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * One transfer of a batch.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "TransferRequest")
+public class TransferRequest implements Serializable {
+
+    private static final Long serialVersionUid = 8120394857720193384L;
+
+    private Long fromAccountId;
+
+    private Long toAccountId;
+
+    private BigDecimal amount;
+
+}
@@ -0,0 +1,34 @@
+package com.technologies.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Outcome of one transfer.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlRootElement(name = "TransferResult")
+public class TransferResult implements Serializable {
+
+    private static final Long serialVersionUid = 5617208931846204417L;
+
+    private Long fromAccountId;
+
+    private Long toAccountId;
+
+    private BigDecimal amount;
+
+    private int retries;
+
+    private long lockWaitMicros;
+
+    private long elapsedMicros;
+
+}
@@ -1,5 +1,6 @@
 package com.technologies.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Data;
 
 import javax.persistence.Id;
@@ -7,6 +8,7 @@ import javax.persistence.Table;
 import javax.persistence.Entity;
 import javax.persistence.Column;
 import javax.persistence.OneToMany;
+import javax.persistence.Version;
 import javax.persistence.FetchType;
 import javax.persistence.CascadeType;
 import javax.persistence.GeneratedValue;
@@ -23,6 +25,7 @@ import java.util.Set;
 @Entity
 @Table(name = "user")
 @XmlRootElement(name = "User")
+@JsonSerialize(using = UserSerializer.class)
 public class User implements Serializable {
 
     private static final Long serialVersionUid = 7244957405053753908L;
@@ -40,6 +43,10 @@ public class User implements Serializable {
     @Column(name = "email")
     private String userEmail;
 
+    @Version
+    @Column(name = "version")
+    private Long version;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     private Set<Account> userAccount = new HashSet<>();
 
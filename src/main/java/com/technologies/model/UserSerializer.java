@@ -0,0 +1,58 @@
+package com.technologies.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes user fields directly, with the same names and order as bean serialization.
+ * Null fields follow the mapper like in {@link AccountSerializer}.
+ */
+public class UserSerializer extends StdSerializer<User> {
+
+    static final UserSerializer INSTANCE = new UserSerializer();
+
+    private static final SerializedString USER_ID = new SerializedString("userId");
+    private static final SerializedString USER_NAME = new SerializedString("userName");
+    private static final SerializedString USER_PHONE = new SerializedString("userPhone");
+    private static final SerializedString USER_EMAIL = new SerializedString("userEmail");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString USER_ACCOUNT = new SerializedString("userAccount");
+
+    public UserSerializer() {
+        super(User.class);
+    }
+
+    @Override
+    public void serialize(User user, JsonGenerator json, SerializerProvider provider) throws IOException {
+        boolean nulls = AccountSerializer.writesNulls(provider, User.class);
+        json.writeStartObject();
+        if (AccountSerializer.field(json, USER_ID, user.getUserId(), nulls)) {
+            json.writeNumber(user.getUserId());
+        }
+        if (AccountSerializer.field(json, USER_NAME, user.getUserName(), nulls)) {
+            json.writeString(user.getUserName());
+        }
+        if (AccountSerializer.field(json, USER_PHONE, user.getUserPhone(), nulls)) {
+            json.writeString(user.getUserPhone());
+        }
+        if (AccountSerializer.field(json, USER_EMAIL, user.getUserEmail(), nulls)) {
+            json.writeString(user.getUserEmail());
+        }
+        if (AccountSerializer.field(json, VERSION, user.getVersion(), nulls)) {
+            json.writeNumber(user.getVersion());
+        }
+        if (AccountSerializer.field(json, USER_ACCOUNT, user.getUserAccount(), nulls)) {
+            json.writeStartArray();
+            for (Account account : user.getUserAccount()) {
+                AccountSerializer.INSTANCE.serialize(account, json, provider);
+            }
+            json.writeEndArray();
+        }
+        json.writeEndObject();
+    }
+
+}
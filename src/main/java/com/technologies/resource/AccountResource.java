@@ -1,11 +1,21 @@
 package com.technologies.resource;
 
+import com.technologies.config.ConfigLoader;
 import com.technologies.exception.AccountTransferException;
 import com.technologies.model.Account;
+import com.technologies.model.BatchMode;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.TransferRequest;
+import com.technologies.model.TransferResult;
 import com.technologies.service.AccountService;
+import com.technologies.service.ImportReader;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
 import javax.ws.rs.POST;
@@ -13,11 +23,19 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Resources for account.
@@ -30,102 +48,277 @@ public class AccountResource {
     @Inject
     AccountService accountService;
 
+    @Inject
+    IdempotencyCache idempotencyCache;
+
+    @Inject
+    DbExecutor dbExecutor;
+
+    private final int maxBatchSize = ConfigLoader.getIntProperty("transfer_batch_max_size", 100000);
+    private final int exportFetchSize = ConfigLoader.getIntProperty("export_fetch_size", 1000);
+
     /**
      * API - /Account/1234 for get account by id
      *
      * @param accountId {@link Long}
-     *
-     * @return Account
-     *
-     * @throws AccountTransferException
+     * @param ifNoneMatch ETag the client has, answered with 304 if the account didn't change
+     * @param asyncResponse resumed with the account and its ETag
      */
     @GET
     @Path("/{accountId}")
-    public Account getAccountById(@PathParam("accountId") Long accountId) throws AccountTransferException {
+    public void getAccountById(@PathParam("accountId") Long accountId,
+                               @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                               @Suspended AsyncResponse asyncResponse) {
         log.info("Getting account by id");
+        dbExecutor.execute(asyncResponse, () -> {
+            Account account = accountService.getAccountById(accountId);
 
-        Account account = accountService.getAccountById(accountId);
+            if (account == null) {
+                throw new WebApplicationException("Account with id: " + accountId + " not found", Response.Status.NOT_FOUND);
+            }
+            return EntityTags.ok(account, accountService.getVersionTag(account), ifNoneMatch);
+        });
+    }
 
-        if (account == null) {
-            throw new WebApplicationException("Account with id: " + accountId + " not found", Response.Status.NOT_FOUND);
+    /**
+     * API - /Account for get all accounts, streamed without page parameters
+     * API - /Account?after=1234&limit=100 for get page of accounts ordered by id
+     * API - /Account?ids=1,2,3 for get accounts by ids in the given order
+     *
+     * @param afterAccountId id of the last account of the previous page
+     * @param limit max count of accounts in the page
+     * @param ids comma separated ids
+     * @param uriInfo {@link UriInfo}
+     * @param request {@link HttpServletRequest} for aborting a stream which fails midway
+     * @param asyncResponse resumed with list of accounts
+     */
+    @GET
+    public void getAllAccounts(@QueryParam("after") Long afterAccountId,
+                               @QueryParam("limit") Integer limit,
+                               @QueryParam("ids") String ids,
+                               @Context UriInfo uriInfo,
+                               @Context HttpServletRequest request,
+                               @Suspended AsyncResponse asyncResponse) {
+        log.info("Getting all accounts");
+        if (ids != null) {
+            List<Long> accountIds = IdLookup.parse(ids);
+            dbExecutor.execute(asyncResponse, () -> IdLookup.result(accountIds, accountService.getAccountsByIds(accountIds)));
+            return;
+        }
+        if (afterAccountId == null && limit == null) {
+            ResponseAbort abort = ResponseAbort.of(request);
+            dbExecutor.execute(asyncResponse, () -> Response.ok(new JsonArrayOutput(
+                    JsonArrayOutput.RowSource.of(accountService.openAccounts()), abort)).build());
+            return;
         }
-        return account;
+        int pageSize = KeysetPage.limit(limit);
+        dbExecutor.execute(asyncResponse, () -> KeysetPage.response(
+                accountService.getAccountsPage(afterAccountId, pageSize + 1), pageSize, uriInfo, Account::getAccountId));
     }
 
     /**
-     * API - /Account for get all accounts
+     * API - /Account/export for get all accounts as NDJSON, gzipped when the client accepts it
      *
-     * @return List of accounts
-     *
-     * @throws AccountTransferException
+     * @param acceptEncoding value of Accept-Encoding header
+     * @param request {@link HttpServletRequest} for aborting an export which fails midway
+     * @param asyncResponse resumed with accounts streamed from the database
      */
     @GET
-    public List<Account> getAllUsers() throws AccountTransferException {
-        log.info("Getting all accounts");
+    @Path("/export")
+    @Produces(NdjsonOutput.NDJSON)
+    public void exportAccounts(@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                               @Context HttpServletRequest request,
+                               @Suspended AsyncResponse asyncResponse) {
+        log.info("Exporting accounts");
+        ResponseAbort abort = ResponseAbort.of(request);
+        dbExecutor.execute(asyncResponse, () -> NdjsonOutput.response(
+                JsonArrayOutput.RowSource.of(accountService.openAccounts(exportFetchSize)), acceptEncoding, abort));
+    }
 
-        return accountService.getAllAccounts();
+    /**
+     * API - /Account/lookup for get accounts by a JSON array of ids in the given order
+     *
+     * @param ids list of {@link Long}
+     * @param asyncResponse resumed with accounts and ids which weren't found
+     */
+    @POST
+    @Path("/lookup")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void lookupAccounts(List<Long> ids, @Suspended AsyncResponse asyncResponse) {
+        List<Long> accountIds = IdLookup.check(ids);
+        dbExecutor.execute(asyncResponse, () -> IdLookup.result(accountIds, accountService.getAccountsByIds(accountIds)));
     }
 
     /**
      * API - /Account/add for add new account
      *
      * @param account {@link Account}
-     *
-     * @return Response
-     *
-     * @throws AccountTransferException
+     * @param asyncResponse {@link AsyncResponse}
      */
     @POST
     @Path("/add")
-    public Response addAccount(Account account) throws AccountTransferException {
+    public void addAccount(Account account, @Suspended AsyncResponse asyncResponse) {
         log.info("Adding new account ...");
-        if (accountService.getAccountById(account.getAccountId()) != null) {
-            throw new WebApplicationException("Account already exist", Response.Status.BAD_REQUEST);
-        }
-        accountService.addAccount(account);
-        return Response.status(Response.Status.OK).build();
+        dbExecutor.execute(asyncResponse, () -> {
+            if (account.getAccountId() != null && accountService.getAccountById(account.getAccountId()) != null) {
+                throw new WebApplicationException("Account already exist", Response.Status.BAD_REQUEST);
+            }
+            accountService.addAccount(account);
+            return Response.status(Response.Status.OK).build();
+        });
+    }
+
+    /**
+     * API - /Account/import for add many accounts from NDJSON or CSV with a header of account properties
+     *
+     * @param body request body read while rows are inserted
+     * @param contentType application/x-ndjson or text/csv
+     * @param asyncResponse resumed with counts of imported and rejected rows
+     */
+    @POST
+    @Path("/import")
+    @Consumes({ImportReader.NDJSON, ImportReader.CSV})
+    public void importAccounts(InputStream body, @HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType,
+                               @Suspended AsyncResponse asyncResponse) {
+        log.info("Importing accounts ...");
+        dbExecutor.execute(asyncResponse, () -> {
+            ImportReader<Account> rows;
+            try {
+                rows = ImportReader.open(body, contentType, Account.class, AccountService.IMPORT_COLUMNS);
+            } catch (AccountTransferException ex) {
+                throw new WebApplicationException(ex.getMessage(), Response.Status.BAD_REQUEST);
+            }
+            try {
+                return accountService.importAccounts(rows);
+            } finally {
+                rows.close();
+            }
+        });
     }
 
     /**
      * API - /Account/accountId for update account
      *
      * @param accountId {@link Long}
-     * @param account {@link Account}
-     *
-     * @return Response
-     *
-     * @throws AccountTransferException
+     * @param ifMatch ETag of the account the update is based on, 412 if the account changed since
+     * @param account {@link Account}, 400 without balance
+     * @param asyncResponse {@link AsyncResponse}
      */
     @PUT
     @Path("/{accountId}")
-    public Response updateAccount(@PathParam("accountId") Long accountId, Account account) throws AccountTransferException {
-        accountService.updateAccount(accountId, account);
-        return Response.status(Response.Status.OK).build();
+    public void updateAccount(@PathParam("accountId") Long accountId, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                              Account account, @Suspended AsyncResponse asyncResponse) {
+        if (account == null || account.getAccountBalance() == null) {
+            // the ledger can't tell a missing balance from zero, so it's never defaulted
+            throw new WebApplicationException("Account balance is required", Response.Status.BAD_REQUEST);
+        }
+        String expectedTag = EntityTags.expected(ifMatch);
+        dbExecutor.execute(asyncResponse, () -> {
+            if (!accountService.updateAccount(accountId, account, expectedTag) && expectedTag != null) {
+                throw new WebApplicationException("Account with id: " + accountId + " changed",
+                        Response.Status.PRECONDITION_FAILED);
+            }
+            return Response.status(Response.Status.OK).build();
+        });
     }
 
     /**
      * API - /Account/accountId for delete account
      *
      * @param accountId {@link Long}
-     *
-     * @return Response
-     *
-     * @throws AccountTransferException
+     * @param asyncResponse {@link AsyncResponse}
      */
     @DELETE
     @Path("/{accountId}")
-    public Response deleteAccount(@PathParam("accountId") long accountId) throws AccountTransferException {
-        accountService.deleteAccount(accountId);
-        return Response.status(Response.Status.OK).build();
+    public void deleteAccount(@PathParam("accountId") long accountId, @Suspended AsyncResponse asyncResponse) {
+        dbExecutor.execute(asyncResponse, () -> {
+            accountService.deleteAccount(accountId);
+            return Response.status(Response.Status.OK).build();
+        });
     }
 
+    /**
+     * API - /Account/transfer/from/to/amount for transfer money between accounts
+     *
+     * @param fromAccount {@link Long}
+     * @param toAccount {@link Long}
+     * @param amount {@link BigDecimal}
+     * @param idempotencyKey repeated requests with the same key get the result of the first one
+     * @param asyncResponse resumed with retries and lock wait of the transfer
+     */
     @POST
     @Path("/transfer/{fromAccountId}/{toAccountId}/{amount}")
-    public Response transferBalance(@PathParam("fromAccountId") Long fromAccount,
-                                    @PathParam("toAccountId") Long toAccount,
-                                    @PathParam("amount") BigDecimal amount) throws AccountTransferException {
-        accountService.transferBalance(fromAccount, toAccount, amount);
-        return Response.status(Response.Status.OK).build();
+    public void transferBalance(@PathParam("fromAccountId") Long fromAccount,
+                                @PathParam("toAccountId") Long toAccount,
+                                @PathParam("amount") BigDecimal amount,
+                                @HeaderParam(IdempotencyCache.HEADER) String idempotencyKey,
+                                @Suspended AsyncResponse asyncResponse) {
+        CompletableFuture<TransferResult> transfer = idempotencyKey == null
+                ? accountService.transferBalanceAsync(fromAccount, toAccount, amount, dbExecutor)
+                : idempotencyCache.execute("transfer:" + idempotencyKey,
+                        IdempotencyCache.fingerprint(fromAccount, toAccount, amount),
+                        () -> accountService.transferBalanceAsync(fromAccount, toAccount, amount, dbExecutor));
+        transfer.whenComplete((result, error) -> dbExecutor.resume(asyncResponse,
+                Response.status(Response.Status.OK).entity(result).build(), error));
+    }
+
+    /**
+     * API - /Account/transfer/batch?mode=best_effort for transfer money between many accounts
+     *
+     * @param transfers list of {@link TransferRequest}
+     * @param mode all_or_nothing (default) or best_effort
+     * @param idempotencyKey repeated requests with the same key get the result of the first one
+     * @param asyncResponse resumed with result of every transfer
+     */
+    @POST
+    @Path("/transfer/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void transferBatch(List<TransferRequest> transfers,
+                              @QueryParam("mode") @DefaultValue("all_or_nothing") String mode,
+                              @HeaderParam(IdempotencyCache.HEADER) String idempotencyKey,
+                              @Suspended AsyncResponse asyncResponse) {
+        log.info("Transfer batch ...");
+        BatchMode batchMode;
+        try {
+            batchMode = BatchMode.valueOf(mode.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new WebApplicationException("Unknown batch mode: " + mode, Response.Status.BAD_REQUEST);
+        }
+        if (transfers == null || transfers.isEmpty()) {
+            throw new WebApplicationException("Batch has no transfers", Response.Status.BAD_REQUEST);
+        }
+        if (transfers.size() > maxBatchSize) {
+            throw new WebApplicationException("Batch is larger than " + maxBatchSize + " transfers", Response.Status.BAD_REQUEST);
+        }
+        // a repeated request waits on the future of the first one, not on a database thread
+        CompletableFuture<BatchTransferResult> batch = idempotencyKey == null
+                ? accountService.transferBatchAsync(transfers, batchMode, dbExecutor)
+                : idempotencyCache.execute("batch:" + idempotencyKey, fingerprint(batchMode, transfers),
+                        () -> accountService.transferBatchAsync(transfers, batchMode, dbExecutor));
+        batch.whenComplete((result, error) -> dbExecutor.resume(asyncResponse,
+                error == null ? batchResponse(batchMode, result) : null, error));
+    }
+
+    private static Response batchResponse(BatchMode batchMode, BatchTransferResult result) {
+        Response.Status status = batchMode == BatchMode.ALL_OR_NOTHING && result.getFailed() > 0
+                ? Response.Status.CONFLICT
+                : Response.Status.OK;
+        return Response.status(status).entity(result).build();
+    }
+
+    /**
+     * Fingerprint of the batch with amounts of its transfers compared by value
+     */
+    private static String fingerprint(BatchMode batchMode, List<TransferRequest> transfers) {
+        Object[] values = new Object[transfers.size() * 3 + 1];
+        values[0] = batchMode;
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            values[i * 3 + 1] = transfer.getFromAccountId();
+            values[i * 3 + 2] = transfer.getToAccountId();
+            values[i * 3 + 3] = transfer.getAmount();
+        }
+        return IdempotencyCache.fingerprint(values);
     }
 
 }
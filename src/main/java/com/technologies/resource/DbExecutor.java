@@ -0,0 +1,212 @@
+package com.technologies.resource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool for the blocking database work of suspended requests.
+ *
+ * Jetty threads only parse requests and hand them over. When every thread is busy and
+ * the queue is full the request is answered with 503 and Retry-After right away instead
+ * of waiting for a connection behind everyone else. With virtual threads every request gets
+ * a new virtual thread instead of a pooled one: a semaphore admits threads plus queue size
+ * requests and another lets threads of them run at once, the rest wait without holding a
+ * platform thread. H2 1.4.195 JDBC methods are synchronized, so on JDK 21 a virtual thread
+ * blocked inside them still pins its carrier thread.
+ */
+@Slf4j
+public class DbExecutor implements Executor {
+
+    public static final String RETRY_AFTER = "Retry-After";
+
+    // one of them is null, depending on the thread kind
+    private final ThreadPoolExecutor pool;
+    private final ExecutorService virtualThreads;
+    private final int threads;
+    private final int queueCapacity;
+    private final Semaphore admitted;
+    private final Semaphore running;
+    private final long retryAfterSeconds;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public DbExecutor(int threads, int queueSize, long retryAfterSeconds, boolean virtualThreads) {
+        this.threads = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueSize);
+        this.retryAfterSeconds = retryAfterSeconds;
+        if (virtualThreads) {
+            this.pool = null;
+            this.virtualThreads = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("db-executor-", 1).factory());
+            this.admitted = new Semaphore(this.threads + queueCapacity);
+            this.running = new Semaphore(this.threads);
+        } else {
+            this.pool = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), platformThreads(),
+                    (runnable, executor) -> {
+                        rejected.increment();
+                        throw new RejectedExecutionException("Database executor queue is full");
+                    });
+            this.virtualThreads = null;
+            this.admitted = null;
+            this.running = null;
+        }
+    }
+
+    /**
+     * Run blocking work and resume the request with its result
+     *
+     * @param asyncResponse {@link AsyncResponse}
+     * @param task {@link Task} returning an entity or a {@link Response}
+     */
+    public <T> void execute(AsyncResponse asyncResponse, Task<T> task) {
+        try {
+            execute(() -> {
+                try {
+                    T result = task.run();
+                    if (!asyncResponse.resume(result)) {
+                        closeEntity(result);
+                    }
+                } catch (Exception ex) {
+                    resume(asyncResponse, null, ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            resume(asyncResponse, null, ex);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (pool != null) {
+            pool.execute(command);
+            return;
+        }
+        if (!admitted.tryAcquire()) {
+            rejected.increment();
+            throw new RejectedExecutionException("Database executor queue is full");
+        }
+        try {
+            virtualThreads.execute(() -> runBounded(command));
+        } catch (RejectedExecutionException ex) {
+            admitted.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Resume the request with the result of a future, rejected work becomes 503
+     *
+     * @param asyncResponse {@link AsyncResponse}
+     * @param value entity or {@link Response}
+     * @param error failure or null
+     */
+    public void resume(AsyncResponse asyncResponse, Object value, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof RejectedExecutionException) {
+            log.warn("Database executor is full, request rejected");
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(RETRY_AFTER, retryAfterSeconds)
+                    .entity("Server is busy, retry later")
+                    .build());
+        } else if (error != null) {
+            asyncResponse.resume(error);
+        } else {
+            asyncResponse.resume(value);
+        }
+    }
+
+    /**
+     * Get pool state
+     *
+     * @return DbExecutorStats {@link DbExecutorStats}
+     */
+    public DbExecutorStats getStats() {
+        if (pool != null) {
+            return new DbExecutorStats(pool.getPoolSize(), pool.getActiveCount(), pool.getQueue().size(),
+                    queueCapacity, pool.getCompletedTaskCount(), rejected.sum());
+        }
+        int alive = threads + queueCapacity - admitted.availablePermits();
+        int active = threads - running.availablePermits();
+        return new DbExecutorStats(alive, active, Math.max(0, alive - active), queueCapacity, completed.sum(),
+                rejected.sum());
+    }
+
+    /**
+     * Stop taking work, queued work is still run
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        } else {
+            virtualThreads.shutdown();
+        }
+    }
+
+    /**
+     * Run on the own virtual thread once fewer than threads commands are running, waiting ones are the queue
+     */
+    private void runBounded(Runnable command) {
+        try {
+            running.acquireUninterruptibly();
+            try {
+                command.run();
+            } finally {
+                running.release();
+                completed.increment();
+            }
+        } finally {
+            admitted.release();
+        }
+    }
+
+    /**
+     * Give back what a body holds when the request is gone before the body is written
+     */
+    private static void closeEntity(Object result) {
+        Object entity = result instanceof Response ? ((Response) result).getEntity() : result;
+        if (entity instanceof Closeable) {
+            try {
+                ((Closeable) entity).close();
+            } catch (IOException ex) {
+                log.warn("Can't close response body: " + ex.getMessage());
+            }
+        }
+    }
+
+    private static ThreadFactory platformThreads() {
+        AtomicInteger created = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "db-executor-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Blocking work of one request.
+     */
+    public interface Task<T> {
+
+        T run() throws Exception;
+
+    }
+
+}
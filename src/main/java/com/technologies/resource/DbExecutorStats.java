@@ -0,0 +1,18 @@
+package com.technologies.resource;
+
+import lombok.Value;
+
+/**
+ * Snapshot of the database executor.
+ */
+@Value
+public class DbExecutorStats {
+
+    private int threads;
+    private int active;
+    private int queued;
+    private int queueCapacity;
+    private long completed;
+    private long rejected;
+
+}
@@ -0,0 +1,74 @@
+package com.technologies.resource;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+
+/**
+ * ETag of a single entity: If-None-Match of GET and If-Match of PUT.
+ *
+ * Tags are strong, the value is the version tag of the service. GET of a matching
+ * If-None-Match is answered with 304 and no body. If-Match is checked by the update
+ * itself, a weak tag or a list of tags can't be checked that way and fails with 412.
+ */
+class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * Build response with the entity and its ETag, or 304 if the client has it
+     *
+     * @param entity body of the response
+     * @param tag version tag of the entity
+     * @param ifNoneMatch If-None-Match header or null
+     *
+     * @return Response {@link Response}
+     */
+    static Response ok(Object entity, String tag, String ifNoneMatch) {
+        EntityTag entityTag = new EntityTag(tag);
+        if (ifNoneMatch != null && matchesAny(ifNoneMatch, tag)) {
+            return Response.notModified(entityTag).build();
+        }
+        return Response.ok(entity).tag(entityTag).build();
+    }
+
+    /**
+     * Get the tag an update expects
+     *
+     * @param ifMatch If-Match header or null
+     *
+     * @return tag value, null when the update doesn't depend on the version
+     */
+    static String expected(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/") || value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")
+                || value.indexOf('"', 1) != value.length() - 1) {
+            throw new WebApplicationException("If-Match needs one strong ETag", Response.Status.PRECONDITION_FAILED);
+        }
+        return value.substring(1, value.length() - 1);
+    }
+
+    /**
+     * Weak comparison with every tag of the header, as If-None-Match is compared
+     */
+    private static boolean matchesAny(String header, String tag) {
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("\"" + tag + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.technologies.resource;
+
+import com.technologies.config.ConfigLoader;
+import com.technologies.model.LookupResult;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-get of list endpoints: ?ids=1,2,3 or a JSON array of ids posted to /lookup.
+ */
+class IdLookup {
+
+    private static final int maxIds = ConfigLoader.getIntProperty("lookup_max_ids", 1000);
+
+    private IdLookup() {
+    }
+
+    /**
+     * Parse comma separated ids
+     *
+     * @param ids {@link String}
+     *
+     * @return list of ids in the given order
+     */
+    static List<Long> parse(String ids) {
+        List<Long> parsed = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            if (id.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                parsed.add(Long.valueOf(id.trim()));
+            } catch (NumberFormatException ex) {
+                throw new WebApplicationException("Id is not a number: " + id, Response.Status.BAD_REQUEST);
+            }
+        }
+        return check(parsed);
+    }
+
+    /**
+     * Check requested ids
+     *
+     * @param ids list of ids
+     *
+     * @return the same list
+     */
+    static List<Long> check(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new WebApplicationException("No ids to look up", Response.Status.BAD_REQUEST);
+        }
+        if (ids.size() > maxIds) {
+            throw new WebApplicationException("Can't look up more than " + maxIds + " ids", Response.Status.BAD_REQUEST);
+        }
+        if (ids.contains(null)) {
+            throw new WebApplicationException("Id can't be null", Response.Status.BAD_REQUEST);
+        }
+        return ids;
+    }
+
+    /**
+     * Build result from rows in request order
+     *
+     * @param ids requested ids
+     * @param rows row for every id, null where not found
+     *
+     * @return LookupResult {@link LookupResult}
+     */
+    static <T> LookupResult<T> result(List<Long> ids, List<T> rows) {
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (rows.get(i) == null) {
+                missing.add(ids.get(i));
+            }
+        }
+        return new LookupResult<>(rows, missing);
+    }
+
+}
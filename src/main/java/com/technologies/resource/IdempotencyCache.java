@@ -0,0 +1,185 @@
+package com.technologies.resource;
+
+import com.technologies.exception.AccountTransferException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Results of requests sent with an Idempotency-Key header.
+ *
+ * The first request with a key runs, a repeated request with the same key gets the
+ * result of the first one, waiting for it while it's still running. Failed requests
+ * are forgotten, so they can be retried. Keys of finished requests expire after the TTL
+ * and the oldest of them are dropped when the cache is full. A key whose request is still
+ * running is never dropped, a repeat of it would run it twice. A key keeps a digest of the
+ * request arguments, not the arguments, so a large batch doesn't stay in memory for the TTL.
+ */
+public class IdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ordered = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(int maxSize, long ttlSeconds) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * Run asynchronous work once per key
+     *
+     * @param key value of Idempotency-Key header with the endpoint name
+     * @param fingerprint {@link #fingerprint(Object...)} of the request, the same key with another one is rejected
+     * @param work {@link AsyncWork}
+     *
+     * @return CompletableFuture with result of the first request with the key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, String fingerprint, AsyncWork<T> work) {
+        long now = System.nanoTime();
+        Entry created = new Entry(key, fingerprint);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                break;
+            }
+            if (existing.future.isDone() && existing.expiresAt - now < 0) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!existing.fingerprint.equals(fingerprint)) {
+                throw new WebApplicationException(Response.status(UNPROCESSABLE_ENTITY)
+                        .entity(HEADER + " " + key.substring(key.indexOf(':') + 1) + " was used for another request")
+                        .build());
+            }
+            hits.increment();
+            return (CompletableFuture<T>) existing.future;
+        }
+
+        misses.increment();
+        evict(now);
+        CompletableFuture<T> result;
+        try {
+            result = work.run();
+        } catch (AccountTransferException | RuntimeException ex) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+        }
+        result.whenComplete((value, error) -> {
+            if (error == null) {
+                // queued once finished, so eviction only sees finished requests in expiry order
+                created.expiresAt = System.nanoTime() + ttlNanos;
+                order.add(created);
+                ordered.incrementAndGet();
+                created.future.complete(value);
+            } else {
+                entries.remove(key, created);
+                created.future.completeExceptionally(error);
+            }
+        });
+        return (CompletableFuture<T>) created.future;
+    }
+
+    /**
+     * Get SHA-256 of request arguments, amounts are compared by value so 1.0 and 1.00 match
+     *
+     * @param values arguments of the request
+     *
+     * @return String
+     */
+    public static String fingerprint(Object... values) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+        for (Object value : values) {
+            String text = value instanceof BigDecimal
+                    ? ((BigDecimal) value).stripTrailingZeros().toPlainString()
+                    : String.valueOf(value);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Get cache state
+     *
+     * @return IdempotencyStats {@link IdempotencyStats}
+     */
+    public IdempotencyStats getStats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return new IdempotencyStats(entries.size(), maxSize, hitCount, misses.sum(), evictions.sum(),
+                lookups == 0 ? 0 : hitCount / (double) lookups);
+    }
+
+    /**
+     * Drop expired keys and the oldest keys over the size, keys of finished requests are queued in expiry order
+     */
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = order.peek()) != null && (ordered.get() > maxSize || oldest.expiresAt - now < 0)) {
+            oldest = order.poll();
+            if (oldest == null) {
+                return;
+            }
+            ordered.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Request which gives its result as a future.
+     */
+    public interface AsyncWork<T> {
+
+        CompletableFuture<T> run() throws AccountTransferException;
+
+    }
+
+    /**
+     * Result of the first request with a key.
+     */
+    private static class Entry {
+
+        private final String key;
+        private final String fingerprint;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        // set before the future is completed
+        private volatile long expiresAt;
+
+        Entry(String key, String fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+
+    }
+
+}
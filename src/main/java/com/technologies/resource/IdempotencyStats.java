@@ -0,0 +1,18 @@
+package com.technologies.resource;
+
+import lombok.Value;
+
+/**
+ * Snapshot of the idempotency key cache.
+ */
+@Value
+public class IdempotencyStats {
+
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private double hitRate;
+
+}
@@ -0,0 +1,85 @@
+package com.technologies.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.service.RowCursor;
+import com.technologies.service.RowHandler;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response body writing rows as a JSON array while they are read from the database.
+ *
+ * The query runs before the response is built, so a failure to run it is an error status.
+ * A failure after writing started aborts the response instead of closing the array.
+ */
+class JsonArrayOutput implements StreamingOutput, Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RowSource source;
+    private final ResponseAbort abort;
+
+    JsonArrayOutput(RowSource source, ResponseAbort abort) {
+        this.source = source;
+        this.abort = abort;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (RowSource rows = source) {
+            JsonGenerator json = MAPPER.getFactory().createGenerator(output)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            try {
+                json.writeStartArray();
+                rows.stream(json::writeObject);
+                json.writeEndArray();
+            } catch (AccountTransferException | IOException | RuntimeException ex) {
+                // closing the generator would end the body as if it were complete
+                abort.abort(ex);
+                throw new WebApplicationException(ex);
+            }
+            json.close();
+        }
+    }
+
+    /**
+     * Give back the connection of rows which are not written
+     */
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    /**
+     * Running query passing its rows to the handler.
+     */
+    interface RowSource extends AutoCloseable {
+
+        void stream(RowHandler<Object> handler) throws AccountTransferException, IOException;
+
+        @Override
+        void close();
+
+        static RowSource of(RowCursor<?> cursor) {
+            return new RowSource() {
+                @Override
+                public void stream(RowHandler<Object> handler) throws AccountTransferException, IOException {
+                    cursor.forEach(handler);
+                }
+
+                @Override
+                public void close() {
+                    cursor.close();
+                }
+            };
+        }
+
+    }
+
+}
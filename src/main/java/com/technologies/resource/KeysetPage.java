@@ -0,0 +1,65 @@
+package com.technologies.resource;
+
+import com.technologies.config.ConfigLoader;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset pagination of list endpoints: ?after=lastId&limit=N.
+ *
+ * The page is read with one row more than the limit, when that row exists the
+ * response gets a Link header with rel="next" pointing after the last returned id.
+ */
+class KeysetPage {
+
+    private static final int defaultLimit = ConfigLoader.getIntProperty("page_default_limit", 100);
+    private static final int maxLimit = ConfigLoader.getIntProperty("page_max_limit", 1000);
+
+    private KeysetPage() {
+    }
+
+    /**
+     * Check requested page size
+     *
+     * @param limit {@link Integer}, null for default size
+     *
+     * @return int
+     */
+    static int limit(Integer limit) {
+        if (limit == null) {
+            return defaultLimit;
+        }
+        if (limit <= 0 || limit > maxLimit) {
+            throw new WebApplicationException("Limit must be between 1 and " + maxLimit, Response.Status.BAD_REQUEST);
+        }
+        return limit;
+    }
+
+    /**
+     * Build response from rows read with limit + 1
+     *
+     * @param rows rows ordered by id
+     * @param limit page size
+     * @param uriInfo {@link UriInfo} of the request
+     * @param idOf id of a row
+     *
+     * @return Response
+     */
+    static <T> Response response(List<T> rows, int limit, UriInfo uriInfo, Function<T, Long> idOf) {
+        if (rows.size() <= limit) {
+            return Response.ok(rows).build();
+        }
+        List<T> page = rows.subList(0, limit);
+        return Response.ok(page)
+                .link(uriInfo.getRequestUriBuilder()
+                        .replaceQueryParam("after", idOf.apply(page.get(limit - 1)))
+                        .replaceQueryParam("limit", limit)
+                        .build(), "next")
+                .build();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.technologies.resource;
+
+import com.technologies.metrics.Histogram;
+import com.technologies.metrics.Metrics;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times every request and counts responses by resource method and status.
+ */
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START = MetricsFilter.class.getName() + ".start";
+    private static final String UNMATCHED = "unmatched";
+
+    private final Map<String, Histogram> durations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> responses = new ConcurrentHashMap<>();
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object start = requestContext.getProperty(START);
+        if (start == null) {
+            return;
+        }
+        String resource = resourceName();
+        durations.computeIfAbsent(resource, key -> Metrics.histogram(Metrics.HTTP_REQUEST_DURATION, "resource", key))
+                .recordSince((Long) start);
+        responses.computeIfAbsent(resource + ' ' + responseContext.getStatus(), key -> Metrics.counter(Metrics.HTTP_REQUESTS,
+                "resource", resource, "status", Integer.toString(responseContext.getStatus())))
+                .increment();
+    }
+
+    private String resourceName() {
+        Method method = resourceInfo == null ? null : resourceInfo.getResourceMethod();
+        if (method == null) {
+            return UNMATCHED;
+        }
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+
+}
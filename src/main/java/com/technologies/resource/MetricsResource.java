@@ -0,0 +1,26 @@
+package com.technologies.resource;
+
+import com.technologies.metrics.Metrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+/**
+ * Resources for metrics in Prometheus text format.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    /**
+     * API - /Metrics for scrape of all counters and histograms
+     *
+     * @return String
+     */
+    @GET
+    @Produces("text/plain; version=0.0.4")
+    public String getMetrics() {
+        return Metrics.scrape();
+    }
+
+}
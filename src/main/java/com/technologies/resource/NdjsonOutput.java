@@ -0,0 +1,106 @@
+package com.technologies.resource;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.exception.AccountTransferException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response body writing rows as newline delimited JSON while they are read from the database.
+ *
+ * Nothing but the current row and the output buffers is kept, so memory doesn't depend
+ * on the count of rows. The body is optionally gzipped on the fly, so the response
+ * varies by Accept-Encoding either way. The query runs before the response is built and
+ * a failure after writing started aborts the response, so an export is never cut short silently.
+ */
+class NdjsonOutput implements StreamingOutput, Closeable {
+
+    static final String NDJSON = "application/x-ndjson";
+    static final String GZIP = "gzip";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final JsonArrayOutput.RowSource source;
+    private final boolean gzip;
+    private final ResponseAbort abort;
+
+    NdjsonOutput(JsonArrayOutput.RowSource source, boolean gzip, ResponseAbort abort) {
+        this.source = source;
+        this.gzip = gzip;
+        this.abort = abort;
+    }
+
+    /**
+     * Build response streaming the rows, gzipped when the client takes it
+     *
+     * @param source rows of the query which already runs
+     * @param acceptEncoding value of Accept-Encoding header
+     * @param abort {@link ResponseAbort} of the request
+     *
+     * @return Response {@link Response}
+     */
+    static Response response(JsonArrayOutput.RowSource source, String acceptEncoding, ResponseAbort abort) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        Response.ResponseBuilder response = Response.ok(new NdjsonOutput(source, gzip, abort))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return gzip ? response.header(HttpHeaders.CONTENT_ENCODING, GZIP).build() : response.build();
+    }
+
+    /**
+     * Check that the client takes gzip
+     *
+     * @param acceptEncoding value of Accept-Encoding header
+     *
+     * @return boolean
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (GZIP.equalsIgnoreCase(parts[0].trim())) {
+                return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (JsonArrayOutput.RowSource rows = source) {
+            OutputStream body = gzip ? new GZIPOutputStream(output, GZIP_BUFFER_SIZE) : output;
+            JsonGenerator json = MAPPER.getFactory().createGenerator(body);
+            json.setRootValueSeparator(null);
+            try {
+                rows.stream(row -> {
+                    json.writeObject(row);
+                    json.writeRaw('\n');
+                });
+            } catch (AccountTransferException | IOException | RuntimeException ex) {
+                // closing would end the body or write the gzip trailer as if all rows were sent
+                abort.abort(ex);
+                throw new WebApplicationException(ex);
+            }
+            json.close();
+        }
+    }
+
+    /**
+     * Give back the connection of rows which are not written
+     */
+    @Override
+    public void close() {
+        source.close();
+    }
+
+}
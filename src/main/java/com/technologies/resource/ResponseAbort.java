@@ -0,0 +1,34 @@
+package com.technologies.resource;
+
+import org.eclipse.jetty.server.Request;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Ends a response whose body is partly sent without its regular end.
+ *
+ * Once the status is sent a failure can't become an error status any more, and closing the body
+ * normally would end it with the last chunk or the gzip trailer, so a cut-short body would look
+ * complete. The connection, or the stream with HTTP/2, is reset instead.
+ */
+interface ResponseAbort {
+
+    void abort(Throwable error);
+
+    /**
+     * Get abort of the request, to be called on the request thread
+     *
+     * @param request {@link HttpServletRequest}
+     *
+     * @return ResponseAbort {@link ResponseAbort}
+     */
+    static ResponseAbort of(HttpServletRequest request) {
+        Request baseRequest = Request.getBaseRequest(request);
+        return error -> {
+            if (baseRequest != null) {
+                baseRequest.getHttpChannel().abort(error);
+            }
+        };
+    }
+
+}
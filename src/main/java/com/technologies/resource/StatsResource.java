@@ -0,0 +1,141 @@
+package com.technologies.resource;
+
+import com.technologies.cache.CacheStats;
+import com.technologies.config.ConnectionStats;
+import com.technologies.config.DbConfig;
+import com.technologies.config.ServerFactory;
+import com.technologies.db.PoolStats;
+import com.technologies.service.AccountService;
+import com.technologies.service.UserIndexStats;
+import com.technologies.service.UserService;
+import com.technologies.transfer.JournalStats;
+import com.technologies.transfer.Ledger;
+import com.technologies.transfer.ShardStats;
+import com.technologies.transfer.ShardedTransferEngine;
+import com.technologies.transfer.TransferEngines;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resources for runtime statistics.
+ */
+@Path("/stats")
+@Produces(MediaType.APPLICATION_JSON)
+public class StatsResource {
+
+    @Inject
+    IdempotencyCache idempotencyCache;
+
+    @Inject
+    DbExecutor dbExecutor;
+
+    @Inject
+    AccountService accountService;
+
+    @Inject
+    UserService userService;
+
+    /**
+     * API - /Stats/pool for get connection pool state
+     *
+     * @return PoolStats
+     */
+    @GET
+    @Path("/pool")
+    public PoolStats getPoolStats() {
+        return DbConfig.getPoolStats();
+    }
+
+    /**
+     * API - /Stats/connections for get HTTP connection counts and bytes on the wire
+     *
+     * @return ConnectionStats
+     */
+    @GET
+    @Path("/connections")
+    public ConnectionStats getConnectionStats() {
+        return ServerFactory.getConnectionStats();
+    }
+
+    /**
+     * API - /Stats/db-executor for get queue depth and rejections of the database executor
+     *
+     * @return DbExecutorStats
+     */
+    @GET
+    @Path("/db-executor")
+    public DbExecutorStats getDbExecutorStats() {
+        return dbExecutor.getStats();
+    }
+
+    /**
+     * API - /Stats/cache for get account and user cache state
+     *
+     * @return List of caches
+     */
+    @GET
+    @Path("/cache")
+    public List<CacheStats> getCacheStats() {
+        return Arrays.asList(accountService.getCacheStats(), userService.getCacheStats());
+    }
+
+    /**
+     * API - /Stats/user-index for get user name index size and lookup latency
+     *
+     * @return UserIndexStats
+     */
+    @GET
+    @Path("/user-index")
+    public UserIndexStats getUserIndexStats() {
+        return userService.getNameIndexStats();
+    }
+
+    /**
+     * API - /Stats/idempotency for get idempotency key cache state
+     *
+     * @return IdempotencyStats
+     */
+    @GET
+    @Path("/idempotency")
+    public IdempotencyStats getIdempotencyStats() {
+        return idempotencyCache.getStats();
+    }
+
+    /**
+     * API - /Stats/pipeline for get transfer pipeline shards state
+     *
+     * @return List of shards
+     */
+    @GET
+    @Path("/pipeline")
+    public List<ShardStats> getPipelineStats() {
+        if (!(TransferEngines.get() instanceof ShardedTransferEngine)) {
+            throw new WebApplicationException("Transfer pipeline is not enabled", Response.Status.NOT_FOUND);
+        }
+        return ((ShardedTransferEngine) TransferEngines.get()).getStats();
+    }
+
+    /**
+     * API - /Stats/journal for get transfer journal state
+     *
+     * @return JournalStats
+     */
+    @GET
+    @Path("/journal")
+    public JournalStats getJournalStats() {
+        Ledger ledger = TransferEngines.getLedger();
+        if (ledger == null || ledger.getJournal() == null) {
+            throw new WebApplicationException("Transfer journal is not enabled", Response.Status.NOT_FOUND);
+        }
+        return ledger.getJournal().getStats();
+    }
+
+}
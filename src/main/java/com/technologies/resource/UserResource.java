@@ -1,21 +1,33 @@
 package com.technologies.resource;
 
+import com.technologies.config.ConfigLoader;
 import com.technologies.exception.AccountTransferException;
 import com.technologies.model.User;
+import com.technologies.service.ImportReader;
 import com.technologies.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PUT;
 import javax.ws.rs.POST;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -29,92 +41,185 @@ public class UserResource {
     @Inject
     UserService userService;
 
+    @Inject
+    DbExecutor dbExecutor;
+
+    private final int exportFetchSize = ConfigLoader.getIntProperty("export_fetch_size", 1000);
+
     /**
      * API - /User/1234 for get user by id
      *
      * @param userId {@link Long}
-     *
-     * @return User
-     *
-     * @throws AccountTransferException
+     * @param ifNoneMatch ETag the client has, answered with 304 if the user didn't change
+     * @param asyncResponse resumed with the user and its ETag
      */
     @GET
     @Path("/{userId}")
-    public User getUserById(@PathParam("userId") Long userId) throws AccountTransferException {
+    public void getUserById(@PathParam("userId") Long userId,
+                            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch,
+                            @Suspended AsyncResponse asyncResponse) {
         log.info("Getting user by id");
-        User user = userService.getUserById(userId);
+        dbExecutor.execute(asyncResponse, () -> {
+            User user = userService.getUserById(userId);
 
-        if (user == null) {
-            throw new WebApplicationException("User with id: " + userId + " not found", Response.Status.NOT_FOUND);
-        }
-        return user;
+            if (user == null) {
+                throw new WebApplicationException("User with id: " + userId + " not found", Response.Status.NOT_FOUND);
+            }
+            return EntityTags.ok(user, userService.getVersionTag(user), ifNoneMatch);
+        });
     }
 
     /**
-     * API - /User for get all users
-     *
-     * @return List of users
+     * API - /User for get all users, streamed without page parameters
+     * API - /User?after=1234&limit=100 for get page of users ordered by id
+     * API - /User?ids=1,2,3 for get users by ids in the given order
      *
-     * @throws AccountTransferException
+     * @param afterUserId id of the last user of the previous page
+     * @param limit max count of users in the page
+     * @param ids comma separated ids
+     * @param uriInfo {@link UriInfo}
+     * @param request {@link HttpServletRequest} for aborting a stream which fails midway
+     * @param asyncResponse resumed with list of users
      */
     @GET
-    public List<User> getAllUsers() throws AccountTransferException {
+    public void getAllUsers(@QueryParam("after") Long afterUserId,
+                            @QueryParam("limit") Integer limit,
+                            @QueryParam("ids") String ids,
+                            @Context UriInfo uriInfo,
+                            @Context HttpServletRequest request,
+                            @Suspended AsyncResponse asyncResponse) {
         log.info("Getting all users");
+        if (ids != null) {
+            List<Long> userIds = IdLookup.parse(ids);
+            dbExecutor.execute(asyncResponse, () -> IdLookup.result(userIds, userService.getUsersByIds(userIds)));
+            return;
+        }
+        if (afterUserId == null && limit == null) {
+            ResponseAbort abort = ResponseAbort.of(request);
+            dbExecutor.execute(asyncResponse, () -> Response.ok(new JsonArrayOutput(
+                    JsonArrayOutput.RowSource.of(userService.openUsers()), abort)).build());
+            return;
+        }
+        int pageSize = KeysetPage.limit(limit);
+        dbExecutor.execute(asyncResponse, () -> KeysetPage.response(
+                userService.getUsersPage(afterUserId, pageSize + 1), pageSize, uriInfo, User::getUserId));
+    }
 
-        return userService.getAllUsers();
+    /**
+     * API - /User/export for get all users as NDJSON, gzipped when the client accepts it
+     *
+     * @param acceptEncoding value of Accept-Encoding header
+     * @param request {@link HttpServletRequest} for aborting an export which fails midway
+     * @param asyncResponse resumed with users streamed from the database
+     */
+    @GET
+    @Path("/export")
+    @Produces(NdjsonOutput.NDJSON)
+    public void exportUsers(@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                            @Context HttpServletRequest request,
+                            @Suspended AsyncResponse asyncResponse) {
+        log.info("Exporting users");
+        ResponseAbort abort = ResponseAbort.of(request);
+        dbExecutor.execute(asyncResponse, () -> NdjsonOutput.response(
+                JsonArrayOutput.RowSource.of(userService.openUsers(exportFetchSize)), acceptEncoding, abort));
+    }
+
+    /**
+     * API - /User/lookup for get users by a JSON array of ids in the given order
+     *
+     * @param ids list of {@link Long}
+     * @param asyncResponse resumed with users and ids which weren't found
+     */
+    @POST
+    @Path("/lookup")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void lookupUsers(List<Long> ids, @Suspended AsyncResponse asyncResponse) {
+        List<Long> userIds = IdLookup.check(ids);
+        dbExecutor.execute(asyncResponse, () -> IdLookup.result(userIds, userService.getUsersByIds(userIds)));
     }
 
     /**
      * API - /User/add for add new user
      *
      * @param user {@link User}
-     *
-     * @return Response
-     *
-     * @throws AccountTransferException
+     * @param asyncResponse {@link AsyncResponse}
      */
     @POST
     @Path("/add")
-    public Response addUser(User user) throws AccountTransferException {
+    public void addUser(User user, @Suspended AsyncResponse asyncResponse) {
         log.info("Adding new user ...");
-        if (userService.getUserById(user.getUserId()) != null) {
-            throw new WebApplicationException("User already exist", Response.Status.BAD_REQUEST);
-        }
-        userService.addUser(user);
-        return Response.status(Response.Status.OK).build();
+        dbExecutor.execute(asyncResponse, () -> {
+            if (user.getUserId() != null && userService.getUserById(user.getUserId()) != null) {
+                throw new WebApplicationException("User already exist", Response.Status.BAD_REQUEST);
+            }
+            userService.addUser(user);
+            return Response.status(Response.Status.OK).build();
+        });
+    }
+
+    /**
+     * API - /User/import for add many users from NDJSON or CSV with a header of user properties
+     *
+     * @param body request body read while rows are inserted
+     * @param contentType application/x-ndjson or text/csv
+     * @param asyncResponse resumed with counts of imported and rejected rows
+     */
+    @POST
+    @Path("/import")
+    @Consumes({ImportReader.NDJSON, ImportReader.CSV})
+    public void importUsers(InputStream body, @HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType,
+                            @Suspended AsyncResponse asyncResponse) {
+        log.info("Importing users ...");
+        dbExecutor.execute(asyncResponse, () -> {
+            ImportReader<User> rows;
+            try {
+                rows = ImportReader.open(body, contentType, User.class, UserService.IMPORT_COLUMNS);
+            } catch (AccountTransferException ex) {
+                throw new WebApplicationException(ex.getMessage(), Response.Status.BAD_REQUEST);
+            }
+            try {
+                return userService.importUsers(rows);
+            } finally {
+                rows.close();
+            }
+        });
     }
 
     /**
      * API - /User/userId for update user
      *
      * @param userId {@link Long}
+     * @param ifMatch ETag of the user the update is based on, 412 if the user changed since
      * @param user {@link User}
-     *
-     * @return Response
-     *
-     * @throws AccountTransferException
+     * @param asyncResponse {@link AsyncResponse}
      */
     @PUT
     @Path("/{userId}")
-    public Response updateUser(@PathParam("userId") Long userId, User user) throws AccountTransferException {
-        userService.updateUser(userId, user);
-        return Response.status(Response.Status.OK).build();
+    public void updateUser(@PathParam("userId") Long userId, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch,
+                           User user, @Suspended AsyncResponse asyncResponse) {
+        String expectedTag = EntityTags.expected(ifMatch);
+        dbExecutor.execute(asyncResponse, () -> {
+            if (!userService.updateUser(userId, user, expectedTag) && expectedTag != null) {
+                throw new WebApplicationException("User with id: " + userId + " changed",
+                        Response.Status.PRECONDITION_FAILED);
+            }
+            return Response.status(Response.Status.OK).build();
+        });
     }
 
     /**
      * API - /User/userId for delete user
      *
      * @param userId {@link Long}
-     *
-     * @return Response
-     *
-     * @throws AccountTransferException
+     * @param asyncResponse {@link AsyncResponse}
      */
     @DELETE
     @Path("/{userId}")
-    public Response deleteUser(@PathParam("userId") long userId) throws AccountTransferException {
-        userService.deleteUser(userId);
-        return Response.status(Response.Status.OK).build();
+    public void deleteUser(@PathParam("userId") long userId, @Suspended AsyncResponse asyncResponse) {
+        dbExecutor.execute(asyncResponse, () -> {
+            userService.deleteUser(userId);
+            return Response.status(Response.Status.OK).build();
+        });
     }
 
 }
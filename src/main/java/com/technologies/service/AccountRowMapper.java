@@ -0,0 +1,34 @@
+package com.technologies.service;
+
+import com.technologies.model.Account;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps account rows by column index, queries select {@link #COLUMNS} in this order.
+ */
+public class AccountRowMapper implements RowMapper<Account> {
+
+    public static final String COLUMNS = "accountId, accountNumber, accountBalance, version";
+    public static final AccountRowMapper INSTANCE = new AccountRowMapper();
+
+    private static final int ACCOUNT_ID = 1;
+    private static final int ACCOUNT_NUMBER = 2;
+    private static final int ACCOUNT_BALANCE = 3;
+    private static final int VERSION = 4;
+
+    private AccountRowMapper() {
+    }
+
+    @Override
+    public Account map(ResultSet resultSet) throws SQLException {
+        Account account = new Account();
+        account.setAccountId(resultSet.getLong(ACCOUNT_ID));
+        account.setAccountNumber(resultSet.getString(ACCOUNT_NUMBER));
+        account.setAccountBalance(resultSet.getBigDecimal(ACCOUNT_BALANCE));
+        account.setVersion(resultSet.getLong(VERSION));
+        return account;
+    }
+
+}
@@ -1,20 +1,43 @@
 package com.technologies.service;
 
+import com.technologies.cache.CacheStats;
+import com.technologies.cache.EntityCache;
+import com.technologies.config.ConfigLoader;
 import com.technologies.config.DbConfig;
 import com.technologies.exception.AccountTransferException;
+import com.technologies.metrics.Histogram;
+import com.technologies.metrics.Metrics;
 import com.technologies.model.Account;
+import com.technologies.model.BatchMode;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.ImportResult;
+import com.technologies.model.TransferRequest;
+import com.technologies.model.TransferResult;
 import com.technologies.model.User;
+import com.technologies.transfer.Ledger;
+import com.technologies.transfer.Money;
+import com.technologies.transfer.TransferEngine;
+import com.technologies.transfer.TransferEngines;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.dbutils.DbUtils;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * CRUD for account entity.
@@ -23,12 +46,41 @@ import java.util.List;
 @NoArgsConstructor
 public class AccountService {
 
-    private final String GET_ACCOUNT_BY_ID = "SELECT * FROM Account WHERE accountId = ? ";
-    private final String GET_ALL_ACCOUNTS = "SELECT * FROM Account";
+    /**
+     * Properties of an account a CSV import may have as columns
+     */
+    public static final Set<String> IMPORT_COLUMNS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("accountNumber", "accountBalance")));
+
+    private final String GET_ACCOUNT_BY_ID = "SELECT " + AccountRowMapper.COLUMNS + " FROM Account WHERE accountId = ? ";
+    private final String GET_ALL_ACCOUNTS = "SELECT " + AccountRowMapper.COLUMNS + " FROM Account ORDER BY accountId";
+    private final String GET_ACCOUNTS_PAGE = "SELECT " + AccountRowMapper.COLUMNS
+            + " FROM Account WHERE accountId > ? ORDER BY accountId LIMIT ?";
+    private final String GET_ACCOUNTS_BY_IDS = "SELECT " + AccountRowMapper.COLUMNS + " FROM Account WHERE accountId IN ";
     private final String ADD_NEW_ACCOUNT = "INSERT INTO Account (accountNumber, accountBalance) VALUES (?, ?)";
-    private final String UPDATE_ACCOUNT = "UPDATE Account SET accountNumber = ?, accountBalance = ? WHERE accountId = ? ";
+    private final String UPDATE_ACCOUNT = "UPDATE Account SET accountNumber = ?, accountBalance = ?, version = version + 1"
+            + " WHERE accountId = ? ";
+    private final String UPDATE_ACCOUNT_IF_VERSION = UPDATE_ACCOUNT + "AND version = ? ";
+    // in ledger mode the balance is written behind
+    private final String UPDATE_ACCOUNT_FIELDS = "UPDATE Account SET accountNumber = ?, version = version + 1"
+            + " WHERE accountId = ? ";
+    private final String UPDATE_ACCOUNT_FIELDS_IF_VERSION = UPDATE_ACCOUNT_FIELDS + "AND version = ? ";
     private final String DELETE_ACCOUNT = "DELETE FROM Account WHERE accountId = ? ";
-    private final static String TRANSFER_BALANCE = "SELECT * FROM Account WHERE accountId = ? FOR UPDATE";
+
+    private static final Histogram GET_ACCOUNT_BY_ID_TIME = Metrics.sql("get_account_by_id");
+    private static final Histogram GET_ALL_ACCOUNTS_TIME = Metrics.sql("get_all_accounts");
+    private static final Histogram GET_ACCOUNTS_PAGE_TIME = Metrics.sql("get_accounts_page");
+    private static final Histogram GET_ACCOUNTS_BY_IDS_TIME = Metrics.sql("get_accounts_by_ids");
+    private static final Histogram ADD_ACCOUNT_TIME = Metrics.sql("add_account");
+    private static final Histogram IMPORT_ACCOUNTS_TIME = Metrics.sql("import_accounts");
+    private static final Histogram UPDATE_ACCOUNT_TIME = Metrics.sql("update_account");
+    private static final Histogram DELETE_ACCOUNT_TIME = Metrics.sql("delete_account");
+
+    private final TransferEngine transferEngine = TransferEngines.get();
+    private final Ledger ledger = TransferEngines.getLedger();
+    private final EntityCache<Long, Account> accountCache = new EntityCache<>("account",
+            ConfigLoader.getIntProperty("entity_cache_size", 10000),
+            ConfigLoader.getLongProperty("entity_cache_ttl_ms", 30000));
 
     /**
      * Get account by ID
@@ -40,6 +92,55 @@ public class AccountService {
      * @throws AccountTransferException
      */
     public Account getAccountById(Long accountId) throws AccountTransferException {
+        return accountCache.get(accountId, () -> loadAccount(accountId));
+    }
+
+    /**
+     * Get tag of the account state for ETag and If-Match. It's the row version, in ledger mode
+     * the balance in memory is ahead of the row, so the balance is part of the tag as well
+     *
+     * @param account {@link Account}
+     *
+     * @return String
+     *
+     * @throws AccountTransferException
+     */
+    public String getVersionTag(Account account) throws AccountTransferException {
+        if (ledger == null) {
+            return String.valueOf(account.getVersion());
+        }
+        return account.getVersion() + ":" + Money.roundToUnits(account.getAccountBalance());
+    }
+
+    /**
+     * Get version and balance of the tag, null when it can't be a tag of this mode
+     */
+    private long[] parseVersionTag(String tag) {
+        String[] parts = tag.split(":", -1);
+        if (parts.length != (ledger == null ? 1 : 2)) {
+            return null;
+        }
+        try {
+            return ledger == null ? new long[]{Long.parseLong(parts[0])}
+                    : new long[]{Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Get state of the account cache
+     *
+     * @return CacheStats {@link CacheStats}
+     */
+    public CacheStats getCacheStats() {
+        return accountCache.getStats();
+    }
+
+    /**
+     * Read account from the database
+     */
+    private Account loadAccount(Long accountId) throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
         ResultSet resultSet = null;
@@ -49,13 +150,12 @@ public class AccountService {
             conn = DbConfig.getConnection();
             prepStatement = conn.prepareStatement(GET_ACCOUNT_BY_ID);
             prepStatement.setLong(1, accountId);
+            long start = System.nanoTime();
             resultSet = prepStatement.executeQuery();
             if (resultSet.next()) {
-                account = new Account();
-                account.setAccountId(resultSet.getLong("accountId"));
-                account.setAccountNumber(resultSet.getString("accountNumber"));
-                account.setAccountBalance(resultSet.getBigDecimal("accountBalance"));
+                account = readAccount(resultSet);
             }
+            GET_ACCOUNT_BY_ID_TIME.recordSince(start);
             return account;
         } catch (SQLException ex) {
             log.error("Can't find account with id: " + accountId);
@@ -66,31 +166,64 @@ public class AccountService {
     }
 
     /**
-     * Get all accounts
+     * Get accounts by ids on one connection
+     *
+     * @param accountIds list of {@link Long}
+     *
+     * @return account for every id in the same order, null where the account doesn't exist
+     *
+     * @throws AccountTransferException
+     */
+    public List<Account> getAccountsByIds(List<Long> accountIds) throws AccountTransferException {
+        Connection conn = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            Map<Long, Account> found = IdQuery.read(conn, GET_ACCOUNTS_BY_IDS, accountIds, AccountRowMapper.INSTANCE,
+                    Account::getAccountId, GET_ACCOUNTS_BY_IDS_TIME);
+            List<Account> accounts = new ArrayList<>(accountIds.size());
+            for (Long accountId : accountIds) {
+                accounts.add(found.get(accountId));
+            }
+            for (Account account : found.values()) {
+                applyLedgerBalance(account);
+            }
+            return accounts;
+        } catch (SQLException ex) {
+            log.error("Can't get accounts by ids");
+            throw new AccountTransferException("Account data: " + ex.getMessage());
+        } finally {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Get page of accounts ordered by id
+     *
+     * @param afterAccountId id of the last account of the previous page, null for the first page
+     * @param limit max count of accounts
      *
      * @return List of accounts
      *
      * @throws AccountTransferException
      */
-    public List<Account> getAllAccounts() throws AccountTransferException {
+    public List<Account> getAccountsPage(Long afterAccountId, int limit) throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
         ResultSet resultSet = null;
-        Account account = null;
-        List<Account> accounts = new ArrayList<>();
+        List<Account> accounts = new ArrayList<>(limit);
 
         try {
             conn = DbConfig.getConnection();
-            prepStatement = conn.prepareStatement(GET_ALL_ACCOUNTS);
+            prepStatement = conn.prepareStatement(GET_ACCOUNTS_PAGE);
+            prepStatement.setLong(1, afterAccountId == null ? Long.MIN_VALUE : afterAccountId);
+            prepStatement.setInt(2, limit);
+            long start = System.nanoTime();
             resultSet = prepStatement.executeQuery();
-            if (resultSet.next()) {
-                account = new Account();
-                account.setAccountId(resultSet.getLong("accountId"));
-                account.setAccountNumber(resultSet.getString("accountNumber"));
-                account.setAccountBalance(resultSet.getBigDecimal("accountBalance"));
-
-                accounts.add(account);
+            while (resultSet.next()) {
+                accounts.add(readAccount(resultSet));
             }
+            GET_ACCOUNTS_PAGE_TIME.recordSince(start);
             return accounts;
         } catch (SQLException ex) {
             log.error("Can't get account data");
@@ -100,6 +233,58 @@ public class AccountService {
         }
     }
 
+    /**
+     * Pass all accounts ordered by id to the handler as they are read
+     *
+     * @param handler {@link RowHandler}
+     *
+     * @throws AccountTransferException
+     * @throws IOException when the handler fails
+     */
+    public void streamAccounts(RowHandler<? super Account> handler) throws AccountTransferException, IOException {
+        streamAccounts(handler, DbConfig.getStreamFetchSize());
+    }
+
+    /**
+     * Pass all accounts ordered by id to the handler, read from a forward-only cursor in fetches of the given size
+     *
+     * @param handler {@link RowHandler}
+     * @param fetchSize count of rows fetched at once
+     *
+     * @throws AccountTransferException
+     * @throws IOException when the handler fails
+     */
+    public void streamAccounts(RowHandler<? super Account> handler, int fetchSize) throws AccountTransferException, IOException {
+        try (RowCursor<Account> accounts = openAccounts(fetchSize)) {
+            accounts.forEach(handler);
+        }
+    }
+
+    /**
+     * Execute the query of all accounts ordered by id, the rows are read when they are passed on
+     *
+     * @return RowCursor {@link RowCursor} holding a connection until it's closed
+     *
+     * @throws AccountTransferException
+     */
+    public RowCursor<Account> openAccounts() throws AccountTransferException {
+        return openAccounts(DbConfig.getStreamFetchSize());
+    }
+
+    /**
+     * Execute the query of all accounts ordered by id, the rows are read from a forward-only cursor
+     * in fetches of the given size when they are passed on
+     *
+     * @param fetchSize count of rows fetched at once
+     *
+     * @return RowCursor {@link RowCursor} holding a connection until it's closed
+     *
+     * @throws AccountTransferException
+     */
+    public RowCursor<Account> openAccounts(int fetchSize) throws AccountTransferException {
+        return RowCursor.open(GET_ALL_ACCOUNTS, fetchSize, this::readAccount, GET_ALL_ACCOUNTS_TIME, "Account");
+    }
+
     /**
      * Add new account
      *
@@ -116,16 +301,38 @@ public class AccountService {
             prepStatement = conn.prepareStatement(ADD_NEW_ACCOUNT);
             prepStatement.setString(1, account.getAccountNumber());
             prepStatement.setBigDecimal(2, account.getAccountBalance());
+            long start = System.nanoTime();
             int result = prepStatement.executeUpdate();
+            ADD_ACCOUNT_TIME.recordSince(start);
         } catch (SQLException ex) {
             log.error("Can't add new account");
             throw new AccountTransferException("Add account: " + ex.getMessage());
         } finally {
-            DbUtils.closeQuietly(conn);
             DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
         }
     }
 
+    /**
+     * Insert accounts of an import body with JDBC batches
+     *
+     * @param rows {@link ImportReader} of accounts
+     *
+     * @return ImportResult {@link ImportResult}
+     *
+     * @throws AccountTransferException
+     */
+    public ImportResult importAccounts(ImportReader<Account> rows) throws AccountTransferException {
+        return new BatchInsert<Account>(ADD_NEW_ACCOUNT, IMPORT_ACCOUNTS_TIME, (prepStatement, account) -> {
+            if (account.getAccountBalance() == null || account.getAccountBalance().signum() < 0) {
+                return "Account balance must be zero or more";
+            }
+            prepStatement.setString(1, account.getAccountNumber());
+            prepStatement.setBigDecimal(2, account.getAccountBalance());
+            return null;
+        }).run(rows);
+    }
+
     /**
      * Update current account
      *
@@ -135,22 +342,81 @@ public class AccountService {
      * @throws AccountTransferException
      */
     public void updateAccount(Long accountId, Account account) throws AccountTransferException {
+        updateAccount(accountId, account, null);
+    }
+
+    /**
+     * Update current account if it's still in the state of the tag, with one compare-and-set statement
+     *
+     * @param accountId {@link Long}
+     * @param account {@link Account}
+     * @param expectedTag from {@link #getVersionTag(Account)}, null to update whatever the state is
+     *
+     * @return false if the account changed since the tag or doesn't exist
+     *
+     * @throws AccountTransferException also when the account has no balance
+     */
+    public boolean updateAccount(Long accountId, Account account, String expectedTag) throws AccountTransferException {
+        long[] expected = null;
+        if (account.getAccountBalance() == null) {
+            throw new AccountTransferException("Account balance is required");
+        }
+        if (expectedTag != null) {
+            expected = parseVersionTag(expectedTag);
+            if (expected == null) {
+                return false;
+            }
+        }
+
+        accountCache.beginWrite(accountId);
+        try {
+            Long expectedVersion = expected == null ? null : expected[0];
+            if (ledger == null) {
+                return writeAccount(accountId, account, expectedVersion);
+            }
+            Ledger.ConditionalUpdate update = () -> writeAccount(accountId, account, expectedVersion);
+            return expected == null ? ledger.setBalance(accountId, account.getAccountBalance(), update)
+                    : ledger.setBalanceIf(accountId, expected[1], account.getAccountBalance(), update);
+        } catch (SQLException ex) {
+            log.error("Can't update account");
+            throw new AccountTransferException("Update account: " + ex.getMessage());
+        } finally {
+            accountCache.endWrite(accountId);
+        }
+    }
+
+    /**
+     * Write the row of the account, in ledger mode without the balance
+     *
+     * @return false if the account doesn't exist or has another version
+     */
+    private boolean writeAccount(Long accountId, Account account, Long expectedVersion) throws SQLException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
 
         try {
             conn = DbConfig.getConnection();
-            prepStatement = conn.prepareStatement(UPDATE_ACCOUNT);
-            prepStatement.setString(1, account.getAccountNumber());
-            prepStatement.setBigDecimal(2, account.getAccountBalance());
-            prepStatement.setLong(3, accountId);
+            int index = 1;
+            if (ledger == null) {
+                prepStatement = conn.prepareStatement(expectedVersion == null ? UPDATE_ACCOUNT : UPDATE_ACCOUNT_IF_VERSION);
+                prepStatement.setString(index++, account.getAccountNumber());
+                prepStatement.setBigDecimal(index++, account.getAccountBalance());
+            } else {
+                prepStatement = conn.prepareStatement(expectedVersion == null ? UPDATE_ACCOUNT_FIELDS
+                        : UPDATE_ACCOUNT_FIELDS_IF_VERSION);
+                prepStatement.setString(index++, account.getAccountNumber());
+            }
+            prepStatement.setLong(index++, accountId);
+            if (expectedVersion != null) {
+                prepStatement.setLong(index, expectedVersion);
+            }
+            long start = System.nanoTime();
             int result = prepStatement.executeUpdate();
-        } catch (SQLException ex) {
-            log.error("Can't update account");
-            throw new AccountTransferException("Update account: " + ex.getMessage());
+            UPDATE_ACCOUNT_TIME.recordSince(start);
+            return result > 0;
         } finally {
-            DbUtils.closeQuietly(conn);
             DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
         }
     }
 
@@ -162,6 +428,22 @@ public class AccountService {
      * @throws AccountTransferException
      */
     public void deleteAccount(Long accountId) throws AccountTransferException {
+        accountCache.beginWrite(accountId);
+        try {
+            if (ledger != null) {
+                ledger.remove(accountId, () -> deleteRow(accountId));
+            } else {
+                deleteRow(accountId);
+            }
+        } catch (SQLException ex) {
+            log.error("Can't delete account");
+            throw new AccountTransferException("Delete account: " + ex.getMessage());
+        } finally {
+            accountCache.endWrite(accountId);
+        }
+    }
+
+    private boolean deleteRow(Long accountId) throws SQLException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
 
@@ -169,13 +451,13 @@ public class AccountService {
             conn = DbConfig.getConnection();
             prepStatement = conn.prepareStatement(DELETE_ACCOUNT);
             prepStatement.setLong(1, accountId);
+            long start = System.nanoTime();
             int result = prepStatement.executeUpdate();
-        } catch (SQLException ex) {
-            log.error("Can't delete account");
-            throw new AccountTransferException("Delete account: " + ex.getMessage());
+            DELETE_ACCOUNT_TIME.recordSince(start);
+            return result > 0;
         } finally {
-            DbUtils.closeQuietly(conn);
             DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
         }
     }
 
@@ -186,67 +468,121 @@ public class AccountService {
      * @param toAccountId {@link Account}
      * @param amount {@link BigDecimal}
      *
+     * @return TransferResult {@link TransferResult}
+     *
      * @throws AccountTransferException
      */
-    public void transferBalance(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException {
-        Connection conn = null;
-        PreparedStatement preparedStatement = null;
-        PreparedStatement updateStatement = null;
-        ResultSet resultSet = null;
-        Account fromAccount = null;
-        Account toAccount = null;
-
+    public TransferResult transferBalance(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException {
+        List<Long> accountIds = accountIds(fromAccountId, toAccountId);
+        accountIds.forEach(accountCache::beginWrite);
         try {
-            conn = DbConfig.getConnection();
-            conn.setAutoCommit(false);
-            // lock the credit and debit account for writing:
-            preparedStatement = conn.prepareStatement(TRANSFER_BALANCE);
-            preparedStatement.setLong(1, fromAccountId);
-            resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                fromAccount = new Account();
-                fromAccount.setAccountId(resultSet.getLong("accountId"));
-                fromAccount.setAccountNumber(resultSet.getString("accountNumber"));
-                fromAccount.setAccountBalance(resultSet.getBigDecimal("accountBalance"));
-            }
+            return transferEngine.transfer(fromAccountId, toAccountId, amount);
+        } finally {
+            accountIds.forEach(accountCache::endWrite);
+        }
+    }
 
-            preparedStatement = conn.prepareStatement(TRANSFER_BALANCE);
-            preparedStatement.setLong(1, toAccountId);
-            resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                toAccount = new Account();
-                toAccount.setAccountId(resultSet.getLong("accountId"));
-                toAccount.setAccountNumber(resultSet.getString("accountNumber"));
-                toAccount.setAccountBalance(resultSet.getBigDecimal("accountBalance"));
-            }
+    /**
+     * Transfer balance between accounts without blocking the caller
+     *
+     * @param fromAccountId {@link Account}
+     * @param toAccountId {@link Account}
+     * @param amount {@link BigDecimal}
+     * @param executor runs the transfer when the engine blocks
+     *
+     * @return future of {@link TransferResult}
+     */
+    public CompletableFuture<TransferResult> transferBalanceAsync(Long fromAccountId, Long toAccountId, BigDecimal amount,
+                                                                  Executor executor) {
+        List<Long> accountIds = accountIds(fromAccountId, toAccountId);
+        accountIds.forEach(accountCache::beginWrite);
+        return transferEngine.transferAsync(fromAccountId, toAccountId, amount, executor)
+                .whenComplete((result, error) -> accountIds.forEach(accountCache::endWrite));
+    }
 
-            BigDecimal leftMoney = fromAccount.getAccountBalance().subtract(amount);
-            if (leftMoney.compareTo(BigDecimal.ZERO) < 0) {
-                throw new AccountTransferException("Account doesn't have enough money for transfer");
-            }
+    /**
+     * Transfer many amounts in one request
+     *
+     * @param transfers list of {@link TransferRequest}
+     * @param mode {@link BatchMode}
+     *
+     * @return BatchTransferResult {@link BatchTransferResult}
+     *
+     * @throws AccountTransferException
+     */
+    public BatchTransferResult transferBatch(List<TransferRequest> transfers, BatchMode mode) throws AccountTransferException {
+        Set<Long> accountIds = new HashSet<>();
+        for (TransferRequest transfer : transfers) {
+            accountIds.addAll(accountIds(transfer.getFromAccountId(), transfer.getToAccountId()));
+        }
+        accountIds.forEach(accountCache::beginWrite);
+        try {
+            return transferEngine.transferBatch(transfers, mode);
+        } finally {
+            accountIds.forEach(accountCache::endWrite);
+        }
+    }
 
-            updateStatement = conn.prepareStatement(UPDATE_ACCOUNT);
-            updateStatement.setString(1, fromAccount.getAccountNumber());
-            updateStatement.setBigDecimal(2, leftMoney);
-            updateStatement.setLong(3, fromAccount.getAccountId());
-            updateStatement.addBatch();
+    /**
+     * Transfer many amounts in one request without blocking the caller
+     *
+     * @param transfers list of {@link TransferRequest}
+     * @param mode {@link BatchMode}
+     * @param executor runs the batch
+     *
+     * @return future of {@link BatchTransferResult}, failed when the executor rejects the batch
+     */
+    public CompletableFuture<BatchTransferResult> transferBatchAsync(List<TransferRequest> transfers, BatchMode mode,
+                                                                     Executor executor) {
+        CompletableFuture<BatchTransferResult> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(transferBatch(transfers, mode));
+                } catch (AccountTransferException | RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
 
-            updateStatement.setString(2, toAccount.getAccountNumber());
-            updateStatement.setBigDecimal(1, toAccount.getAccountBalance().add(amount));
-            updateStatement.setLong(3, toAccount.getAccountId());
-            updateStatement.addBatch();
+    private static List<Long> accountIds(Long fromAccountId, Long toAccountId) {
+        List<Long> accountIds = new ArrayList<>(2);
+        if (fromAccountId != null) {
+            accountIds.add(fromAccountId);
+        }
+        if (toAccountId != null && !toAccountId.equals(fromAccountId)) {
+            accountIds.add(toAccountId);
+        }
+        return accountIds;
+    }
 
-            int[] rowsUpdated = updateStatement.executeBatch();
+    /**
+     * Map current row to account
+     */
+    private Account readAccount(ResultSet resultSet) throws SQLException, AccountTransferException {
+        Account account = AccountRowMapper.INSTANCE.map(resultSet);
+        applyLedgerBalance(account);
+        return account;
+    }
 
-            conn.commit();
-        } catch (SQLException ex) {
-            log.error("Can't transfer money");
-            throw new AccountTransferException("Transfer money: " + ex.getMessage());
-        } finally {
-            DbUtils.closeQuietly(conn);
-            DbUtils.closeQuietly(preparedStatement);
-            DbUtils.closeQuietly(updateStatement);
-            DbUtils.closeQuietly(resultSet);
+    /**
+     * In ledger mode the balance in memory is ahead of the database. An account which isn't
+     * in memory has no changes waiting, its row is read with a connection already held,
+     * so it isn't loaded and keeps the balance of the row.
+     *
+     * @param account {@link Account}
+     */
+    private void applyLedgerBalance(Account account) {
+        if (ledger == null) {
+            return;
+        }
+        BigDecimal balance = ledger.peekBalance(account.getAccountId());
+        if (balance != null) {
+            account.setAccountBalance(balance);
         }
     }
 
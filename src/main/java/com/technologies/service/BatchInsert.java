@@ -0,0 +1,205 @@
+package com.technologies.service;
+
+import com.technologies.config.ConfigLoader;
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.metrics.Histogram;
+import com.technologies.model.ImportRejection;
+import com.technologies.model.ImportResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.io.IOException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Insert of imported rows with JDBC batches on one connection.
+ *
+ * Rows are sent every batch size and committed every commit interval, so a failed
+ * import keeps what was committed before. Rows rejected by validation or by the
+ * database are counted and the first ones are reported with their line numbers,
+ * the rest of their batch is still inserted. The commit listener runs after every
+ * commit, so callers can publish the committed rows before the import ends.
+ */
+@Slf4j
+class BatchInsert<T> {
+
+    private final int batchSize = Math.max(1, ConfigLoader.getIntProperty("import_batch_size", 1000));
+    private final int commitInterval = Math.max(1, ConfigLoader.getIntProperty("import_commit_interval", 10000));
+    private final int maxReportedRejections = ConfigLoader.getIntProperty("import_max_reported_rejections", 100);
+
+    private final String sql;
+    private final Histogram batchTime;
+    private final RowBinder<T> binder;
+    private final CommitListener commitListener;
+
+    BatchInsert(String sql, Histogram batchTime, RowBinder<T> binder) {
+        this(sql, batchTime, binder, () -> { });
+    }
+
+    BatchInsert(String sql, Histogram batchTime, RowBinder<T> binder, CommitListener commitListener) {
+        this.sql = sql;
+        this.batchTime = batchTime;
+        this.binder = binder;
+        this.commitListener = commitListener;
+    }
+
+    /**
+     * Insert all rows of the reader
+     *
+     * @param rows {@link ImportReader}
+     *
+     * @return ImportResult {@link ImportResult}
+     *
+     * @throws AccountTransferException when the body can't be read or the database fails
+     */
+    ImportResult run(ImportReader<T> rows) throws AccountTransferException {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        long[] batchLines = new long[batchSize];
+        int batched = 0;
+        int uncommitted = 0;
+        Outcome outcome = new Outcome();
+
+        try {
+            conn = DbConfig.getConnection();
+            conn.setAutoCommit(false);
+            prepStatement = conn.prepareStatement(sql);
+            while (rows.next()) {
+                String error = rows.getError() != null ? rows.getError() : binder.bind(prepStatement, rows.getRow());
+                if (error != null) {
+                    outcome.reject(rows.getLine(), error);
+                    continue;
+                }
+                prepStatement.addBatch();
+                batchLines[batched++] = rows.getLine();
+                if (batched == batchSize) {
+                    uncommitted += executeBatch(prepStatement, batchLines, batched, outcome);
+                    batched = 0;
+                    if (uncommitted >= commitInterval) {
+                        conn.commit();
+                        outcome.commits++;
+                        uncommitted = 0;
+                        commitListener.committed();
+                    }
+                }
+            }
+            executeBatch(prepStatement, batchLines, batched, outcome);
+            conn.commit();
+            outcome.commits++;
+            commitListener.committed();
+        } catch (SQLException ex) {
+            rollbackQuietly(conn);
+            log.error("Import stopped after " + outcome.commits + " commits");
+            throw new AccountTransferException("Import: " + ex.getMessage(), ex);
+        } catch (IOException ex) {
+            rollbackQuietly(conn);
+            log.error("Can't read import body");
+            throw new AccountTransferException("Import body: " + ex.getMessage(), ex);
+        } finally {
+            DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
+        }
+        return new ImportResult(outcome.imported, outcome.rejected, outcome.commits,
+                (System.nanoTime() - start) / 1000000, outcome.rejections);
+    }
+
+    /**
+     * Send batch, rows the database refused are rejected and the others stay in the transaction
+     *
+     * @return count of inserted rows
+     */
+    private int executeBatch(PreparedStatement prepStatement, long[] batchLines, int batched, Outcome outcome)
+            throws SQLException {
+        if (batched == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int[] counts;
+        String failure = null;
+        try {
+            counts = prepStatement.executeBatch();
+        } catch (BatchUpdateException ex) {
+            counts = ex.getUpdateCounts();
+            failure = firstLine(ex.getNextException() != null ? ex.getNextException() : ex);
+            if (counts == null) {
+                throw ex;
+            }
+        } finally {
+            batchTime.recordSince(start);
+        }
+        int inserted = 0;
+        for (int i = 0; i < batched; i++) {
+            if (i < counts.length && counts[i] != Statement.EXECUTE_FAILED) {
+                inserted++;
+            }
+        }
+        // the driver reports one exception for the batch, so it's exact only for a single failed row
+        String message = batched - inserted == 1 ? failure : "Rejected by the database, first error: " + failure;
+        for (int i = 0; i < batched; i++) {
+            if (i >= counts.length || counts[i] == Statement.EXECUTE_FAILED) {
+                outcome.reject(batchLines[i], message);
+            }
+        }
+        outcome.imported += inserted;
+        return inserted;
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            DbUtils.rollback(conn);
+        } catch (SQLException ex) {
+            log.warn("Can't rollback import: " + ex.getMessage());
+        }
+    }
+
+    private static String firstLine(SQLException ex) {
+        String message = ex.getMessage() == null ? ex.toString() : ex.getMessage();
+        return message.split("\n")[0];
+    }
+
+    /**
+     * Check the row and set it as parameters of the insert.
+     */
+    interface RowBinder<T> {
+
+        /**
+         * @return why the row is rejected, null when it's bound
+         */
+        String bind(PreparedStatement prepStatement, T row) throws SQLException;
+
+    }
+
+    /**
+     * Called after each commit of the import.
+     */
+    interface CommitListener {
+
+        void committed() throws AccountTransferException;
+
+    }
+
+    private class Outcome {
+
+        private long imported;
+        private long rejected;
+        private int commits;
+        private final List<ImportRejection> rejections = new ArrayList<>();
+
+        private void reject(long line, String message) {
+            rejected++;
+            if (rejections.size() < maxReportedRejections) {
+                rejections.add(new ImportRejection(line, message));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.technologies.service;
+
+import com.technologies.config.ConfigLoader;
+import com.technologies.metrics.Histogram;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Rows for a list of ids read with IN (...) queries of a fixed chunk size.
+ *
+ * The last chunk is padded with its last id, so every query has the same text and
+ * the prepared statement is reused for all chunks and found in the statement cache.
+ */
+class IdQuery {
+
+    private static final int chunkSize = Math.max(1, ConfigLoader.getIntProperty("lookup_chunk_size", 100));
+
+    private IdQuery() {
+    }
+
+    /**
+     * Read rows of the ids on the connection
+     *
+     * @param conn {@link Connection}
+     * @param select query ending with "WHERE id IN "
+     * @param ids requested ids, repeated ones are read once
+     * @param mapper {@link RowMapper}
+     * @param idOf id of a row
+     * @param queryTime {@link Histogram} of every chunk
+     *
+     * @return found rows by id
+     *
+     * @throws SQLException
+     */
+    static <T> Map<Long, T> read(Connection conn, String select, List<Long> ids, RowMapper<T> mapper,
+                                 Function<T, Long> idOf, Histogram queryTime) throws SQLException {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Long, T> rows = new HashMap<>(distinct.size() * 2);
+        if (distinct.isEmpty()) {
+            return rows;
+        }
+        int size = Math.min(chunkSize, distinct.size());
+        StringBuilder sql = new StringBuilder(select).append('(');
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement prepStatement = conn.prepareStatement(sql.append(')').toString())) {
+            for (int offset = 0; offset < distinct.size(); offset += size) {
+                for (int i = 0; i < size; i++) {
+                    prepStatement.setLong(i + 1, distinct.get(Math.min(offset + i, distinct.size() - 1)));
+                }
+                long start = System.nanoTime();
+                try (ResultSet resultSet = prepStatement.executeQuery()) {
+                    while (resultSet.next()) {
+                        T row = mapper.map(resultSet);
+                        rows.put(idOf.apply(row), row);
+                    }
+                }
+                queryTime.recordSince(start);
+            }
+        }
+        return rows;
+    }
+
+}
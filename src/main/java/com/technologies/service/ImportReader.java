@@ -0,0 +1,196 @@
+package com.technologies.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.technologies.exception.AccountTransferException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rows of a bulk import parsed one line at a time from NDJSON or CSV.
+ *
+ * A CSV body starts with a header naming the JSON properties of its columns.
+ * A line which can't be parsed is reported with its number instead of a row,
+ * reading goes on with the next line. Blank lines are skipped.
+ */
+public class ImportReader<T> implements Closeable {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader input;
+    private final ObjectReader reader;
+    private final String[] columns;
+    private long line;
+    private T row;
+    private String error;
+
+    private ImportReader(BufferedReader input, Class<T> type, String[] columns, long line) {
+        this.input = input;
+        this.reader = MAPPER.readerFor(type);
+        this.columns = columns;
+        this.line = line;
+    }
+
+    /**
+     * Create reader of the body by its content type
+     *
+     * @param input request body
+     * @param contentType {@link #NDJSON} or {@link #CSV}
+     * @param type class of rows
+     * @param knownColumns properties a CSV header may name
+     *
+     * @return ImportReader {@link ImportReader}
+     *
+     * @throws AccountTransferException on unknown content type or CSV header
+     * @throws IOException
+     */
+    public static <T> ImportReader<T> open(InputStream input, String contentType, Class<T> type, Set<String> knownColumns)
+            throws AccountTransferException, IOException {
+        String mediaType = contentType == null ? "" : contentType.split(";")[0].trim().toLowerCase();
+        BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        if (NDJSON.equals(mediaType)) {
+            return new ImportReader<>(lines, type, null, 0);
+        }
+        if (!CSV.equals(mediaType)) {
+            throw new AccountTransferException("Import accepts " + NDJSON + " or " + CSV + ", not " + contentType);
+        }
+        String header = lines.readLine();
+        List<String> columns;
+        try {
+            columns = header == null ? new ArrayList<>() : splitCsv(header);
+        } catch (IllegalArgumentException ex) {
+            throw new AccountTransferException("CSV header: " + ex.getMessage());
+        }
+        for (String column : columns) {
+            if (!knownColumns.contains(column)) {
+                throw new AccountTransferException("Unknown CSV column: " + column + ", columns are " + knownColumns);
+            }
+        }
+        return new ImportReader<>(lines, type, columns.toArray(new String[0]), 1);
+    }
+
+    /**
+     * Move to the next row
+     *
+     * @return false at the end of the body
+     *
+     * @throws IOException when the body can't be read
+     */
+    public boolean next() throws IOException {
+        String text = readLine();
+        while (text != null && text.trim().isEmpty()) {
+            text = readLine();
+        }
+        if (text == null) {
+            return false;
+        }
+        row = null;
+        error = null;
+        try {
+            row = columns == null ? reader.readValue(text) : reader.readValue(toJson(splitCsv(text)));
+        } catch (IOException | RuntimeException ex) {
+            error = ex.getMessage() == null ? ex.toString() : ex.getMessage().split("\n")[0];
+        }
+        return true;
+    }
+
+    /**
+     * Get current row
+     *
+     * @return row or null when the line couldn't be parsed
+     */
+    public T getRow() {
+        return row;
+    }
+
+    /**
+     * Get why the current line couldn't be parsed
+     *
+     * @return String or null for a parsed row
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Get number of the current line, starting from 1
+     *
+     * @return long
+     */
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private String readLine() throws IOException {
+        String text = input.readLine();
+        if (text != null) {
+            line++;
+        }
+        return text;
+    }
+
+    private ObjectNode toJson(List<String> values) {
+        if (values.size() != columns.length) {
+            throw new IllegalArgumentException("Row has " + values.size() + " values, header has " + columns.length);
+        }
+        ObjectNode node = MAPPER.createObjectNode();
+        for (int i = 0; i < columns.length; i++) {
+            if (!values.get(i).isEmpty()) {
+                node.put(columns[i], values.get(i));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Split CSV line, quoted values may contain commas and doubled quotes
+     */
+    static List<String> splitCsv(String text) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    value.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unclosed quote");
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.technologies.service;
+
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.metrics.Histogram;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Query already running on its own connection, the rows are read when they are passed on.
+ *
+ * Opening takes the connection and executes the query, so a missing connection or a failing
+ * statement is known before any row is written. The connection is held until the cursor is closed.
+ */
+@Slf4j
+public class RowCursor<T> implements AutoCloseable {
+
+    private final Connection conn;
+    private final PreparedStatement prepStatement;
+    private final ResultSet resultSet;
+    private final RowReader<T> reader;
+    private final Histogram queryTime;
+    private final String name;
+    private final long start;
+    private boolean closed;
+
+    private RowCursor(Connection conn, PreparedStatement prepStatement, ResultSet resultSet, RowReader<T> reader,
+                      Histogram queryTime, String name, long start) {
+        this.conn = conn;
+        this.prepStatement = prepStatement;
+        this.resultSet = resultSet;
+        this.reader = reader;
+        this.queryTime = queryTime;
+        this.name = name;
+        this.start = start;
+    }
+
+    /**
+     * Execute query with lazy forward-only reading in fetches of the given size
+     *
+     * @param sql query without parameters
+     * @param fetchSize count of rows fetched at once
+     * @param reader {@link RowReader}
+     * @param queryTime {@link Histogram} from execution to the last row
+     * @param name of the rows in log and error messages
+     *
+     * @return RowCursor {@link RowCursor}
+     *
+     * @throws AccountTransferException
+     */
+    static <T> RowCursor<T> open(String sql, int fetchSize, RowReader<T> reader, Histogram queryTime, String name)
+            throws AccountTransferException {
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        ResultSet resultSet = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            DbConfig.setLazyQueries(conn, true);
+            prepStatement = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            prepStatement.setFetchSize(fetchSize);
+            long start = System.nanoTime();
+            resultSet = prepStatement.executeQuery();
+            return new RowCursor<>(conn, prepStatement, resultSet, reader, queryTime, name, start);
+        } catch (SQLException ex) {
+            close(conn, prepStatement, resultSet);
+            log.error("Can't get " + name.toLowerCase() + " data");
+            throw new AccountTransferException(name + " data: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Pass the rows which are not read yet to the handler
+     *
+     * @param handler {@link RowHandler}
+     *
+     * @throws AccountTransferException
+     * @throws IOException when the handler fails
+     */
+    public void forEach(RowHandler<? super T> handler) throws AccountTransferException, IOException {
+        try {
+            while (resultSet.next()) {
+                handler.handle(reader.read(resultSet));
+            }
+            queryTime.recordSince(start);
+        } catch (SQLException ex) {
+            log.error("Can't get " + name.toLowerCase() + " data");
+            throw new AccountTransferException(name + " data: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Close the query and give the connection back, only the first call does it
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            close(conn, prepStatement, resultSet);
+        }
+    }
+
+    private static void close(Connection conn, PreparedStatement prepStatement, ResultSet resultSet) {
+        DbUtils.closeQuietly(resultSet);
+        DbUtils.closeQuietly(prepStatement);
+        DbConfig.setLazyQueries(conn, false);
+        DbUtils.closeQuietly(conn);
+    }
+
+    /**
+     * Maps the current row, may look up state kept outside of the database.
+     */
+    interface RowReader<T> {
+
+        T read(ResultSet resultSet) throws SQLException, AccountTransferException;
+
+    }
+
+}
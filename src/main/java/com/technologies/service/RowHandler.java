@@ -0,0 +1,12 @@
+package com.technologies.service;
+
+import java.io.IOException;
+
+/**
+ * Receives rows of a streamed query one by one.
+ */
+public interface RowHandler<T> {
+
+    void handle(T row) throws IOException;
+
+}
@@ -0,0 +1,13 @@
+package com.technologies.service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to an entity.
+ */
+public interface RowMapper<T> {
+
+    T map(ResultSet resultSet) throws SQLException;
+
+}
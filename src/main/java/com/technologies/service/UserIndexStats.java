@@ -0,0 +1,18 @@
+package com.technologies.service;
+
+import lombok.Value;
+
+/**
+ * Snapshot of the user name index.
+ */
+@Value
+public class UserIndexStats {
+
+    private int names;
+    private int users;
+    private long estimatedBytes;
+    private long lookups;
+    private long lookupP50Nanos;
+    private long lookupP99Nanos;
+
+}
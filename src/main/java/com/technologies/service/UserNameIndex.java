@@ -0,0 +1,148 @@
+package com.technologies.service;
+
+import com.technologies.metrics.LatencyRecorder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of user ids by user name.
+ *
+ * Names are not unique, so every name maps to a sorted array of ids which is
+ * replaced as a whole on change, and readers never lock. The reverse map from id
+ * to name lets update and delete find the old name. Changes are applied after
+ * their database write commits, each with the row version it wrote, and a change
+ * older than the one already applied for the user is dropped. A deleted user keeps
+ * an entry without a name, so a late change can't bring it back.
+ */
+class UserNameIndex {
+
+    private static final long[] NO_IDS = new long[0];
+
+    // rough 64-bit JVM sizes with compressed oops: map node, String with char[], Long, long[] header, Entry
+    private static final int MAP_ENTRY_BYTES = 32;
+    private static final int STRING_BYTES = 24 + 16;
+    private static final int LONG_BYTES = 16;
+    private static final int ARRAY_BYTES = 16;
+    private static final int ENTRY_BYTES = 24;
+
+    private final Map<String, long[]> idsByName = new ConcurrentHashMap<>();
+    private final Map<Long, Entry> entryById = new ConcurrentHashMap<>();
+    private final LatencyRecorder lookupLatency = new LatencyRecorder(4096);
+
+    /**
+     * Get ids of users with the name
+     *
+     * @param userName {@link String}
+     *
+     * @return ids in ascending order, empty if nobody has the name
+     */
+    long[] lookup(String userName) {
+        long start = System.nanoTime();
+        long[] ids = userName == null ? null : idsByName.get(userName);
+        lookupLatency.record(System.nanoTime() - start);
+        return ids == null ? NO_IDS : ids;
+    }
+
+    /**
+     * Set name of the user unless a newer version is already applied
+     *
+     * @param version row version the name was written with
+     */
+    void put(long userId, String userName, long version) {
+        apply(userId, userName, version);
+    }
+
+    /**
+     * Forget deleted user, changes of it applied later are dropped
+     */
+    void remove(long userId) {
+        apply(userId, null, Long.MAX_VALUE);
+    }
+
+    private void apply(long userId, String userName, long version) {
+        // the user's map entry is locked for the change, changes of other users go on
+        entryById.compute(userId, (id, entry) -> {
+            if (entry != null && entry.version >= version) {
+                return entry;
+            }
+            String oldName = entry == null ? null : entry.name;
+            if (oldName != null && !oldName.equals(userName)) {
+                removeId(oldName, userId);
+            }
+            if (userName != null) {
+                addId(userName, userId);
+            }
+            return new Entry(userName, version);
+        });
+    }
+
+    /**
+     * Get size and lookup latency of the index
+     *
+     * @return UserIndexStats {@link UserIndexStats}
+     */
+    UserIndexStats getStats() {
+        long bytes = 0;
+        for (Map.Entry<String, long[]> entry : idsByName.entrySet()) {
+            bytes += MAP_ENTRY_BYTES + STRING_BYTES + 2L * entry.getKey().length()
+                    + ARRAY_BYTES + 8L * entry.getValue().length;
+        }
+        // reverse map shares the name strings
+        bytes += (long) entryById.size() * (MAP_ENTRY_BYTES + LONG_BYTES + ENTRY_BYTES);
+        int users = 0;
+        for (long[] ids : idsByName.values()) {
+            users += ids.length;
+        }
+        return new UserIndexStats(idsByName.size(), users, bytes, lookupLatency.getCount(),
+                lookupLatency.getPercentileNanos(50), lookupLatency.getPercentileNanos(99));
+    }
+
+    private void addId(String userName, long userId) {
+        idsByName.compute(userName, (name, ids) -> {
+            if (ids == null) {
+                return new long[]{userId};
+            }
+            if (Arrays.binarySearch(ids, userId) >= 0) {
+                return ids;
+            }
+            long[] added = Arrays.copyOf(ids, ids.length + 1);
+            added[ids.length] = userId;
+            Arrays.sort(added);
+            return added;
+        });
+    }
+
+    private void removeId(String userName, long userId) {
+        idsByName.computeIfPresent(userName, (name, ids) -> {
+            int index = Arrays.binarySearch(ids, userId);
+            if (index < 0) {
+                return ids;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            long[] removed = new long[ids.length - 1];
+            System.arraycopy(ids, 0, removed, 0, index);
+            System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+            return removed;
+        });
+    }
+
+    /**
+     * Name of a user and the row version it comes from, no name once the user is deleted.
+     */
+    private static class Entry {
+
+        private final String name;
+        private final long version;
+
+        Entry(String name, long version) {
+            this.name = name;
+            this.version = version;
+        }
+
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.technologies.service;
+
+import com.technologies.model.User;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps user rows by column index, queries select {@link #COLUMNS} in this order.
+ */
+public class UserRowMapper implements RowMapper<User> {
+
+    public static final String COLUMNS = "userId, userName, userPhone, userEmail, version";
+    public static final UserRowMapper INSTANCE = new UserRowMapper();
+
+    private static final int USER_ID = 1;
+    private static final int USER_NAME = 2;
+    private static final int USER_PHONE = 3;
+    private static final int USER_EMAIL = 4;
+    private static final int VERSION = 5;
+
+    private UserRowMapper() {
+    }
+
+    @Override
+    public User map(ResultSet resultSet) throws SQLException {
+        User user = new User();
+        user.setUserId(resultSet.getLong(USER_ID));
+        user.setUserName(resultSet.getString(USER_NAME));
+        user.setUserPhone(resultSet.getString(USER_PHONE));
+        user.setUserEmail(resultSet.getString(USER_EMAIL));
+        user.setVersion(resultSet.getLong(VERSION));
+        return user;
+    }
+
+}
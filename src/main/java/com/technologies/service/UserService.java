@@ -1,33 +1,86 @@
 package com.technologies.service;
 
+import com.technologies.cache.CacheStats;
+import com.technologies.cache.EntityCache;
+import com.technologies.config.ConfigLoader;
 import com.technologies.config.DbConfig;
 import com.technologies.exception.AccountTransferException;
+import com.technologies.metrics.Histogram;
+import com.technologies.metrics.Metrics;
+import com.technologies.model.ImportResult;
 import com.technologies.model.User;
-import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.dbutils.DbUtils;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * CRUD for user entity.
  */
 @Slf4j
-@NoArgsConstructor
 public class UserService {
 
-    private final String GET_USER_BY_ID = "SELECT * FROM User WHERE userId = ? ";
-    private final String GET_ALL_USERS = "SELECT * FROM User";
-    private final String GET_USER_BY_NAME = "SELECT * FROM User WHERE userName = ? ";
+    /**
+     * Properties of a user a CSV import may have as columns
+     */
+    public static final Set<String> IMPORT_COLUMNS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("userName", "userPhone", "userEmail")));
+
+    private final String GET_USER_BY_ID = "SELECT " + UserRowMapper.COLUMNS + " FROM User WHERE userId = ? ";
+    private final String GET_ALL_USERS = "SELECT " + UserRowMapper.COLUMNS + " FROM User ORDER BY userId";
+    private final String GET_USERS_PAGE = "SELECT " + UserRowMapper.COLUMNS
+            + " FROM User WHERE userId > ? ORDER BY userId LIMIT ?";
+    private final String GET_USERS_BY_IDS = "SELECT " + UserRowMapper.COLUMNS + " FROM User WHERE userId IN ";
+    private final String GET_USER_NAMES = "SELECT userId, userName, version FROM User";
+    private final String GET_USER_NAMES_AFTER = "SELECT userId, userName, version FROM User WHERE userId > ?";
+    private final String GET_USER_VERSION = "SELECT version FROM User WHERE userId = ? ";
+    private final String GET_MAX_USER_ID = "SELECT COALESCE(MAX(userId), 0) FROM User";
     private final String ADD_NEW_USER = "INSERT INTO User (userName, userPhone, userEmail) VALUES (?, ?, ?)";
-    private final String UPDATE_USER = "UPDATE User SET userName = ?, userPhone = ?, userEmail = ? WHERE userId = ? ";
+    private final String UPDATE_USER = "UPDATE User SET userName = ?, userPhone = ?, userEmail = ?, version = version + 1"
+            + " WHERE userId = ? ";
+    private final String UPDATE_USER_IF_VERSION = UPDATE_USER + "AND version = ? ";
     private final String DELETE_USER = "DELETE FROM User WHERE userId = ? ";
 
+    private static final Histogram GET_USER_BY_ID_TIME = Metrics.sql("get_user_by_id");
+    private static final Histogram GET_ALL_USERS_TIME = Metrics.sql("get_all_users");
+    private static final Histogram GET_USERS_PAGE_TIME = Metrics.sql("get_users_page");
+    private static final Histogram GET_USERS_BY_IDS_TIME = Metrics.sql("get_users_by_ids");
+    private static final Histogram GET_USER_NAMES_TIME = Metrics.sql("get_user_names");
+    private static final Histogram ADD_USER_TIME = Metrics.sql("add_user");
+    private static final Histogram IMPORT_USERS_TIME = Metrics.sql("import_users");
+    private static final Histogram UPDATE_USER_TIME = Metrics.sql("update_user");
+    private static final Histogram DELETE_USER_TIME = Metrics.sql("delete_user");
+
+    private final EntityCache<Long, User> userCache = new EntityCache<>("user",
+            ConfigLoader.getIntProperty("entity_cache_size", 10000),
+            ConfigLoader.getLongProperty("entity_cache_ttl_ms", 30000));
+    private final UserNameIndex nameIndex = new UserNameIndex();
+
+    /**
+     * Read the name index once the service is injected, a service created with new calls {@link #loadNameIndex()}
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            loadNameIndex();
+        } catch (AccountTransferException ex) {
+            throw new IllegalStateException("Can't load user name index", ex);
+        }
+    }
+
     /**
      * Get user by ID
      *
@@ -38,6 +91,33 @@ public class UserService {
      * @throws AccountTransferException
      */
     public User getUserById(Long userId) throws AccountTransferException {
+        return userCache.get(userId, () -> loadUser(userId));
+    }
+
+    /**
+     * Get tag of the user state for ETag and If-Match
+     *
+     * @param user {@link User}
+     *
+     * @return String
+     */
+    public String getVersionTag(User user) {
+        return String.valueOf(user.getVersion());
+    }
+
+    /**
+     * Get state of the user cache
+     *
+     * @return CacheStats {@link CacheStats}
+     */
+    public CacheStats getCacheStats() {
+        return userCache.getStats();
+    }
+
+    /**
+     * Read user from the database
+     */
+    private User loadUser(Long userId) throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
         ResultSet resultSet = null;
@@ -47,14 +127,12 @@ public class UserService {
             conn = DbConfig.getConnection();
             prepStatement = conn.prepareStatement(GET_USER_BY_ID);
             prepStatement.setLong(1, userId);
+            long start = System.nanoTime();
             resultSet = prepStatement.executeQuery();
             if (resultSet.next()) {
-                user = new User();
-                user.setUserId(resultSet.getLong("userId"));
-                user.setUserName(resultSet.getString("userName"));
-                user.setUserPhone(resultSet.getString("userPhone"));
-                user.setUserEmail(resultSet.getString("userEmail"));
+                user = UserRowMapper.INSTANCE.map(resultSet);
             }
+            GET_USER_BY_ID_TIME.recordSince(start);
             return user;
         } catch (SQLException ex) {
             log.error("Can't find user with id: " + userId);
@@ -65,32 +143,61 @@ public class UserService {
     }
 
     /**
-     * Get all users
+     * Get users by ids on one connection
+     *
+     * @param userIds list of {@link Long}
+     *
+     * @return user for every id in the same order, null where the user doesn't exist
+     *
+     * @throws AccountTransferException
+     */
+    public List<User> getUsersByIds(List<Long> userIds) throws AccountTransferException {
+        Connection conn = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            Map<Long, User> found = IdQuery.read(conn, GET_USERS_BY_IDS, userIds, UserRowMapper.INSTANCE,
+                    User::getUserId, GET_USERS_BY_IDS_TIME);
+            List<User> users = new ArrayList<>(userIds.size());
+            for (Long userId : userIds) {
+                users.add(found.get(userId));
+            }
+            return users;
+        } catch (SQLException ex) {
+            log.error("Can't get users by ids");
+            throw new AccountTransferException("User data: " + ex.getMessage());
+        } finally {
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Get page of users ordered by id
+     *
+     * @param afterUserId id of the last user of the previous page, null for the first page
+     * @param limit max count of users
      *
      * @return List of users
      *
      * @throws AccountTransferException
      */
-    public List<User> getAllUsers() throws AccountTransferException {
+    public List<User> getUsersPage(Long afterUserId, int limit) throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
         ResultSet resultSet = null;
-        User user = null;
-        List<User> users = new ArrayList<>();
+        List<User> users = new ArrayList<>(limit);
 
         try {
             conn = DbConfig.getConnection();
-            prepStatement = conn.prepareStatement(GET_ALL_USERS);
+            prepStatement = conn.prepareStatement(GET_USERS_PAGE);
+            prepStatement.setLong(1, afterUserId == null ? Long.MIN_VALUE : afterUserId);
+            prepStatement.setInt(2, limit);
+            long start = System.nanoTime();
             resultSet = prepStatement.executeQuery();
-            if (resultSet.next()) {
-                user = new User();
-                user.setUserId(resultSet.getLong("userId"));
-                user.setUserName(resultSet.getString("userName"));
-                user.setUserPhone(resultSet.getString("userPhone"));
-                user.setUserEmail(resultSet.getString("userEmail"));
-
-                users.add(user);
+            while (resultSet.next()) {
+                users.add(UserRowMapper.INSTANCE.map(resultSet));
             }
+            GET_USERS_PAGE_TIME.recordSince(start);
             return users;
         } catch (SQLException ex) {
             log.error("Can't get user data");
@@ -100,37 +207,103 @@ public class UserService {
         }
     }
 
+    /**
+     * Pass all users ordered by id to the handler as they are read
+     *
+     * @param handler {@link RowHandler}
+     *
+     * @throws AccountTransferException
+     * @throws IOException when the handler fails
+     */
+    public void streamUsers(RowHandler<? super User> handler) throws AccountTransferException, IOException {
+        streamUsers(handler, DbConfig.getStreamFetchSize());
+    }
+
+    /**
+     * Pass all users ordered by id to the handler, read from a forward-only cursor in fetches of the given size
+     *
+     * @param handler {@link RowHandler}
+     * @param fetchSize count of rows fetched at once
+     *
+     * @throws AccountTransferException
+     * @throws IOException when the handler fails
+     */
+    public void streamUsers(RowHandler<? super User> handler, int fetchSize) throws AccountTransferException, IOException {
+        try (RowCursor<User> users = openUsers(fetchSize)) {
+            users.forEach(handler);
+        }
+    }
+
+    /**
+     * Execute the query of all users ordered by id, the rows are read when they are passed on
+     *
+     * @return RowCursor {@link RowCursor} holding a connection until it's closed
+     *
+     * @throws AccountTransferException
+     */
+    public RowCursor<User> openUsers() throws AccountTransferException {
+        return openUsers(DbConfig.getStreamFetchSize());
+    }
+
+    /**
+     * Execute the query of all users ordered by id, the rows are read from a forward-only cursor
+     * in fetches of the given size when they are passed on
+     *
+     * @param fetchSize count of rows fetched at once
+     *
+     * @return RowCursor {@link RowCursor} holding a connection until it's closed
+     *
+     * @throws AccountTransferException
+     */
+    public RowCursor<User> openUsers(int fetchSize) throws AccountTransferException {
+        return RowCursor.open(GET_ALL_USERS, fetchSize, UserRowMapper.INSTANCE::map, GET_ALL_USERS_TIME, "User");
+    }
+
     /**
      * Get user by name
      *
      * @param userName {@link String}
      *
-     * @return User {@link}
+     * @return User {@link User}, the one with the lowest id when several users have the name
      *
      * @throws AccountTransferException
      */
     public User getUserByName(String userName) throws AccountTransferException {
+        long[] userIds = nameIndex.lookup(userName);
+        return userIds.length == 0 ? null : getUserById(userIds[0]);
+    }
+
+    /**
+     * Get size and lookup latency of the user name index
+     *
+     * @return UserIndexStats {@link UserIndexStats}
+     */
+    public UserIndexStats getNameIndexStats() {
+        return nameIndex.getStats();
+    }
+
+    /**
+     * Read names of all users into the index
+     *
+     * @throws AccountTransferException
+     */
+    public void loadNameIndex() throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
         ResultSet resultSet = null;
-        User currentUser = null;
 
         try {
             conn = DbConfig.getConnection();
-            prepStatement = conn.prepareStatement(GET_USER_BY_NAME);
-            prepStatement.setString(1, userName);
+            prepStatement = conn.prepareStatement(GET_USER_NAMES);
+            long start = System.nanoTime();
             resultSet = prepStatement.executeQuery();
-            if (resultSet.next()) {
-                currentUser = new User();
-                currentUser.setUserId(resultSet.getLong("userId"));
-                currentUser.setUserName(resultSet.getString("userName"));
-                currentUser.setUserPhone(resultSet.getString("userPhone"));
-                currentUser.setUserEmail(resultSet.getString("userEmail"));
+            while (resultSet.next()) {
+                nameIndex.put(resultSet.getLong(1), resultSet.getString(2), resultSet.getLong(3));
             }
-            return currentUser;
+            GET_USER_NAMES_TIME.recordSince(start);
         } catch (SQLException ex) {
-            log.error("Can't find user with name: " + userName);
-            throw new AccountTransferException("User with name: " + userName + " not found. " + ex.getMessage());
+            log.error("Can't load user names");
+            throw new AccountTransferException("User names: " + ex.getMessage());
         } finally {
             DbUtils.closeQuietly(conn, prepStatement, resultSet);
         }
@@ -146,22 +319,97 @@ public class UserService {
     public void addUser(User user) throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
+        ResultSet generatedKeys = null;
 
         try {
             conn = DbConfig.getConnection();
-            prepStatement = conn.prepareStatement(ADD_NEW_USER);
+            prepStatement = conn.prepareStatement(ADD_NEW_USER, Statement.RETURN_GENERATED_KEYS);
             prepStatement.setString(1, user.getUserName());
             prepStatement.setString(2, user.getUserPhone());
             prepStatement.setString(3, user.getUserEmail());
+            long start = System.nanoTime();
             int result = prepStatement.executeUpdate();
+            ADD_USER_TIME.recordSince(start);
+            generatedKeys = prepStatement.getGeneratedKeys();
+            if (generatedKeys.next()) {
+                // a new row starts at version 0
+                nameIndex.put(generatedKeys.getLong(1), user.getUserName(), 0);
+            }
         } catch (SQLException ex) {
             log.error("Can't add new user");
             throw new AccountTransferException("Add user: " + ex.getMessage());
         } finally {
-            DbUtils.closeQuietly(conn);
+            DbUtils.closeQuietly(generatedKeys);
             DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
         }
+    }
+
+    /**
+     * Insert users of an import body with JDBC batches, adding the users of every commit to the name index
+     *
+     * @param rows {@link ImportReader} of users
+     *
+     * @return ImportResult {@link ImportResult}
+     *
+     * @throws AccountTransferException
+     */
+    public ImportResult importUsers(ImportReader<User> rows) throws AccountTransferException {
+        long[] lastIndexedId = {getMaxUserId()};
+        return new BatchInsert<User>(ADD_NEW_USER, IMPORT_USERS_TIME, (prepStatement, user) -> {
+            if (user.getUserName() == null || user.getUserPhone() == null) {
+                return "User name and phone are required";
+            }
+            prepStatement.setString(1, user.getUserName());
+            prepStatement.setString(2, user.getUserPhone());
+            prepStatement.setString(3, user.getUserEmail());
+            return null;
+        }, () -> lastIndexedId[0] = indexUsersAfter(lastIndexedId[0])).run(rows);
+    }
 
+    private long getMaxUserId() throws AccountTransferException {
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        ResultSet resultSet = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            prepStatement = conn.prepareStatement(GET_MAX_USER_ID);
+            resultSet = prepStatement.executeQuery();
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException ex) {
+            log.error("Can't get last user id");
+            throw new AccountTransferException("Last user id: " + ex.getMessage());
+        } finally {
+            DbUtils.closeQuietly(conn, prepStatement, resultSet);
+        }
+    }
+
+    private long indexUsersAfter(long userId) throws AccountTransferException {
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        ResultSet resultSet = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            prepStatement = conn.prepareStatement(GET_USER_NAMES_AFTER);
+            prepStatement.setLong(1, userId);
+            long start = System.nanoTime();
+            resultSet = prepStatement.executeQuery();
+            long lastUserId = userId;
+            while (resultSet.next()) {
+                nameIndex.put(resultSet.getLong(1), resultSet.getString(2), resultSet.getLong(3));
+                lastUserId = Math.max(lastUserId, resultSet.getLong(1));
+            }
+            GET_USER_NAMES_TIME.recordSince(start);
+            return lastUserId;
+        } catch (SQLException ex) {
+            log.error("Can't index imported users");
+            throw new AccountTransferException("User names: " + ex.getMessage());
+        } finally {
+            DbUtils.closeQuietly(conn, prepStatement, resultSet);
+        }
     }
 
     /**
@@ -173,23 +421,62 @@ public class UserService {
      * @throws AccountTransferException
      */
     public void updateUser(Long userId, User user) throws AccountTransferException {
+        updateUser(userId, user, null);
+    }
+
+    /**
+     * Update current user if it's still at the version of the tag, with one compare-and-set statement
+     *
+     * @param userId {@link Long}
+     * @param user {@link User}
+     * @param expectedTag from {@link #getVersionTag(User)}, null to update whatever the version is
+     *
+     * @return false if the user changed since the tag or doesn't exist
+     *
+     * @throws AccountTransferException
+     */
+    public boolean updateUser(Long userId, User user, String expectedTag) throws AccountTransferException {
         Connection conn = null;
         PreparedStatement prepStatement = null;
+        long expectedVersion = 0;
+        if (expectedTag != null) {
+            try {
+                expectedVersion = Long.parseLong(expectedTag);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+        }
 
+        userCache.beginWrite(userId);
         try {
             conn = DbConfig.getConnection();
-            prepStatement = conn.prepareStatement(UPDATE_USER);
+            // the version is read under the row lock of the update, so it's the one this update wrote
+            conn.setAutoCommit(false);
+            prepStatement = conn.prepareStatement(expectedTag == null ? UPDATE_USER : UPDATE_USER_IF_VERSION);
             prepStatement.setString(1, user.getUserName());
             prepStatement.setString(2, user.getUserPhone());
             prepStatement.setString(3, user.getUserEmail());
             prepStatement.setLong(4, userId);
+            if (expectedTag != null) {
+                prepStatement.setLong(5, expectedVersion);
+            }
+            long start = System.nanoTime();
             int result = prepStatement.executeUpdate();
+            UPDATE_USER_TIME.recordSince(start);
+            long version = result > 0 ? readVersion(conn, userId) : 0;
+            conn.commit();
+            if (result > 0) {
+                nameIndex.put(userId, user.getUserName(), version);
+            }
+            return result > 0;
         } catch (SQLException ex) {
+            rollbackQuietly(conn);
             log.error("Can't update user");
             throw new AccountTransferException("Update user: " + ex.getMessage());
         } finally {
-            DbUtils.closeQuietly(conn);
             DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
+            userCache.endWrite(userId);
         }
     }
 
@@ -204,18 +491,47 @@ public class UserService {
         Connection conn = null;
         PreparedStatement prepStatement = null;
 
+        userCache.beginWrite(userId);
         try {
             conn = DbConfig.getConnection();
             prepStatement = conn.prepareStatement(DELETE_USER);
             prepStatement.setLong(1, userId);
+            long start = System.nanoTime();
             int result = prepStatement.executeUpdate();
+            DELETE_USER_TIME.recordSince(start);
+            if (result > 0) {
+                nameIndex.remove(userId);
+            }
         } catch (SQLException ex) {
             log.error("Can't delete user");
             throw new AccountTransferException("Delete user: " + ex.getMessage());
         } finally {
+            DbUtils.closeQuietly(prepStatement);
             DbUtils.closeQuietly(conn);
+            userCache.endWrite(userId);
+        }
+    }
+
+    private long readVersion(Connection conn, long userId) throws SQLException {
+        PreparedStatement prepStatement = null;
+        ResultSet resultSet = null;
+        try {
+            prepStatement = conn.prepareStatement(GET_USER_VERSION);
+            prepStatement.setLong(1, userId);
+            resultSet = prepStatement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        } finally {
+            DbUtils.closeQuietly(resultSet);
             DbUtils.closeQuietly(prepStatement);
         }
     }
 
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            DbUtils.rollback(conn);
+        } catch (SQLException ex) {
+            log.warn("Can't rollback user update: " + ex.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,313 @@
+package com.technologies.transfer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Balances by account id in a direct buffer, outside of the Java heap.
+ *
+ * A slot is 24 bytes: account id, balance in {@link Money} thousandths and version.
+ * Ids are found by linear probing from a hash of the id, the table is kept at most
+ * half full, so an account costs 24 to 48 bytes of native memory and no object at all.
+ * The same account on heap costs about 140 bytes in five objects (map node, boxed id,
+ * account, lock and its sync), every one of them traced by each full GC and copied
+ * by young collections until it's promoted. GC pause time doesn't grow with the
+ * account count here, the table itself is a single buffer object.
+ *
+ * Reads and CAS updates of a slot are lock free. The version is even when the slot
+ * is stable and odd while a balance is being written, a writer moves it by two, so
+ * a reader that saw the same even version before and after reading the balance read
+ * a consistent pair. Adding and removing ids must be done by one thread at a time,
+ * lookups may run concurrently with them. The table doesn't grow, the owner copies
+ * it into a bigger one with {@link #copyTo(BalanceTable)} while no balance changes.
+ * A buffer is indexed by int, so a table holds at most {@link #MAX_ACCOUNTS} accounts.
+ */
+public class BalanceTable {
+
+    public static final int SLOT_BYTES = 24;
+    // 2^26 slots of 24 bytes are the most a buffer can take, a table is kept at most half full
+    public static final int MAX_ACCOUNTS = 1 << 25;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long REMOVED = Long.MIN_VALUE + 1;
+
+    private static final int ID = 0;
+    private static final int BALANCE = 8;
+    private static final int VERSION = 16;
+
+    private final ByteBuffer buffer;
+    private final int mask;
+    private final int maxUsed;
+    private int used;
+    private volatile int size;
+
+    /**
+     * Create table for the given count of accounts
+     *
+     * @param accounts count of ids the table should hold before it's full
+     */
+    public BalanceTable(int accounts) {
+        int slots = slotsFor(accounts);
+        this.mask = slots - 1;
+        this.maxUsed = slots / 2;
+        // atomic access needs 8 byte alignment
+        this.buffer = ByteBuffer.allocateDirect(slots * SLOT_BYTES + 8).alignedSlice(8).order(ByteOrder.nativeOrder());
+        for (int slot = 0; slot < slots; slot++) {
+            LONGS.set(buffer, offset(slot) + ID, EMPTY);
+        }
+    }
+
+    /**
+     * Find slot of the account
+     *
+     * @param accountId long
+     *
+     * @return slot or -1 if the account isn't in the table
+     */
+    public int find(long accountId) {
+        for (int slot = hash(accountId); ; slot = (slot + 1) & mask) {
+            long id = (long) LONGS.getAcquire(buffer, offset(slot) + ID);
+            if (id == accountId) {
+                return slot;
+            }
+            if (id == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Add account, the balance is visible to lookups once they find the id
+     *
+     * @param accountId long
+     * @param balance thousandths
+     *
+     * @return slot of the account, the existing one if it's already in the table,
+     *         -1 if the table is full
+     */
+    public int insert(long accountId, long balance) {
+        if (accountId == EMPTY || accountId == REMOVED) {
+            throw new IllegalArgumentException("Account id " + accountId + " can't be stored");
+        }
+        int slot = hash(accountId);
+        for (; ; slot = (slot + 1) & mask) {
+            long id = (long) LONGS.getAcquire(buffer, offset(slot) + ID);
+            if (id == accountId) {
+                return slot;
+            }
+            if (id == EMPTY) {
+                break;
+            }
+        }
+        // removed slots are not reused, they go away when the table is copied
+        if (used == maxUsed) {
+            return -1;
+        }
+        int offset = offset(slot);
+        LONGS.set(buffer, offset + BALANCE, balance);
+        LONGS.set(buffer, offset + VERSION, 0L);
+        LONGS.setRelease(buffer, offset + ID, accountId);
+        used++;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Remove account, its slot stays taken until the table is copied
+     *
+     * @param accountId long
+     *
+     * @return false if the account isn't in the table
+     */
+    public boolean remove(long accountId) {
+        int slot = find(accountId);
+        if (slot < 0) {
+            return false;
+        }
+        LONGS.setRelease(buffer, offset(slot) + ID, REMOVED);
+        size--;
+        return true;
+    }
+
+    /**
+     * Get balance of the slot
+     *
+     * @param slot from {@link #find(long)}
+     *
+     * @return thousandths
+     */
+    public long getBalance(int slot) {
+        int offset = offset(slot);
+        while (true) {
+            long version = (long) LONGS.getAcquire(buffer, offset + VERSION);
+            long balance = (long) LONGS.getAcquire(buffer, offset + BALANCE);
+            if ((version & 1) == 0 && (long) LONGS.getAcquire(buffer, offset + VERSION) == version) {
+                return balance;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Get version of the slot, odd while a balance is being written
+     *
+     * @param slot from {@link #find(long)}
+     *
+     * @return long
+     */
+    public long getVersion(int slot) {
+        return (long) LONGS.getAcquire(buffer, offset(slot) + VERSION);
+    }
+
+    /**
+     * Set balance if the slot is still at the expected version
+     *
+     * @param slot from {@link #find(long)}
+     * @param expectedVersion even version read before the balance
+     * @param balance thousandths
+     *
+     * @return false if the balance was changed in between
+     */
+    public boolean compareAndSet(int slot, long expectedVersion, long balance) {
+        int offset = offset(slot);
+        if ((expectedVersion & 1) != 0
+                || !LONGS.compareAndSet(buffer, offset + VERSION, expectedVersion, expectedVersion + 1)) {
+            return false;
+        }
+        LONGS.setRelease(buffer, offset + BALANCE, balance);
+        LONGS.setRelease(buffer, offset + VERSION, expectedVersion + 2);
+        return true;
+    }
+
+    /**
+     * Set balance whatever it was
+     *
+     * @param slot from {@link #find(long)}
+     * @param balance thousandths
+     */
+    public void setBalance(int slot, long balance) {
+        while (!compareAndSet(slot, getVersion(slot), balance)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Add to balance with CAS
+     *
+     * @param slot from {@link #find(long)}
+     * @param delta thousandths, negative to take money
+     * @param minBalance lowest balance allowed after the change
+     *
+     * @return new balance or Long.MIN_VALUE if it would go below the minimum or overflow
+     */
+    public long add(int slot, long delta, long minBalance) {
+        while (true) {
+            long version = getVersion(slot);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long balance = (long) LONGS.getAcquire(buffer, offset(slot) + BALANCE);
+            long updated = balance + delta;
+            if (((balance ^ updated) & (delta ^ updated)) < 0 || updated < minBalance) {
+                return Long.MIN_VALUE;
+            }
+            if (compareAndSet(slot, version, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Get account id stored in the slot
+     *
+     * @param slot from 0 to {@link #getSlots()} - 1
+     *
+     * @return account id or -1 if the slot is free or removed
+     */
+    public long getAccountId(int slot) {
+        long id = (long) LONGS.getAcquire(buffer, offset(slot) + ID);
+        return id == EMPTY || id == REMOVED ? -1 : id;
+    }
+
+    /**
+     * Copy every account with its balance into another table
+     *
+     * @param target {@link BalanceTable} big enough for {@link #size()} accounts
+     */
+    public void copyTo(BalanceTable target) {
+        for (int slot = 0; slot <= mask; slot++) {
+            long id = getAccountId(slot);
+            if (id != -1 && target.insert(id, getBalance(slot)) < 0) {
+                throw new IllegalStateException("Balance table of " + target.maxUsed + " accounts is too small");
+            }
+        }
+    }
+
+    /**
+     * Check that one more account fits without copying the table
+     *
+     * @return boolean
+     */
+    public boolean isFull() {
+        return used == maxUsed;
+    }
+
+    /**
+     * Get count of accounts
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get count of slots
+     *
+     * @return int
+     */
+    public int getSlots() {
+        return mask + 1;
+    }
+
+    /**
+     * Get native memory taken by the table
+     *
+     * @return bytes
+     */
+    public long getBytes() {
+        return (long) getSlots() * SLOT_BYTES;
+    }
+
+    /**
+     * Get count of slots keeping the table at most half full, a power of two
+     *
+     * @param accounts count of ids the table should hold
+     *
+     * @return int
+     *
+     * @throws IllegalArgumentException if the slots don't fit into one buffer
+     */
+    static int slotsFor(int accounts) {
+        if (accounts > MAX_ACCOUNTS) {
+            throw new IllegalArgumentException("Balance table can't hold " + accounts
+                    + " accounts, the most is " + MAX_ACCOUNTS);
+        }
+        return Integer.highestOneBit(Math.max(2, accounts * 2 - 1) << 1);
+    }
+
+    private int hash(long accountId) {
+        long hash = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int offset(int slot) {
+        return slot * SLOT_BYTES;
+    }
+
+}
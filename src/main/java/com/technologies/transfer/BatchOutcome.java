@@ -0,0 +1,120 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.BatchMode;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.TransferItemResult;
+import com.technologies.model.TransferRequest;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Collects per-item results of a batch transfer chunk by chunk and applies items
+ * to the balances read for their chunk, the same way for every transfer mode.
+ */
+class BatchOutcome {
+
+    private final BatchMode mode;
+    private final long start = System.nanoTime();
+    private final TransferItemResult[] items;
+    private int done;
+    private int failed;
+    private int commits;
+
+    BatchOutcome(BatchMode mode, int size) {
+        this.mode = mode;
+        this.items = new TransferItemResult[size];
+    }
+
+    /**
+     * Chunk is committed, items without failure message are done
+     *
+     * @param offset index of the first item of the chunk
+     * @param failures failure message for each item of the chunk, null for done
+     */
+    void committed(int offset, String[] failures) {
+        commits++;
+        for (int i = 0; i < failures.length; i++) {
+            if (failures[i] == null) {
+                done++;
+                items[offset + i] = new TransferItemResult(offset + i, TransferItemResult.Status.DONE, null);
+            } else {
+                failed++;
+                items[offset + i] = new TransferItemResult(offset + i, TransferItemResult.Status.FAILED, failures[i]);
+            }
+        }
+    }
+
+    /**
+     * Chunk is rolled back, items without failure message are rolled back too
+     *
+     * @param offset index of the first item of the chunk
+     * @param failures failure message for each item of the chunk, null for items which were fine
+     */
+    void rolledBack(int offset, String[] failures) {
+        failed += failures.length;
+        for (int i = 0; i < failures.length; i++) {
+            items[offset + i] = failures[i] == null
+                    ? new TransferItemResult(offset + i, TransferItemResult.Status.ROLLED_BACK, null)
+                    : new TransferItemResult(offset + i, TransferItemResult.Status.FAILED, failures[i]);
+        }
+    }
+
+    /**
+     * Chunk failed as a whole
+     *
+     * @param offset index of the first item of the chunk
+     * @param size count of items in the chunk
+     * @param message {@link String}
+     */
+    void failed(int offset, int size, String message) {
+        String[] failures = new String[size];
+        Arrays.fill(failures, message);
+        rolledBack(offset, failures);
+    }
+
+    /**
+     * Apply one item to the balances of its chunk, they don't change when the item fails
+     *
+     * @param balances balance in units by account id, null or no entry for a missing account
+     * @param request {@link TransferRequest}
+     * @param amount amount of the item in units
+     *
+     * @return failure message, null when the item is applied
+     */
+    static String apply(Map<Long, Long> balances, TransferRequest request, long amount) {
+        Long fromBalance = balances.get(request.getFromAccountId());
+        Long toBalance = balances.get(request.getToAccountId());
+        if (fromBalance == null || toBalance == null) {
+            return "Account with id: "
+                    + (fromBalance == null ? request.getFromAccountId() : request.getToAccountId()) + " not found";
+        }
+        if (fromBalance < amount) {
+            return "Account doesn't have enough money for transfer";
+        }
+        try {
+            long debited = Money.subtract(fromBalance, amount);
+            long credited = Money.add(toBalance, amount);
+            balances.put(request.getFromAccountId(), debited);
+            balances.put(request.getToAccountId(), credited);
+            return null;
+        } catch (AccountTransferException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    static boolean hasFailures(String[] failures) {
+        for (String failure : failures) {
+            if (failure != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    BatchTransferResult toResult() {
+        return new BatchTransferResult(mode, done, failed, commits, (System.nanoTime() - start) / 1000, Arrays.asList(items));
+    }
+
+}
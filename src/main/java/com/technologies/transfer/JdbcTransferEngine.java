@@ -0,0 +1,295 @@
+package com.technologies.transfer;
+
+import com.technologies.config.ConfigLoader;
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.metrics.Histogram;
+import com.technologies.metrics.Metrics;
+import com.technologies.model.BatchMode;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.TransferRequest;
+import com.technologies.model.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Transfer in a database transaction with pessimistic row locks.
+ *
+ * Rows are always locked in ascending account id order, so two opposite transfers
+ * wait for each other instead of deadlocking. Lock timeouts and deadlocks reported
+ * by H2 are retried with jittered exponential backoff. A batch locks all accounts of
+ * a chunk in id order and writes every changed account once with a JDBC batch.
+ */
+@Slf4j
+public class JdbcTransferEngine implements TransferEngine {
+
+    private static final String LOCK_ACCOUNT = "SELECT accountBalance FROM Account WHERE accountId = ? FOR UPDATE";
+    private static final String UPDATE_BALANCE = "UPDATE Account SET accountBalance = ?, version = version + 1 WHERE accountId = ? ";
+
+    private static final int H2_DEADLOCK = 40001;
+    private static final int H2_LOCK_TIMEOUT = 50200;
+    private static final int H2_CONCURRENT_UPDATE = 90131;
+
+    static final Histogram LOCK_WAIT_TIME = Metrics.histogram(Metrics.TRANSFER_LOCK_WAIT);
+    static final Histogram COMMIT_TIME = Metrics.histogram(Metrics.TRANSFER_COMMIT);
+
+    private final int maxRetries = ConfigLoader.getIntProperty("transfer_max_retries", 5);
+    private final long backoffMillis = ConfigLoader.getLongProperty("transfer_retry_backoff_ms", 5);
+    private final long maxBackoffMillis = ConfigLoader.getLongProperty("transfer_retry_max_backoff_ms", 200);
+    private final int batchChunkSize = ConfigLoader.getIntProperty("transfer_batch_chunk_size", 1000);
+
+    @Override
+    public TransferResult transfer(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException {
+        TransferEngines.validate(fromAccountId, toAccountId, amount);
+
+        long start = System.nanoTime();
+        long units = Money.toUnits(amount);
+        long[] lockWaitNanos = new long[1];
+        int retries = runWithRetry(lockWait -> transferOnce(fromAccountId, toAccountId, units, lockWait), lockWaitNanos);
+        TransferResult result = new TransferResult(fromAccountId, toAccountId, amount, retries,
+                lockWaitNanos[0] / 1000, (System.nanoTime() - start) / 1000);
+        log.debug("Transfer done: " + result);
+        return result;
+    }
+
+    @Override
+    public BatchTransferResult transferBatch(List<TransferRequest> transfers, BatchMode mode) throws AccountTransferException {
+        BatchOutcome outcome = new BatchOutcome(mode, transfers.size());
+        int chunkSize = mode == BatchMode.ALL_OR_NOTHING ? Math.max(1, transfers.size()) : batchChunkSize;
+        for (int offset = 0; offset < transfers.size(); offset += chunkSize) {
+            List<TransferRequest> chunk = transfers.subList(offset, Math.min(offset + chunkSize, transfers.size()));
+            int chunkOffset = offset;
+            try {
+                runWithRetry(lockWait -> transferChunk(chunk, chunkOffset, mode, outcome, lockWait), new long[1]);
+            } catch (AccountTransferException ex) {
+                if (mode == BatchMode.ALL_OR_NOTHING) {
+                    throw ex;
+                }
+                outcome.failed(chunkOffset, chunk.size(), ex.getMessage());
+            }
+        }
+        return outcome.toResult();
+    }
+
+    /**
+     * Run transaction again while it fails on lock conflict
+     *
+     * @param work {@link TransactionWork}
+     * @param lockWaitNanos lock wait summed over all attempts
+     *
+     * @return count of retries
+     *
+     * @throws AccountTransferException
+     */
+    private int runWithRetry(TransactionWork work, long[] lockWaitNanos) throws AccountTransferException {
+        int retries = 0;
+        while (true) {
+            long[] attemptLockWait = new long[1];
+            try {
+                work.run(attemptLockWait);
+                lockWaitNanos[0] += attemptLockWait[0];
+                return retries;
+            } catch (SQLException ex) {
+                lockWaitNanos[0] += attemptLockWait[0];
+                if (!isLockConflict(ex) || retries >= maxRetries) {
+                    log.error("Can't transfer money after " + retries + " retries");
+                    throw new AccountTransferException("Transfer money: " + ex.getMessage(), ex);
+                }
+                retries++;
+                backoff(retries);
+            }
+        }
+    }
+
+    /**
+     * One attempt of a single transfer in its own transaction
+     */
+    void transferOnce(Long fromAccountId, Long toAccountId, long amount, long[] lockWaitNanos)
+            throws SQLException, AccountTransferException {
+        Connection conn = null;
+        PreparedStatement lockStatement = null;
+        PreparedStatement updateStatement = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            conn.setAutoCommit(false);
+            // lock both accounts in the same order for every transfer:
+            long lockStart = System.nanoTime();
+            lockStatement = conn.prepareStatement(LOCK_ACCOUNT);
+            Long firstBalance = lockAccount(lockStatement, Math.min(fromAccountId, toAccountId));
+            Long secondBalance = lockAccount(lockStatement, Math.max(fromAccountId, toAccountId));
+            lockWaitNanos[0] = System.nanoTime() - lockStart;
+            LOCK_WAIT_TIME.record(lockWaitNanos[0]);
+
+            Long fromBalance = fromAccountId < toAccountId ? firstBalance : secondBalance;
+            Long toBalance = fromAccountId < toAccountId ? secondBalance : firstBalance;
+            if (fromBalance == null || toBalance == null) {
+                throw new AccountTransferException("Account with id: "
+                        + (fromBalance == null ? fromAccountId : toAccountId) + " not found");
+            }
+            if (fromBalance < amount) {
+                throw new AccountTransferException("Account doesn't have enough money for transfer");
+            }
+            long debited = Money.subtract(fromBalance, amount);
+            long credited = Money.add(toBalance, amount);
+
+            updateStatement = conn.prepareStatement(UPDATE_BALANCE);
+            updateStatement.setBigDecimal(1, Money.toBigDecimal(debited));
+            updateStatement.setLong(2, fromAccountId);
+            updateStatement.addBatch();
+            updateStatement.setBigDecimal(1, Money.toBigDecimal(credited));
+            updateStatement.setLong(2, toAccountId);
+            updateStatement.addBatch();
+            updateStatement.executeBatch();
+
+            long commitStart = System.nanoTime();
+            conn.commit();
+            COMMIT_TIME.recordSince(commitStart);
+        } catch (SQLException | AccountTransferException ex) {
+            rollbackQuietly(conn);
+            throw ex;
+        } finally {
+            DbUtils.closeQuietly(lockStatement);
+            DbUtils.closeQuietly(updateStatement);
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Apply chunk of a batch in one transaction, accounts are locked in id order up front
+     */
+    private void transferChunk(List<TransferRequest> chunk, int offset, BatchMode mode, BatchOutcome outcome,
+                               long[] lockWaitNanos) throws SQLException, AccountTransferException {
+        String[] failures = new String[chunk.size()];
+        long[] amounts = new long[chunk.size()];
+        Map<Long, Long> balances = new TreeMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferRequest request = chunk.get(i);
+            try {
+                TransferEngines.validate(request.getFromAccountId(), request.getToAccountId(), request.getAmount());
+                amounts[i] = Money.toUnits(request.getAmount());
+                balances.put(request.getFromAccountId(), null);
+                balances.put(request.getToAccountId(), null);
+            } catch (AccountTransferException ex) {
+                failures[i] = ex.getMessage();
+            }
+        }
+        if (mode == BatchMode.ALL_OR_NOTHING && BatchOutcome.hasFailures(failures)) {
+            outcome.rolledBack(offset, failures);
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement lockStatement = null;
+        PreparedStatement updateStatement = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            conn.setAutoCommit(false);
+            long lockStart = System.nanoTime();
+            lockStatement = conn.prepareStatement(LOCK_ACCOUNT);
+            for (Map.Entry<Long, Long> balance : balances.entrySet()) {
+                balance.setValue(lockAccount(lockStatement, balance.getKey()));
+            }
+            lockWaitNanos[0] = System.nanoTime() - lockStart;
+            LOCK_WAIT_TIME.record(lockWaitNanos[0]);
+
+            Set<Long> changed = new TreeSet<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                if (failures[i] != null) {
+                    continue;
+                }
+                TransferRequest request = chunk.get(i);
+                failures[i] = BatchOutcome.apply(balances, request, amounts[i]);
+                if (failures[i] == null) {
+                    changed.add(request.getFromAccountId());
+                    changed.add(request.getToAccountId());
+                }
+                if (failures[i] != null && mode == BatchMode.ALL_OR_NOTHING) {
+                    conn.rollback();
+                    outcome.rolledBack(offset, failures);
+                    return;
+                }
+            }
+
+            if (!changed.isEmpty()) {
+                updateStatement = conn.prepareStatement(UPDATE_BALANCE);
+                for (Long accountId : changed) {
+                    updateStatement.setBigDecimal(1, Money.toBigDecimal(balances.get(accountId)));
+                    updateStatement.setLong(2, accountId);
+                    updateStatement.addBatch();
+                }
+                updateStatement.executeBatch();
+            }
+            long commitStart = System.nanoTime();
+            conn.commit();
+            COMMIT_TIME.recordSince(commitStart);
+            outcome.committed(offset, failures);
+        } catch (SQLException ex) {
+            rollbackQuietly(conn);
+            throw ex;
+        } finally {
+            DbUtils.closeQuietly(lockStatement);
+            DbUtils.closeQuietly(updateStatement);
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    private Long lockAccount(PreparedStatement lockStatement, long accountId) throws SQLException, AccountTransferException {
+        lockStatement.setLong(1, accountId);
+        try (ResultSet resultSet = lockStatement.executeQuery()) {
+            return resultSet.next() ? Money.roundToUnits(resultSet.getBigDecimal(1)) : null;
+        }
+    }
+
+    static boolean isLockConflict(SQLException ex) {
+        for (SQLException current = ex; current != null; current = current.getNextException()) {
+            int code = current.getErrorCode();
+            if (code == H2_DEADLOCK || code == H2_LOCK_TIMEOUT || code == H2_CONCURRENT_UPDATE
+                    || "40001".equals(current.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void rollbackQuietly(Connection conn) {
+        try {
+            DbUtils.rollback(conn);
+        } catch (SQLException ex) {
+            log.warn("Can't rollback transfer: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * One database transaction, reports time spent waiting for row locks.
+     */
+    private interface TransactionWork {
+
+        void run(long[] lockWaitNanos) throws SQLException, AccountTransferException;
+
+    }
+
+    private void backoff(int retry) throws AccountTransferException {
+        long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(retry, 16));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AccountTransferException("Transfer interrupted while waiting for retry", ex);
+        }
+    }
+
+}
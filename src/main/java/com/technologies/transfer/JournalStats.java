@@ -0,0 +1,17 @@
+package com.technologies.transfer;
+
+import lombok.Value;
+
+/**
+ * Snapshot of the transfer journal.
+ */
+@Value
+public class JournalStats {
+
+    private long lastSequence;
+    private long durableSequence;
+    private long commits;
+    private double recordsPerCommit;
+    private int waiting;
+
+}
@@ -0,0 +1,924 @@
+package com.technologies.transfer;
+
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.TransferRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory account balances with write-behind to the Account table.
+ *
+ * Balances are kept as {@link Money} thousandths in an off-heap {@link BalanceTable}, BigDecimal
+ * is only read from and written to the database and returned to callers. The table is replaced
+ * by one twice as big when it's full, with every change held off by the journal gate.
+ * Accounts are guarded by striped locks, a transfer takes both locks in ascending stripe order.
+ * A thread may hold whole stripes to change their accounts without a lock per change, it's
+ * expected to give them up as soon as another thread waits for them.
+ * Changed accounts are remembered as dirty and written to H2 in JDBC batches by the
+ * flusher thread started by load, the flush always writes the latest balance of the account.
+ * With a journal attached every change is appended to it before it's visible in memory,
+ * and the journal gate keeps changes out while a snapshot copies the balances and the
+ * debits still waiting for their credit. Every journaled account has an absolute balance
+ * in the journal before its first change, from the snapshot written on attach or from the
+ * balance record of an account loaded later, so replay never adds changes to a database
+ * balance which write-behind may already have updated with them. Updates and deletes of
+ * accounts write their row before taking the account lock, so transfers never wait for
+ * the database, and then change the account in memory.
+ */
+@Slf4j
+public class Ledger {
+
+    private static final String LOAD_BALANCES = "SELECT accountId, accountBalance FROM Account";
+    private static final String LOAD_BALANCE = "SELECT accountBalance FROM Account WHERE accountId = ? ";
+    // balances are already visible from memory, so writing them behind doesn't bump the row version
+    private static final String FLUSH_BALANCE = "UPDATE Account SET accountBalance = ? WHERE accountId = ? ";
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    static final int DEFAULT_LOCK_STRIPES = 1024;
+
+    private final ReentrantLock[] locks;
+    // accounts are added and removed by one thread at a time
+    private final Object tableLock = new Object();
+    private volatile BalanceTable table;
+    // ids of deleted accounts, the database never gives them out again
+    private final Set<Long> removed = ConcurrentHashMap.newKeySet();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final int flushBatchSize;
+    private final long flushIntervalMillis;
+    private final ScheduledExecutorService flusher;
+    private boolean flushing;
+    private final ReentrantReadWriteLock journalGate = new ReentrantReadWriteLock();
+    private final Map<TransferJournal.OpenDebit, Integer> openDebits = new ConcurrentHashMap<>();
+    private volatile TransferJournal journal;
+
+    public Ledger(long flushIntervalMillis, int flushBatchSize) {
+        this(flushIntervalMillis, flushBatchSize, DEFAULT_CAPACITY);
+    }
+
+    public Ledger(long flushIntervalMillis, int flushBatchSize, int initialCapacity) {
+        this(flushIntervalMillis, flushBatchSize, initialCapacity, DEFAULT_LOCK_STRIPES);
+    }
+
+    public Ledger(long flushIntervalMillis, int flushBatchSize, int initialCapacity, int lockStripes) {
+        this.table = new BalanceTable(initialCapacity);
+        this.locks = new ReentrantLock[Math.max(1, lockStripes)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.flushBatchSize = flushBatchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Replay the journal over loaded balances, snapshot the result and log every following change to it
+     *
+     * @param journal {@link TransferJournal}
+     *
+     * @throws AccountTransferException
+     */
+    public void attachJournal(TransferJournal journal) throws AccountTransferException {
+        journal.replay(this);
+        this.journal = journal;
+        snapshot();
+    }
+
+    /**
+     * Load balances of all accounts from the database and start writing changed balances behind
+     *
+     * @throws AccountTransferException
+     */
+    public void load() throws AccountTransferException {
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        ResultSet resultSet = null;
+
+        synchronized (tableLock) {
+            if (!flushing) {
+                flushing = true;
+                flusher.scheduleWithFixedDelay(this::writeBehind, flushIntervalMillis, flushIntervalMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        try {
+            conn = DbConfig.getConnection();
+            prepStatement = conn.prepareStatement(LOAD_BALANCES);
+            resultSet = prepStatement.executeQuery();
+            while (resultSet.next()) {
+                addAccount(resultSet.getLong(1), Money.roundToUnits(resultSet.getBigDecimal(2)));
+            }
+            BalanceTable current = table;
+            log.info("Ledger loaded " + current.size() + " accounts, balance table takes "
+                    + current.getBytes() / 1024 + " KB off heap");
+        } catch (SQLException ex) {
+            log.error("Can't load ledger");
+            throw new AccountTransferException("Load ledger: " + ex.getMessage(), ex);
+        } finally {
+            DbUtils.closeQuietly(conn, prepStatement, resultSet);
+        }
+    }
+
+    /**
+     * Get balance of the account, null if account doesn't exist
+     *
+     * @param accountId {@link Long}
+     *
+     * @return BigDecimal {@link BigDecimal}
+     *
+     * @throws AccountTransferException
+     */
+    public BigDecimal getBalance(Long accountId) throws AccountTransferException {
+        if (!loadAccount(accountId)) {
+            return null;
+        }
+        return peekBalance(accountId);
+    }
+
+    /**
+     * Get balance of the account in memory, null if it isn't loaded. The database isn't read,
+     * so it's safe to call while holding a connection.
+     *
+     * @param accountId {@link Long}
+     *
+     * @return BigDecimal {@link BigDecimal}
+     */
+    public BigDecimal peekBalance(Long accountId) {
+        BalanceTable current = table;
+        int slot = current.find(accountId);
+        return slot < 0 ? null : Money.toBigDecimal(current.getBalance(slot));
+    }
+
+    /**
+     * Check that the account exists, loading it from the database if needed
+     *
+     * @param accountId {@link Long}
+     *
+     * @return boolean
+     *
+     * @throws AccountTransferException
+     */
+    public boolean hasAccount(Long accountId) throws AccountTransferException {
+        return loadAccount(accountId);
+    }
+
+    /**
+     * Check that the account is in memory, without reading the database
+     *
+     * @param accountId {@link Long}
+     *
+     * @return boolean
+     */
+    public boolean isLoaded(Long accountId) {
+        return table.find(accountId) >= 0;
+    }
+
+    /**
+     * Set balance of the account changed outside of transfers. The update writes the other
+     * fields of the row without holding up transfers, then the balance is set in memory and
+     * written behind. Transfers landing in between are taken as done before the update.
+     *
+     * @param accountId {@link Long}
+     * @param balance {@link BigDecimal}
+     * @param update {@link ConditionalUpdate} of the database row
+     *
+     * @return false if the account doesn't exist or the update didn't match
+     *
+     * @throws AccountTransferException
+     * @throws SQLException when the update fails
+     */
+    public boolean setBalance(Long accountId, BigDecimal balance, ConditionalUpdate update)
+            throws AccountTransferException, SQLException {
+        return setBalance(accountId, null, balance, update);
+    }
+
+    /**
+     * Set balance changed outside of transfers if the account still has the expected balance.
+     * The update writes the other fields of the row without holding up transfers. Transfers
+     * landing after the check are taken as done after the update, so they are added to the
+     * new balance.
+     *
+     * @param accountId {@link Long}
+     * @param expectedBalance thousandths the caller saw
+     * @param balance {@link BigDecimal}
+     * @param update {@link ConditionalUpdate} of the database row
+     *
+     * @return false if the balance changed, the account doesn't exist or the update didn't match
+     *
+     * @throws AccountTransferException
+     * @throws SQLException when the update fails
+     */
+    public boolean setBalanceIf(Long accountId, long expectedBalance, BigDecimal balance, ConditionalUpdate update)
+            throws AccountTransferException, SQLException {
+        return setBalance(accountId, expectedBalance, balance, update);
+    }
+
+    /**
+     * Delete the account. The database row is deleted without holding up transfers, then the
+     * account is dropped from memory and its id is never loaded again, so transfers after it
+     * find no account instead of changing a balance nobody writes.
+     *
+     * @param accountId {@link Long}
+     * @param delete {@link ConditionalUpdate} deleting the database row
+     *
+     * @return false if the delete didn't match
+     *
+     * @throws AccountTransferException
+     * @throws SQLException when the delete fails
+     */
+    public boolean remove(Long accountId, ConditionalUpdate delete) throws AccountTransferException, SQLException {
+        if (!delete.execute()) {
+            return false;
+        }
+        synchronized (tableLock) {
+            ReentrantLock lock = lockOf(accountId);
+            Lock gate = journalGate.readLock();
+            gate.lock();
+            lock.lock();
+            try {
+                removed.add(accountId);
+                dirty.remove(accountId);
+                int slot = table.find(accountId);
+                if (slot >= 0) {
+                    long balance = table.getBalance(slot);
+                    table.remove(accountId);
+                    appendToJournal(TransferJournal.REMOVE, accountId, 0, balance);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+                gate.unlock();
+            }
+        }
+    }
+
+    /**
+     * Move money between accounts in memory
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount thousandths, see {@link Money}
+     *
+     * @return nanoseconds spent waiting for account locks
+     *
+     * @throws AccountTransferException
+     */
+    public long transfer(Long fromAccountId, Long toAccountId, long amount) throws AccountTransferException {
+        loadExistingAccount(fromAccountId);
+        loadExistingAccount(toAccountId);
+        // both accounts may share a stripe, the lock is reentrant
+        ReentrantLock first = stripe(fromAccountId) < stripe(toAccountId) ? lockOf(fromAccountId) : lockOf(toAccountId);
+        ReentrantLock second = stripe(fromAccountId) < stripe(toAccountId) ? lockOf(toAccountId) : lockOf(fromAccountId);
+
+        Lock gate = journalGate.readLock();
+        long lockStart = System.nanoTime();
+        gate.lock();
+        first.lock();
+        try {
+            second.lock();
+            try {
+                long lockWaitNanos = System.nanoTime() - lockStart;
+                transferHeld(fromAccountId, toAccountId, amount);
+                return lockWaitNanos;
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+            gate.unlock();
+        }
+    }
+
+    /**
+     * Move money between accounts in memory, the caller holds the journal gate and the stripe
+     * locks of both accounts. Accounts aren't loaded.
+     *
+     * @throws AccountTransferException
+     */
+    void transferHeld(long fromAccountId, long toAccountId, long amount) throws AccountTransferException {
+        BalanceTable current = table;
+        int from = current.find(fromAccountId);
+        int to = current.find(toAccountId);
+        if (from < 0 || to < 0) {
+            throw new AccountTransferException("Account with id: "
+                    + (from < 0 ? fromAccountId : toAccountId) + " not found");
+        }
+        long fromBalance = current.getBalance(from);
+        if (fromBalance < amount) {
+            throw new AccountTransferException("Account doesn't have enough money for transfer");
+        }
+        long debited = Money.subtract(fromBalance, amount);
+        long credited = Money.add(current.getBalance(to), amount);
+        appendToJournal(TransferJournal.TRANSFER, fromAccountId, toAccountId, amount);
+        current.setBalance(from, debited);
+        current.setBalance(to, credited);
+        dirty.add(fromAccountId);
+        dirty.add(toAccountId);
+    }
+
+    /**
+     * Take money from the payer, the payee is credited separately
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount thousandths, see {@link Money}
+     *
+     * @return false if account doesn't have enough money
+     *
+     * @throws AccountTransferException
+     */
+    public boolean debit(Long fromAccountId, Long toAccountId, long amount) throws AccountTransferException {
+        loadExistingAccount(fromAccountId);
+        ReentrantLock lock = lockOf(fromAccountId);
+        Lock gate = journalGate.readLock();
+        gate.lock();
+        lock.lock();
+        try {
+            return debitHeld(fromAccountId, toAccountId, amount);
+        } finally {
+            lock.unlock();
+            gate.unlock();
+        }
+    }
+
+    /**
+     * Take money from the payer, the caller holds the journal gate and the payer's stripe lock
+     *
+     * @return false if account doesn't have enough money
+     *
+     * @throws AccountTransferException
+     */
+    boolean debitHeld(long fromAccountId, long toAccountId, long amount) throws AccountTransferException {
+        BalanceTable current = table;
+        int slot = current.find(fromAccountId);
+        if (slot < 0) {
+            throw new AccountTransferException("Account with id: " + fromAccountId + " not found");
+        }
+        long balance = current.getBalance(slot);
+        if (balance < amount) {
+            return false;
+        }
+        long debited = Money.subtract(balance, amount);
+        appendToJournal(TransferJournal.DEBIT, fromAccountId, toAccountId, amount);
+        current.setBalance(slot, debited);
+        dirty.add(fromAccountId);
+        return true;
+    }
+
+    /**
+     * Put money debited from the payer to the payee
+     *
+     * @param toAccountId {@link Long}
+     * @param fromAccountId {@link Long}
+     * @param amount thousandths, see {@link Money}
+     *
+     * @throws AccountTransferException
+     */
+    public void credit(Long toAccountId, Long fromAccountId, long amount) throws AccountTransferException {
+        addMoney(TransferJournal.CREDIT, toAccountId, fromAccountId, amount);
+    }
+
+    /**
+     * Return money debited from the payer when the payee can't be credited
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount thousandths, see {@link Money}
+     *
+     * @throws AccountTransferException
+     */
+    public void refund(Long fromAccountId, Long toAccountId, long amount) throws AccountTransferException {
+        addMoney(TransferJournal.REFUND, fromAccountId, toAccountId, amount);
+    }
+
+    /**
+     * Apply transfers in memory with all their accounts locked in id order
+     *
+     * @param transfers list of {@link TransferRequest}
+     * @param allOrNothing apply nothing if any transfer fails
+     *
+     * @return failure message for each transfer, null for applied ones
+     *
+     * @throws AccountTransferException
+     */
+    public String[] transferAll(List<TransferRequest> transfers, boolean allOrNothing) throws AccountTransferException {
+        String[] failures = new String[transfers.size()];
+        long[] amounts = new long[transfers.size()];
+        Set<Long> accountIds = new HashSet<>();
+        Set<Integer> stripes = new TreeSet<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest request = transfers.get(i);
+            try {
+                TransferEngines.validate(request.getFromAccountId(), request.getToAccountId(), request.getAmount());
+                amounts[i] = Money.toUnits(request.getAmount());
+                loadExistingAccount(request.getFromAccountId());
+                loadExistingAccount(request.getToAccountId());
+                accountIds.add(request.getFromAccountId());
+                accountIds.add(request.getToAccountId());
+                stripes.add(stripe(request.getFromAccountId()));
+                stripes.add(stripe(request.getToAccountId()));
+            } catch (AccountTransferException ex) {
+                failures[i] = ex.getMessage();
+            }
+        }
+        if (allOrNothing && BatchOutcome.hasFailures(failures)) {
+            return failures;
+        }
+
+        Lock gate = journalGate.readLock();
+        List<ReentrantLock> acquired = new ArrayList<>(stripes.size());
+        gate.lock();
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                acquired.add(locks[stripe]);
+            }
+            BalanceTable current = table;
+            Map<Long, Long> balances = new HashMap<>();
+            for (Long accountId : accountIds) {
+                int slot = current.find(accountId);
+                if (slot >= 0) {
+                    balances.put(accountId, current.getBalance(slot));
+                }
+            }
+            List<long[]> records = new ArrayList<>();
+            for (int i = 0; i < transfers.size(); i++) {
+                if (failures[i] != null) {
+                    continue;
+                }
+                TransferRequest request = transfers.get(i);
+                failures[i] = BatchOutcome.apply(balances, request, amounts[i]);
+                if (failures[i] == null && journal != null) {
+                    records.add(new long[]{TransferJournal.TRANSFER, request.getFromAccountId(),
+                            request.getToAccountId(), amounts[i]});
+                }
+                if (failures[i] != null && allOrNothing) {
+                    return failures;
+                }
+            }
+            if (journal != null) {
+                journal.appendAll(records);
+            }
+            for (Map.Entry<Long, Long> balance : balances.entrySet()) {
+                int slot = current.find(balance.getKey());
+                if (current.getBalance(slot) != balance.getValue()) {
+                    current.setBalance(slot, balance.getValue());
+                    dirty.add(balance.getKey());
+                }
+            }
+            return failures;
+        } finally {
+            for (ReentrantLock lock : acquired) {
+                lock.unlock();
+            }
+            gate.unlock();
+        }
+    }
+
+    /**
+     * Wait until every change made so far is on disk, returns at once without a journal
+     */
+    public void awaitDurable() {
+        whenDurable().join();
+    }
+
+    /**
+     * Get future completed when every change made so far is on disk
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> whenDurable() {
+        TransferJournal current = journal;
+        return current == null ? CompletableFuture.completedFuture(null) : current.whenDurable(current.getLastSequence());
+    }
+
+    /**
+     * Get attached journal
+     *
+     * @return TransferJournal {@link TransferJournal}, null when changes are not journaled
+     */
+    public TransferJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Write balances of all accounts and debits waiting for their credit as a journal snapshot,
+     * so replay can skip older records
+     *
+     * @throws AccountTransferException
+     */
+    public void snapshot() throws AccountTransferException {
+        TransferJournal current = journal;
+        if (current == null) {
+            return;
+        }
+        long sequence;
+        Map<Long, Long> balances;
+        Map<TransferJournal.OpenDebit, Integer> debits;
+        Lock gate = journalGate.writeLock();
+        gate.lock();
+        try {
+            sequence = current.getLastSequence();
+            BalanceTable accounts = table;
+            balances = new HashMap<>(accounts.size() * 2);
+            for (int slot = 0; slot < accounts.getSlots(); slot++) {
+                long accountId = accounts.getAccountId(slot);
+                if (accountId != -1) {
+                    balances.put(accountId, accounts.getBalance(slot));
+                }
+            }
+            debits = new HashMap<>(openDebits);
+        } finally {
+            gate.unlock();
+        }
+        current.writeSnapshot(sequence, balances, debits);
+    }
+
+    /**
+     * Set balance read from the journal, accounts missing in the database are skipped
+     */
+    void restoreBalance(long accountId, long balance) {
+        BalanceTable current = table;
+        int slot = current.find(accountId);
+        if (slot >= 0) {
+            current.setBalance(slot, balance);
+            dirty.add(accountId);
+        }
+    }
+
+    /**
+     * Drop account deleted according to the journal
+     */
+    void restoreRemoval(long accountId) {
+        synchronized (tableLock) {
+            removed.add(accountId);
+            dirty.remove(accountId);
+            table.remove(accountId);
+        }
+    }
+
+    /**
+     * Add change read from the journal, accounts missing in the database are skipped
+     *
+     * @throws AccountTransferException if the balance overflows
+     */
+    void restoreDelta(long accountId, long delta) throws AccountTransferException {
+        BalanceTable current = table;
+        int slot = current.find(accountId);
+        if (slot >= 0) {
+            current.setBalance(slot, Money.add(current.getBalance(slot), delta));
+            dirty.add(accountId);
+        }
+    }
+
+    /**
+     * Get count of accounts waiting to be written to the database
+     *
+     * @return int
+     */
+    public int getPendingWrites() {
+        return dirty.size();
+    }
+
+    /**
+     * Write changed balances to the database
+     *
+     * @throws AccountTransferException
+     */
+    public synchronized void flush() throws AccountTransferException {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        List<Long> batch = new ArrayList<>(flushBatchSize);
+
+        try {
+            conn = DbConfig.getConnection();
+            conn.setAutoCommit(false);
+            prepStatement = conn.prepareStatement(FLUSH_BALANCE);
+            Iterator<Long> dirtyIds = dirty.iterator();
+            while (dirtyIds.hasNext()) {
+                Long accountId = dirtyIds.next();
+                dirtyIds.remove();
+                BalanceTable current = table;
+                int slot = current.find(accountId);
+                if (slot < 0) {
+                    continue;
+                }
+                batch.add(accountId);
+                prepStatement.setBigDecimal(1, Money.toBigDecimal(current.getBalance(slot)));
+                prepStatement.setLong(2, accountId);
+                prepStatement.addBatch();
+                if (batch.size() == flushBatchSize) {
+                    prepStatement.executeBatch();
+                    conn.commit();
+                    batch.clear();
+                }
+            }
+            prepStatement.executeBatch();
+            conn.commit();
+        } catch (SQLException ex) {
+            JdbcTransferEngine.rollbackQuietly(conn);
+            dirty.addAll(batch);
+            log.error("Can't write ledger balances");
+            throw new AccountTransferException("Flush ledger: " + ex.getMessage(), ex);
+        } finally {
+            DbUtils.closeQuietly(prepStatement);
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Stop the flusher and write the remaining balances
+     */
+    public void close() {
+        flusher.shutdown();
+        flushQuietly();
+        TransferJournal current = journal;
+        if (current != null) {
+            try {
+                snapshot();
+            } catch (AccountTransferException | RuntimeException ex) {
+                log.error("Can't write journal snapshot on close: " + ex.getMessage());
+            }
+            current.close();
+        }
+    }
+
+    private void writeBehind() {
+        flushQuietly();
+        TransferJournal current = journal;
+        if (current != null && current.isSnapshotDue()) {
+            try {
+                snapshot();
+            } catch (AccountTransferException | RuntimeException ex) {
+                log.error("Journal snapshot failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (AccountTransferException | RuntimeException ex) {
+            log.error("Ledger write-behind failed: " + ex.getMessage());
+        }
+    }
+
+    private boolean setBalance(Long accountId, Long expectedBalance, BigDecimal balance, ConditionalUpdate update)
+            throws AccountTransferException, SQLException {
+        // same rounding as the accountBalance column
+        long stored = Money.roundToUnits(balance);
+        if (!loadAccount(accountId)) {
+            return false;
+        }
+        if (expectedBalance != null) {
+            BalanceTable current = table;
+            int slot = current.find(accountId);
+            if (slot < 0 || current.getBalance(slot) != expectedBalance) {
+                return false;
+            }
+        }
+        if (!update.execute()) {
+            return false;
+        }
+        ReentrantLock lock = lockOf(accountId);
+        Lock gate = journalGate.readLock();
+        gate.lock();
+        lock.lock();
+        try {
+            BalanceTable current = table;
+            int slot = current.find(accountId);
+            if (slot < 0) {
+                return false;
+            }
+            long updated = expectedBalance == null ? stored
+                    : Money.add(stored, Money.subtract(current.getBalance(slot), expectedBalance));
+            appendToJournal(TransferJournal.BALANCE, accountId, 0, updated);
+            current.setBalance(slot, updated);
+        } finally {
+            lock.unlock();
+            gate.unlock();
+        }
+        dirty.add(accountId);
+        return true;
+    }
+
+    private void addMoney(int type, Long accountId, Long otherAccountId, long amount) throws AccountTransferException {
+        loadExistingAccount(accountId);
+        ReentrantLock lock = lockOf(accountId);
+        Lock gate = journalGate.readLock();
+        gate.lock();
+        lock.lock();
+        try {
+            addMoneyHeld(type, accountId, otherAccountId, amount);
+        } finally {
+            lock.unlock();
+            gate.unlock();
+        }
+    }
+
+    /**
+     * Put money to the account, the caller holds the journal gate and the account's stripe lock
+     *
+     * @param type {@link TransferJournal#CREDIT} or {@link TransferJournal#REFUND}
+     *
+     * @throws AccountTransferException
+     */
+    void addMoneyHeld(int type, long accountId, long otherAccountId, long amount) throws AccountTransferException {
+        BalanceTable current = table;
+        int slot = current.find(accountId);
+        if (slot < 0) {
+            throw new AccountTransferException("Account with id: " + accountId + " not found");
+        }
+        long credited = Money.add(current.getBalance(slot), amount);
+        appendToJournal(type, accountId, otherAccountId, amount);
+        current.setBalance(slot, credited);
+        dirty.add(accountId);
+    }
+
+    /**
+     * Get count of lock stripes, an account belongs to the stripe of {@link #stripeOf(long)}
+     *
+     * @return int
+     */
+    int getLockStripes() {
+        return locks.length;
+    }
+
+    int stripeOf(long accountId) {
+        return stripe(accountId);
+    }
+
+    /**
+     * Take the journal gate and the locks of the stripes for one thread, which then changes balances
+     * of their accounts with the held methods without a lock per change
+     *
+     * @param stripes in increasing order, the order every other taker locks them in
+     */
+    void holdStripes(int[] stripes) {
+        journalGate.readLock().lock();
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+    }
+
+    void releaseStripes(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+        journalGate.readLock().unlock();
+    }
+
+    /**
+     * Check that another thread waits for the locks of the stripes or for the journal gate
+     *
+     * @return boolean
+     */
+    boolean isWanted(int[] stripes) {
+        if (journalGate.hasQueuedThreads()) {
+            return true;
+        }
+        for (int stripe : stripes) {
+            if (locks[stripe].hasQueuedThreads()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendToJournal(int type, long accountId, long otherAccountId, long amount)
+            throws AccountTransferException {
+        TransferJournal current = journal;
+        if (current != null) {
+            current.append(type, accountId, otherAccountId, amount);
+            TransferJournal.track(openDebits, type, accountId, otherAccountId, amount);
+        }
+    }
+
+    private int stripe(long accountId) {
+        return Math.floorMod(accountId, locks.length);
+    }
+
+    private ReentrantLock lockOf(long accountId) {
+        return locks[stripe(accountId)];
+    }
+
+    private void loadExistingAccount(Long accountId) throws AccountTransferException {
+        if (!loadAccount(accountId)) {
+            throw new AccountTransferException("Account with id: " + accountId + " not found");
+        }
+    }
+
+    /**
+     * Check that account is in memory, accounts created after the load are read from the database
+     */
+    private boolean loadAccount(Long accountId) throws AccountTransferException {
+        if (table.find(accountId) >= 0) {
+            return true;
+        }
+        Connection conn = null;
+        PreparedStatement prepStatement = null;
+        ResultSet resultSet = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            prepStatement = conn.prepareStatement(LOAD_BALANCE);
+            prepStatement.setLong(1, accountId);
+            resultSet = prepStatement.executeQuery();
+            if (!resultSet.next()) {
+                return false;
+            }
+            return addAccount(accountId, Money.roundToUnits(resultSet.getBigDecimal(1)));
+        } catch (SQLException ex) {
+            log.error("Can't load account with id: " + accountId);
+            throw new AccountTransferException("Load account: " + ex.getMessage(), ex);
+        } finally {
+            DbUtils.closeQuietly(conn, prepStatement, resultSet);
+        }
+    }
+
+    /**
+     * Add account unless it's already in memory, a full table is copied into one twice as big.
+     * The balance is journaled before the account is visible, so its changes replay over it.
+     * A deleted account read before its delete isn't added back.
+     *
+     * @return false if the account was deleted
+     */
+    private boolean addAccount(long accountId, long balance) throws AccountTransferException {
+        synchronized (tableLock) {
+            if (removed.contains(accountId)) {
+                return false;
+            }
+            if (table.find(accountId) >= 0) {
+                return true;
+            }
+            if (table.isFull()) {
+                if (table.getSlots() > BalanceTable.MAX_ACCOUNTS) {
+                    throw new AccountTransferException("Ledger can't hold more than "
+                            + BalanceTable.MAX_ACCOUNTS + " accounts");
+                }
+                Lock gate = journalGate.writeLock();
+                gate.lock();
+                try {
+                    BalanceTable bigger = new BalanceTable(table.getSlots());
+                    table.copyTo(bigger);
+                    table = bigger;
+                } finally {
+                    gate.unlock();
+                }
+                log.info("Ledger balance table grown to " + table.getSlots() + " slots");
+            }
+            Lock gate = journalGate.readLock();
+            gate.lock();
+            try {
+                appendToJournal(TransferJournal.BALANCE, accountId, 0, balance);
+                table.insert(accountId, balance);
+            } finally {
+                gate.unlock();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Write of a database row that may find it changed.
+     */
+    public interface ConditionalUpdate {
+
+        /**
+         * @return false if the row didn't match
+         */
+        boolean execute() throws SQLException;
+
+    }
+
+}
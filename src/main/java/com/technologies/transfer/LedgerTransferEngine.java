@@ -0,0 +1,54 @@
+package com.technologies.transfer;
+
+import com.technologies.config.ConfigLoader;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.BatchMode;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.TransferRequest;
+import com.technologies.model.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Transfer in memory through the ledger, the database is updated asynchronously.
+ * With the journal enabled a transfer returns only after its record is on disk.
+ */
+public class LedgerTransferEngine implements TransferEngine {
+
+    private final Ledger ledger;
+    private final int batchChunkSize = ConfigLoader.getIntProperty("transfer_batch_chunk_size", 1000);
+
+    public LedgerTransferEngine(Ledger ledger) {
+        this.ledger = ledger;
+    }
+
+    @Override
+    public TransferResult transfer(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException {
+        TransferEngines.validate(fromAccountId, toAccountId, amount);
+
+        long start = System.nanoTime();
+        long lockWaitNanos = ledger.transfer(fromAccountId, toAccountId, Money.toUnits(amount));
+        ledger.awaitDurable();
+        return new TransferResult(fromAccountId, toAccountId, amount, 0,
+                lockWaitNanos / 1000, (System.nanoTime() - start) / 1000);
+    }
+
+    @Override
+    public BatchTransferResult transferBatch(List<TransferRequest> transfers, BatchMode mode) throws AccountTransferException {
+        BatchOutcome outcome = new BatchOutcome(mode, transfers.size());
+        int chunkSize = mode == BatchMode.ALL_OR_NOTHING ? Math.max(1, transfers.size()) : batchChunkSize;
+        for (int offset = 0; offset < transfers.size(); offset += chunkSize) {
+            List<TransferRequest> chunk = transfers.subList(offset, Math.min(offset + chunkSize, transfers.size()));
+            String[] failures = ledger.transferAll(chunk, mode == BatchMode.ALL_OR_NOTHING);
+            if (mode == BatchMode.ALL_OR_NOTHING && BatchOutcome.hasFailures(failures)) {
+                outcome.rolledBack(offset, failures);
+            } else {
+                outcome.committed(offset, failures);
+            }
+        }
+        ledger.awaitDurable();
+        return outcome.toResult();
+    }
+
+}
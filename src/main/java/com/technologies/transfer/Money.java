@@ -0,0 +1,99 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money as a long count of thousandths, the scale of the accountBalance column.
+ *
+ * Balances and amounts are converted once where they enter from JSON or JDBC and
+ * back where they leave, the arithmetic in between doesn't allocate. Sums that
+ * don't fit in a long fail instead of wrapping around.
+ */
+public final class Money {
+
+    public static final int SCALE = 3;
+
+    private Money() {
+    }
+
+    /**
+     * Convert exact amount
+     *
+     * @param amount {@link BigDecimal} with at most {@link #SCALE} decimal places
+     *
+     * @return long thousandths
+     *
+     * @throws AccountTransferException if the amount has more decimal places or doesn't fit
+     */
+    public static long toUnits(BigDecimal amount) throws AccountTransferException {
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new AccountTransferException("Amount " + amount.toPlainString() + " is not a valid sum of money", ex);
+        }
+    }
+
+    /**
+     * Convert amount rounded half up to {@link #SCALE} decimal places, like the accountBalance column
+     *
+     * @param amount {@link BigDecimal}, null is zero
+     *
+     * @return long thousandths
+     *
+     * @throws AccountTransferException if the amount doesn't fit
+     */
+    public static long roundToUnits(BigDecimal amount) throws AccountTransferException {
+        return amount == null ? 0 : toUnits(amount.setScale(SCALE, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * Convert thousandths back
+     *
+     * @param units long
+     *
+     * @return BigDecimal {@link BigDecimal} with scale {@link #SCALE}
+     */
+    public static BigDecimal toBigDecimal(long units) {
+        return BigDecimal.valueOf(units, SCALE);
+    }
+
+    /**
+     * Add with overflow check
+     *
+     * @param units long
+     * @param amount long
+     *
+     * @return long
+     *
+     * @throws AccountTransferException on overflow
+     */
+    public static long add(long units, long amount) throws AccountTransferException {
+        long sum = units + amount;
+        if (((units ^ sum) & (amount ^ sum)) < 0) {
+            throw new AccountTransferException("Balance overflow");
+        }
+        return sum;
+    }
+
+    /**
+     * Subtract with overflow check
+     *
+     * @param units long
+     * @param amount long
+     *
+     * @return long
+     *
+     * @throws AccountTransferException on overflow
+     */
+    public static long subtract(long units, long amount) throws AccountTransferException {
+        long difference = units - amount;
+        if (((units ^ amount) & (units ^ difference)) < 0) {
+            throw new AccountTransferException("Balance overflow");
+        }
+        return difference;
+    }
+
+}
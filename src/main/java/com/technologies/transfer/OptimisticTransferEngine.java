@@ -0,0 +1,99 @@
+package com.technologies.transfer;
+
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import org.apache.commons.dbutils.DbUtils;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Transfer in a database transaction without reading balances first.
+ *
+ * The debit is one guarded update that only matches while the account has enough
+ * money, the credit is an atomic increment, so no SELECT ... FOR UPDATE round trip
+ * holds the rows before they are written. The updates still lock their rows until
+ * commit and run in ascending account id order, so opposite transfers don't deadlock.
+ * Why an update matched no row is only looked up on failure. Batches are applied
+ * like in {@link JdbcTransferEngine}, they read every balance of a chunk anyway.
+ */
+public class OptimisticTransferEngine extends JdbcTransferEngine {
+
+    private static final String DEBIT = "UPDATE Account SET accountBalance = accountBalance - ?, version = version + 1"
+            + " WHERE accountId = ? AND accountBalance >= ? ";
+    // balances must stay within Money range
+    private static final String CREDIT = "UPDATE Account SET accountBalance = accountBalance + ?, version = version + 1"
+            + " WHERE accountId = ? AND accountBalance <= ? ";
+    private static final String FIND_ACCOUNT = "SELECT accountId FROM Account WHERE accountId = ? ";
+
+    @Override
+    void transferOnce(Long fromAccountId, Long toAccountId, long amount, long[] lockWaitNanos)
+            throws SQLException, AccountTransferException {
+        Connection conn = null;
+        PreparedStatement debitStatement = null;
+        PreparedStatement creditStatement = null;
+
+        try {
+            conn = DbConfig.getConnection();
+            conn.setAutoCommit(false);
+            BigDecimal sum = Money.toBigDecimal(amount);
+            debitStatement = conn.prepareStatement(DEBIT);
+            debitStatement.setBigDecimal(1, sum);
+            debitStatement.setLong(2, fromAccountId);
+            debitStatement.setBigDecimal(3, sum);
+            creditStatement = conn.prepareStatement(CREDIT);
+            creditStatement.setBigDecimal(1, sum);
+            creditStatement.setLong(2, toAccountId);
+            creditStatement.setBigDecimal(3, Money.toBigDecimal(Long.MAX_VALUE - amount));
+
+            // the second update is skipped when the first one fails, the transaction is rolled back anyway
+            long updateStart = System.nanoTime();
+            boolean debited;
+            boolean credited;
+            if (fromAccountId < toAccountId) {
+                debited = debitStatement.executeUpdate() > 0;
+                credited = debited && creditStatement.executeUpdate() > 0;
+            } else {
+                credited = creditStatement.executeUpdate() > 0;
+                debited = credited && debitStatement.executeUpdate() > 0;
+            }
+            lockWaitNanos[0] = System.nanoTime() - updateStart;
+            LOCK_WAIT_TIME.record(lockWaitNanos[0]);
+
+            if (!debited && (credited || fromAccountId < toAccountId)) {
+                throw new AccountTransferException(exists(conn, fromAccountId)
+                        ? "Account doesn't have enough money for transfer"
+                        : "Account with id: " + fromAccountId + " not found");
+            }
+            if (!credited) {
+                throw new AccountTransferException(exists(conn, toAccountId)
+                        ? "Balance overflow"
+                        : "Account with id: " + toAccountId + " not found");
+            }
+
+            long commitStart = System.nanoTime();
+            conn.commit();
+            COMMIT_TIME.recordSince(commitStart);
+        } catch (SQLException | AccountTransferException ex) {
+            rollbackQuietly(conn);
+            throw ex;
+        } finally {
+            DbUtils.closeQuietly(debitStatement);
+            DbUtils.closeQuietly(creditStatement);
+            DbUtils.closeQuietly(conn);
+        }
+    }
+
+    private static boolean exists(Connection conn, long accountId) throws SQLException {
+        try (PreparedStatement findStatement = conn.prepareStatement(FIND_ACCOUNT)) {
+            findStatement.setLong(1, accountId);
+            try (ResultSet resultSet = findStatement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.technologies.transfer;
+
+import lombok.Value;
+
+/**
+ * Snapshot of one transfer pipeline shard.
+ */
+@Value
+public class ShardStats {
+
+    private int shard;
+    private int queued;
+    private int capacity;
+    private long processed;
+    private long rejected;
+
+}
@@ -0,0 +1,424 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.TransferResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transfer pipeline of single-writer shards.
+ *
+ * Every account belongs to one shard by its ledger lock stripe, and only the shard thread
+ * changes its balance in transfers, so accounts are never contended between request threads.
+ * While a shard drains its queues it holds the locks of its stripes and applies transfers
+ * without a lock per transfer. It gives the locks up between two transfers when an admin
+ * update, a batch, a snapshot or a growing balance table waits for them.
+ * A transfer inside one shard is applied in one step. A transfer between shards
+ * is debited by the shard of the payer and then credited by the shard of the payee,
+ * which gets it through an unbounded inbox so shards never block on each other.
+ * A credit which fails goes back to the payer's shard to be refunded there.
+ * Closing stops new submits and lets the shards finish what
+ * was already submitted. Accounts which aren't in memory yet are read on the executor
+ * of the request before the transfer is submitted, and results are completed on
+ * completion threads, so neither database reads nor the callbacks of the caller run
+ * on a shard.
+ */
+@Slf4j
+public class ShardedTransferEngine extends LedgerTransferEngine {
+
+    private static final long SUBMIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // transfers applied before the stripes are given up even if nobody waits for them
+    private static final int HOLD_LIMIT = 256;
+
+    private final Ledger ledger;
+    private final Shard[] shards;
+    private final ThreadPoolExecutor completions;
+    private final long submitTimeoutNanos;
+    // transfers submitted and not completed yet, counted before the accepting check
+    private final AtomicLong inFlight = new AtomicLong();
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+
+    public ShardedTransferEngine(Ledger ledger, int shardCount, int ringSize, long submitTimeoutMillis) {
+        this(ledger, shardCount, ringSize, submitTimeoutMillis, 2);
+    }
+
+    public ShardedTransferEngine(Ledger ledger, int shardCount, int ringSize, long submitTimeoutMillis,
+                                 int completionThreads) {
+        super(ledger);
+        this.ledger = ledger;
+        this.submitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(submitTimeoutMillis);
+        // unbounded, a finished transfer is never dropped, idle threads end so nothing has to shut it down
+        this.completions = new ThreadPoolExecutor(Math.max(1, completionThreads), Math.max(1, completionThreads),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), completionThreads());
+        this.completions.allowCoreThreadTimeOut(true);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, ringSize);
+            shards[i].start();
+        }
+        log.info("Transfer pipeline started with " + shardCount + " shards");
+    }
+
+    @Override
+    public TransferResult transfer(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException {
+        try {
+            return transferAsync(fromAccountId, toAccountId, amount).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AccountTransferException("Transfer interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof AccountTransferException) {
+                throw (AccountTransferException) ex.getCause();
+            }
+            throw new AccountTransferException("Transfer money: " + ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> transferAsync(Long fromAccountId, Long toAccountId, BigDecimal amount,
+                                                           Executor executor) {
+        CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        try {
+            TransferEngines.validate(fromAccountId, toAccountId, amount);
+            Task task = new Task(fromAccountId, toAccountId, amount, Money.toUnits(amount), result);
+            if (ledger.isLoaded(fromAccountId) && ledger.isLoaded(toAccountId)) {
+                submit(task);
+            } else {
+                // accounts missing in memory are read from the database on the executor, not here or on a shard
+                executor.execute(() -> {
+                    try {
+                        checkAccount(fromAccountId);
+                        checkAccount(toAccountId);
+                        submit(task);
+                    } catch (AccountTransferException | RuntimeException ex) {
+                        result.completeExceptionally(ex);
+                    }
+                });
+            }
+        } catch (AccountTransferException | RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Get state of every shard
+     *
+     * @return list of {@link ShardStats}
+     */
+    public List<ShardStats> getStats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(new ShardStats(shard.index, shard.ring.size() + shard.inbox.size(), shard.ring.capacity(),
+                    shard.processed.get(), shard.rejected.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * Stop taking transfers, wait until the submitted ones are completed and stop shard threads.
+     * Transfers the shards didn't finish in time fail, debited ones are refunded.
+     */
+    public void close() {
+        accepting = false;
+        long deadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            for (Shard shard : shards) {
+                LockSupport.unpark(shard.thread);
+            }
+            LockSupport.parkNanos(SUBMIT_PARK_NANOS);
+        }
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (inFlight.get() > 0) {
+            log.warn("Transfer pipeline closed with " + inFlight.get() + " transfers not finished");
+            for (Shard shard : shards) {
+                // the rings have a single consumer, a shard still running keeps its tasks
+                if (!shard.thread.isAlive()) {
+                    shard.abandon();
+                }
+            }
+        }
+    }
+
+    private void checkAccount(Long accountId) throws AccountTransferException {
+        if (!ledger.hasAccount(accountId)) {
+            throw new AccountTransferException("Account with id: " + accountId + " not found");
+        }
+    }
+
+    private Shard shardOf(long accountId) {
+        return shards[ledger.stripeOf(accountId) % shards.length];
+    }
+
+    private void submit(Task task) throws AccountTransferException {
+        Shard shard = shardOf(task.fromAccountId);
+        inFlight.incrementAndGet();
+        if (!accepting) {
+            inFlight.decrementAndGet();
+            throw new AccountTransferException("Transfer pipeline is closed");
+        }
+        long deadline = System.nanoTime() + submitTimeoutNanos;
+        while (!shard.ring.offer(task)) {
+            if (!running || System.nanoTime() > deadline) {
+                inFlight.decrementAndGet();
+                shard.rejected.incrementAndGet();
+                throw new AccountTransferException("Transfer pipeline is full, try again later");
+            }
+            LockSupport.parkNanos(SUBMIT_PARK_NANOS);
+        }
+        shard.wakeUp();
+    }
+
+    /**
+     * Get stripes of the ledger the shard owns, in increasing order
+     */
+    private int[] ownedStripes(int shard) {
+        int[] owned = new int[(ledger.getLockStripes() - shard + shards.length - 1) / shards.length];
+        for (int i = 0; i < owned.length; i++) {
+            owned[i] = shard + i * shards.length;
+        }
+        return owned;
+    }
+
+    private static ThreadFactory completionThreads() {
+        AtomicInteger created = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "transfer-completion-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Transfer travelling through the shards.
+     */
+    private static class Task {
+
+        private final Long fromAccountId;
+        private final Long toAccountId;
+        private final BigDecimal amount;
+        private final long units;
+        private final CompletableFuture<TransferResult> result;
+        private final long submittedAt = System.nanoTime();
+        private boolean debited;
+        // credit failure, the payer's shard refunds the debit
+        private Throwable refundFor;
+
+        Task(Long fromAccountId, Long toAccountId, BigDecimal amount, long units,
+             CompletableFuture<TransferResult> result) {
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amount = amount;
+            this.units = units;
+            this.result = result;
+        }
+
+        void done() {
+            result.complete(new TransferResult(fromAccountId, toAccountId, amount, 0, 0,
+                    (System.nanoTime() - submittedAt) / 1000));
+        }
+
+    }
+
+    /**
+     * Single thread owning a partition of accounts.
+     */
+    private class Shard implements Runnable {
+
+        private final int index;
+        private final int[] stripes;
+        private final RingBuffer<Task> ring;
+        private final Queue<Task> inbox = new ConcurrentLinkedQueue<>();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean parked;
+
+        Shard(int index, int ringSize) {
+            this.index = index;
+            this.stripes = ownedStripes(index);
+            this.ring = new RingBuffer<>(ringSize);
+            this.thread = new Thread(this, "transfer-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void wakeUp() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            int idleSpins = 0;
+            int held = 0;
+            try {
+                while (running) {
+                    Task task = inbox.poll();
+                    if (task == null) {
+                        task = ring.poll();
+                    }
+                    if (task == null) {
+                        if (held > 0) {
+                            ledger.releaseStripes(stripes);
+                            held = 0;
+                        }
+                        idle(++idleSpins);
+                        continue;
+                    }
+                    idleSpins = 0;
+                    if (held == 0) {
+                        ledger.holdStripes(stripes);
+                    }
+                    process(task);
+                    processed.incrementAndGet();
+                    if (++held == HOLD_LIMIT || ledger.isWanted(stripes)) {
+                        ledger.releaseStripes(stripes);
+                        held = 0;
+                    }
+                }
+            } finally {
+                if (held > 0) {
+                    ledger.releaseStripes(stripes);
+                }
+            }
+        }
+
+        private void idle(int idleSpins) {
+            if (idleSpins < 100) {
+                return;
+            }
+            if (idleSpins < 200) {
+                Thread.yield();
+                return;
+            }
+            parked = true;
+            if (ring.size() == 0 && inbox.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            parked = false;
+        }
+
+        /**
+         * Apply the step of the transfer which belongs to this shard, its stripes are held
+         */
+        private void process(Task task) {
+            try {
+                if (task.refundFor != null) {
+                    refund(task);
+                    fail(task, task.refundFor);
+                } else if (task.debited) {
+                    credit(task);
+                } else if (shardOf(task.toAccountId) == this) {
+                    ledger.transferHeld(task.fromAccountId, task.toAccountId, task.units);
+                    done(task);
+                } else if (ledger.debitHeld(task.fromAccountId, task.toAccountId, task.units)) {
+                    task.debited = true;
+                    shardOf(task.toAccountId).offer(task);
+                    return;
+                } else {
+                    fail(task, new AccountTransferException("Account doesn't have enough money for transfer"));
+                }
+            } catch (AccountTransferException | RuntimeException ex) {
+                fail(task, ex);
+            }
+        }
+
+        private void offer(Task task) {
+            inbox.offer(task);
+            wakeUp();
+        }
+
+        /**
+         * Fail transfers left after the shard thread stopped, refunding the debited ones.
+         * Their payers may belong to a running shard, so the refund takes the ledger locks.
+         */
+        private void abandon() {
+            for (Task task = inbox.poll(); task != null; task = inbox.poll()) {
+                try {
+                    ledger.refund(task.fromAccountId, task.toAccountId, task.units);
+                } catch (AccountTransferException ex) {
+                    log.error("Can't return " + task.amount + " to account with id: " + task.fromAccountId);
+                }
+                task.result.completeExceptionally(task.refundFor != null ? task.refundFor
+                        : new AccountTransferException("Transfer pipeline is closed"));
+            }
+            for (Task task = ring.poll(); task != null; task = ring.poll()) {
+                task.result.completeExceptionally(new AccountTransferException("Transfer pipeline is closed"));
+            }
+        }
+
+        private void credit(Task task) {
+            try {
+                ledger.addMoneyHeld(TransferJournal.CREDIT, task.toAccountId, task.fromAccountId, task.units);
+                done(task);
+            } catch (AccountTransferException | RuntimeException ex) {
+                task.refundFor = ex;
+                shardOf(task.fromAccountId).offer(task);
+            }
+        }
+
+        /**
+         * Complete the transfer once its journal record is on disk, the shard doesn't wait for it.
+         * Without the journal it's durable already and would complete on the shard.
+         */
+        private void done(Task task) {
+            ledger.whenDurable().thenRunAsync(() -> {
+                task.done();
+                inFlight.decrementAndGet();
+            }, completions);
+        }
+
+        private void fail(Task task, Throwable error) {
+            completions.execute(() -> {
+                task.result.completeExceptionally(error);
+                inFlight.decrementAndGet();
+            });
+        }
+
+        /**
+         * Return the debit of a transfer whose payee couldn't be credited, on the payer's shard
+         */
+        private void refund(Task task) {
+            try {
+                ledger.addMoneyHeld(TransferJournal.REFUND, task.fromAccountId, task.toAccountId, task.units);
+            } catch (AccountTransferException | RuntimeException ex) {
+                log.error("Can't return " + task.amount + " to account with id: " + task.fromAccountId);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.BatchMode;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.TransferRequest;
+import com.technologies.model.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moves money between two accounts.
+ */
+public interface TransferEngine {
+
+    /**
+     * Transfer amount from one account to another
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount {@link BigDecimal}
+     *
+     * @return TransferResult {@link TransferResult}
+     *
+     * @throws AccountTransferException
+     */
+    TransferResult transfer(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException;
+
+    /**
+     * Transfer amount in the calling thread unless the engine has threads of its own
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount {@link BigDecimal}
+     *
+     * @return future of {@link TransferResult}, completed with AccountTransferException on failure
+     */
+    default CompletableFuture<TransferResult> transferAsync(Long fromAccountId, Long toAccountId, BigDecimal amount) {
+        return transferAsync(fromAccountId, toAccountId, amount, Runnable::run);
+    }
+
+    /**
+     * Transfer amount, the future completes when the transfer is applied
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount {@link BigDecimal}
+     * @param executor runs blocking transfers, engines with threads of their own don't use it
+     *
+     * @return future of {@link TransferResult}, completed with AccountTransferException on failure
+     * or RejectedExecutionException when the executor is full
+     */
+    default CompletableFuture<TransferResult> transferAsync(Long fromAccountId, Long toAccountId, BigDecimal amount,
+                                                            Executor executor) {
+        CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(transfer(fromAccountId, toAccountId, amount));
+                } catch (AccountTransferException | RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Transfer many amounts, all in one transaction or skipping failed ones
+     *
+     * @param transfers list of {@link TransferRequest}
+     * @param mode {@link BatchMode}
+     *
+     * @return BatchTransferResult {@link BatchTransferResult}
+     *
+     * @throws AccountTransferException
+     */
+    BatchTransferResult transferBatch(List<TransferRequest> transfers, BatchMode mode) throws AccountTransferException;
+
+}
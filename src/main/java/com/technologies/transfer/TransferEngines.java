@@ -0,0 +1,140 @@
+package com.technologies.transfer;
+
+import com.technologies.config.ConfigLoader;
+import com.technologies.exception.AccountTransferException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+
+/**
+ * Transfer engine of the application, chosen by transfer_mode property.
+ */
+@Slf4j
+public class TransferEngines {
+
+    private static final TransferMode mode =
+            TransferMode.valueOf(ConfigLoader.getAppProperty("transfer_mode", "jdbc").toUpperCase());
+
+    private static final Ledger ledger;
+    private static final TransferEngine engine;
+
+    static {
+        log.info("Transfer mode: " + mode);
+        switch (mode) {
+            case LEDGER:
+                ledger = createLedger(Ledger.DEFAULT_LOCK_STRIPES);
+                engine = new LedgerTransferEngine(ledger);
+                break;
+            case PIPELINE:
+                // a stripe per shard, so a shard holds one lock for all of its accounts
+                ledger = createLedger(pipelineShards());
+                engine = createPipeline(ledger);
+                break;
+            case OPTIMISTIC:
+                ledger = null;
+                engine = new OptimisticTransferEngine();
+                break;
+            default:
+                ledger = null;
+                engine = new JdbcTransferEngine();
+        }
+        if (ledger != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(TransferEngines::close, "ledger-shutdown"));
+        }
+    }
+
+    /**
+     * Get configured transfer engine
+     *
+     * @return TransferEngine {@link TransferEngine}
+     */
+    public static TransferEngine get() {
+        return engine;
+    }
+
+    /**
+     * Get in-memory ledger, null when balances live only in the database
+     *
+     * @return Ledger {@link Ledger}
+     */
+    public static Ledger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Get configured transfer mode
+     *
+     * @return TransferMode {@link TransferMode}
+     */
+    public static TransferMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Check transfer arguments before moving any money
+     *
+     * @param fromAccountId {@link Long}
+     * @param toAccountId {@link Long}
+     * @param amount {@link BigDecimal}
+     *
+     * @throws AccountTransferException
+     */
+    public static void validate(Long fromAccountId, Long toAccountId, BigDecimal amount) throws AccountTransferException {
+        if (fromAccountId == null || toAccountId == null || amount == null) {
+            throw new AccountTransferException("Transfer needs both accounts and amount");
+        }
+        if (fromAccountId.equals(toAccountId)) {
+            throw new AccountTransferException("Can't transfer money to the same account");
+        }
+        if (amount.signum() <= 0) {
+            throw new AccountTransferException("Transfer amount must be positive");
+        }
+        if (amount.stripTrailingZeros().scale() > Money.SCALE) {
+            throw new AccountTransferException("Transfer amount can't have more than "
+                    + Money.SCALE + " decimal places");
+        }
+    }
+
+    private static int pipelineShards() {
+        int shards = ConfigLoader.getIntProperty("pipeline_shards", 0);
+        return shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static TransferEngine createPipeline(Ledger ledger) {
+        ShardedTransferEngine pipeline = new ShardedTransferEngine(ledger, pipelineShards(),
+                ConfigLoader.getIntProperty("pipeline_ring_size", 4096),
+                ConfigLoader.getLongProperty("pipeline_submit_timeout_ms", 1000),
+                ConfigLoader.getIntProperty("pipeline_completion_threads", 2));
+        return pipeline;
+    }
+
+    private static Ledger createLedger(int lockStripes) {
+        Ledger ledger = new Ledger(ConfigLoader.getLongProperty("ledger_flush_interval_ms", 100),
+                ConfigLoader.getIntProperty("ledger_flush_batch_size", 500),
+                ConfigLoader.getIntProperty("ledger_initial_capacity", 65536), lockStripes);
+        try {
+            ledger.load();
+            if (ConfigLoader.getBooleanProperty("journal_enabled", false)) {
+                ledger.attachJournal(new TransferJournal(Paths.get(ConfigLoader.getAppProperty("journal_dir", "journal")),
+                        ConfigLoader.getIntProperty("journal_segment_size_mb", 64) << 20,
+                        ConfigLoader.getLongProperty("journal_group_commit_us", 1000),
+                        ConfigLoader.getIntProperty("journal_group_commit_size", 256)));
+            }
+        } catch (AccountTransferException ex) {
+            throw new IllegalStateException("Can't start ledger transfer mode", ex);
+        }
+        return ledger;
+    }
+
+    /**
+     * Finish transfers in the pipeline before the ledger writes its last balances and snapshot
+     */
+    private static void close() {
+        if (engine instanceof ShardedTransferEngine) {
+            ((ShardedTransferEngine) engine).close();
+        }
+        ledger.close();
+    }
+
+}
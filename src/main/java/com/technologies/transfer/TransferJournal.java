@@ -0,0 +1,533 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Append-only binary journal of ledger changes in memory-mapped segment files.
+ *
+ * Records are copied into the mapped segment under a short lock and become durable
+ * when the committer thread forces the segment to disk. The committer waits up to
+ * the group commit window or until the group commit size is reached, so one force
+ * covers many records. A full segment is forced and a new one is started; after that
+ * the ledger writes a snapshot of all balances and segments covered by the snapshot
+ * are deleted, so replay reads at most one snapshot and a couple of segments. The snapshot
+ * also keeps debits of transfers between shards whose credit came after it, so replay
+ * still finds them when it skips the older debit records.
+ *
+ * Record layout, 40 bytes: sequence, type, checksum, account, other account, amount in units.
+ */
+@Slf4j
+public class TransferJournal {
+
+    static final int TRANSFER = 1;
+    static final int DEBIT = 2;
+    static final int CREDIT = 3;
+    static final int REFUND = 4;
+    static final int BALANCE = 5;
+    static final int REMOVE = 6;
+
+    private static final int RECORD_SIZE = 40;
+    private static final int HEADER_SIZE = 16;
+    private static final int SEGMENT_MAGIC = 0x54524a4c;
+    private static final int SNAPSHOT_MAGIC = 0x54524a53;
+    private static final int VERSION = 1;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final CompletableFuture<Void> DURABLE = CompletableFuture.completedFuture(null);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long groupCommitNanos;
+    private final int groupCommitSize;
+    private final Object appendLock = new Object();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicLong commits = new AtomicLong();
+    private final Thread committer;
+
+    private MappedByteBuffer segment;
+    private volatile long lastSequence;
+    private volatile long durableSequence;
+    private volatile boolean idle;
+    private volatile boolean snapshotDue;
+    private volatile boolean running;
+
+    public TransferJournal(Path directory, int segmentSize, long groupCommitMicros, int groupCommitSize) {
+        this.directory = directory;
+        this.segmentSize = Math.max(segmentSize, HEADER_SIZE + RECORD_SIZE);
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMicros);
+        this.groupCommitSize = Math.max(1, groupCommitSize);
+        this.committer = new Thread(this::commitLoop, "journal-committer");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Rebuild ledger balances from the latest snapshot and the records after it, then open journal for appends
+     *
+     * @param ledger {@link Ledger} loaded from the database
+     *
+     * @throws AccountTransferException
+     */
+    public void replay(Ledger ledger) throws AccountTransferException {
+        try {
+            Files.createDirectories(directory);
+            Map<OpenDebit, Integer> openDebits = new HashMap<>();
+            long snapshotSequence = readSnapshot(ledger, openDebits);
+            long sequence = snapshotSequence;
+            int replayed = 0;
+            for (Path segmentPath : listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX).values()) {
+                MappedByteBuffer buffer;
+                try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC) {
+                    log.warn("Skipping unknown journal file: " + segmentPath);
+                    continue;
+                }
+                buffer.position(HEADER_SIZE);
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    long recordSequence = buffer.getLong();
+                    int type = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    long account = buffer.getLong();
+                    long otherAccount = buffer.getLong();
+                    long units = buffer.getLong();
+                    if (recordSequence == 0 || checksum != checksum(recordSequence, type, account, otherAccount, units)) {
+                        break;
+                    }
+                    sequence = Math.max(sequence, recordSequence);
+                    if (recordSequence > snapshotSequence) {
+                        apply(ledger, type, account, otherAccount, units, openDebits);
+                        replayed++;
+                    }
+                }
+            }
+            // money debited before a crash but never credited goes on to the payee
+            for (Map.Entry<OpenDebit, Integer> debit : openDebits.entrySet()) {
+                for (int i = 0; i < debit.getValue(); i++) {
+                    ledger.restoreDelta(debit.getKey().getToAccountId(), debit.getKey().getUnits());
+                }
+            }
+            log.info("Journal replayed " + replayed + " records after snapshot " + snapshotSequence);
+
+            lastSequence = sequence;
+            durableSequence = sequence;
+            synchronized (appendLock) {
+                startSegment();
+            }
+            running = true;
+            committer.start();
+        } catch (IOException ex) {
+            log.error("Can't replay journal");
+            throw new AccountTransferException("Replay journal: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Append one record
+     *
+     * @return sequence of the record
+     *
+     * @throws AccountTransferException
+     */
+    long append(int type, long account, long otherAccount, long units) throws AccountTransferException {
+        long sequence;
+        synchronized (appendLock) {
+            ensureSpace(1);
+            sequence = write(type, account, otherAccount, units);
+        }
+        wakeCommitter(sequence);
+        return sequence;
+    }
+
+    /**
+     * Append records which all land in the same segment, each record is {type, account, other account, units}
+     *
+     * @return sequence of the last record
+     *
+     * @throws AccountTransferException
+     */
+    long appendAll(List<long[]> records) throws AccountTransferException {
+        if (records.isEmpty()) {
+            return lastSequence;
+        }
+        long sequence;
+        synchronized (appendLock) {
+            ensureSpace(records.size());
+            sequence = 0;
+            for (long[] record : records) {
+                sequence = write((int) record[0], record[1], record[2], record[3]);
+            }
+        }
+        wakeCommitter(sequence);
+        return sequence;
+    }
+
+    /**
+     * Get future completed when the record with the sequence is on disk
+     *
+     * @param sequence long
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> whenDurable(long sequence) {
+        if (sequence <= durableSequence) {
+            return DURABLE;
+        }
+        Waiter waiter = new Waiter(sequence);
+        waiters.add(waiter);
+        if (sequence <= durableSequence) {
+            waiter.future.complete(null);
+        }
+        return waiter.future;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    boolean isSnapshotDue() {
+        return snapshotDue;
+    }
+
+    /**
+     * Get current journal state
+     *
+     * @return JournalStats {@link JournalStats}
+     */
+    public JournalStats getStats() {
+        long commitCount = commits.get();
+        return new JournalStats(lastSequence, durableSequence, commitCount,
+                commitCount == 0 ? 0 : lastSequence / (double) commitCount, waiters.size());
+    }
+
+    /**
+     * Write balances as of the sequence and delete segments which are fully covered by it
+     *
+     * @param sequence last record included into balances
+     * @param balances account id to balance in units
+     * @param openDebits debits not credited nor refunded yet, with their count
+     *
+     * @throws AccountTransferException
+     */
+    void writeSnapshot(long sequence, Map<Long, Long> balances, Map<OpenDebit, Integer> openDebits)
+            throws AccountTransferException {
+        snapshotDue = false;
+        Path temp = directory.resolve(SNAPSHOT_PREFIX + "tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+                output.writeInt(SNAPSHOT_MAGIC);
+                output.writeInt(SNAPSHOT_VERSION);
+                output.writeLong(sequence);
+                output.writeInt(balances.size());
+                for (Map.Entry<Long, Long> balance : balances.entrySet()) {
+                    output.writeLong(balance.getKey());
+                    output.writeLong(balance.getValue());
+                }
+                output.writeInt(openDebits.size());
+                for (Map.Entry<OpenDebit, Integer> debit : openDebits.entrySet()) {
+                    output.writeLong(debit.getKey().getFromAccountId());
+                    output.writeLong(debit.getKey().getToAccountId());
+                    output.writeLong(debit.getKey().getUnits());
+                    output.writeInt(debit.getValue());
+                }
+                output.flush();
+                file.getChannel().force(true);
+            }
+            Files.move(temp, directory.resolve(fileName(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX)),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            for (Map.Entry<Long, Path> snapshot : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).entrySet()) {
+                if (snapshot.getKey() < sequence) {
+                    Files.deleteIfExists(snapshot.getValue());
+                }
+            }
+            List<Map.Entry<Long, Path>> segments = new ArrayList<>(listFiles(SEGMENT_PREFIX, SEGMENT_SUFFIX).entrySet());
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                // records of a segment end right before the first record of the next one
+                if (segments.get(i + 1).getKey() <= sequence + 1) {
+                    Files.deleteIfExists(segments.get(i).getValue());
+                }
+            }
+            log.info("Journal snapshot of " + balances.size() + " accounts at sequence " + sequence);
+        } catch (IOException ex) {
+            log.error("Can't write journal snapshot");
+            throw new AccountTransferException("Journal snapshot: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Force the remaining records and stop the committer
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(committer);
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long write(int type, long account, long otherAccount, long units) {
+        long sequence = lastSequence + 1;
+        segment.putLong(sequence)
+                .putInt(type)
+                .putInt(checksum(sequence, type, account, otherAccount, units))
+                .putLong(account)
+                .putLong(otherAccount)
+                .putLong(units);
+        lastSequence = sequence;
+        return sequence;
+    }
+
+    private void ensureSpace(int records) throws AccountTransferException {
+        if (!running) {
+            throw new AccountTransferException("Transfer journal is closed");
+        }
+        if ((long) records * RECORD_SIZE > segmentSize - HEADER_SIZE) {
+            throw new AccountTransferException("Batch of " + records + " records doesn't fit into journal segment");
+        }
+        if (segment.remaining() < records * RECORD_SIZE) {
+            try {
+                segment.force();
+                durableSequence = lastSequence;
+                completeWaiters(lastSequence);
+                startSegment();
+                snapshotDue = true;
+            } catch (IOException ex) {
+                log.error("Can't start new journal segment");
+                throw new AccountTransferException("Journal segment: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void startSegment() throws IOException {
+        long firstSequence = lastSequence + 1;
+        Path segmentPath = directory.resolve(fileName(SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.putInt(SEGMENT_MAGIC).putInt(VERSION).putLong(firstSequence);
+    }
+
+    private void wakeCommitter(long sequence) {
+        if (idle || sequence - durableSequence >= groupCommitSize) {
+            LockSupport.unpark(committer);
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            if (lastSequence == durableSequence) {
+                if (!running) {
+                    return;
+                }
+                idle = true;
+                if (lastSequence == durableSequence) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            if (running && lastSequence - durableSequence < groupCommitSize) {
+                LockSupport.parkNanos(groupCommitNanos);
+            }
+            MappedByteBuffer buffer;
+            long target;
+            synchronized (appendLock) {
+                buffer = segment;
+                target = lastSequence;
+            }
+            buffer.force();
+            commits.incrementAndGet();
+            if (target > durableSequence) {
+                durableSequence = target;
+            }
+            completeWaiters(target);
+        }
+    }
+
+    private void completeWaiters(long target) {
+        List<Waiter> done = new ArrayList<>();
+        Iterator<Waiter> pending = waiters.iterator();
+        while (pending.hasNext()) {
+            Waiter waiter = pending.next();
+            if (waiter.sequence <= target) {
+                pending.remove();
+                done.add(waiter);
+            }
+        }
+        if (!done.isEmpty()) {
+            // callers continue on their own threads, not on the committer
+            ForkJoinPool.commonPool().execute(() -> done.forEach(waiter -> waiter.future.complete(null)));
+        }
+    }
+
+    /**
+     * Keep count of debits waiting for their credit or refund
+     *
+     * @param openDebits debit to count, changed in place
+     */
+    static void track(Map<OpenDebit, Integer> openDebits, int type, long account, long otherAccount, long units) {
+        switch (type) {
+            case DEBIT:
+                openDebits.merge(new OpenDebit(account, otherAccount, units), 1, Integer::sum);
+                break;
+            case CREDIT:
+                openDebits.computeIfPresent(new OpenDebit(otherAccount, account, units), TransferJournal::settle);
+                break;
+            case REFUND:
+                openDebits.computeIfPresent(new OpenDebit(account, otherAccount, units), TransferJournal::settle);
+                break;
+            default:
+        }
+    }
+
+    private static Integer settle(OpenDebit debit, Integer count) {
+        return count > 1 ? count - 1 : null;
+    }
+
+    private long readSnapshot(Ledger ledger, Map<OpenDebit, Integer> openDebits) throws IOException {
+        TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        try (InputStream file = Files.newInputStream(snapshots.lastEntry().getValue());
+             DataInputStream input = new DataInputStream(new BufferedInputStream(file))) {
+            int version = input.readInt() == SNAPSHOT_MAGIC ? input.readInt() : -1;
+            if (version != VERSION && version != SNAPSHOT_VERSION) {
+                throw new IOException("Unknown snapshot format: " + snapshots.lastEntry().getValue());
+            }
+            long sequence = input.readLong();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                ledger.restoreBalance(input.readLong(), input.readLong());
+            }
+            // snapshots of the first version had no open debits
+            int debits = version == SNAPSHOT_VERSION ? input.readInt() : 0;
+            for (int i = 0; i < debits; i++) {
+                openDebits.put(new OpenDebit(input.readLong(), input.readLong(), input.readLong()), input.readInt());
+            }
+            return sequence;
+        }
+    }
+
+    private void apply(Ledger ledger, int type, long account, long otherAccount, long units,
+                       Map<OpenDebit, Integer> openDebits) throws AccountTransferException {
+        track(openDebits, type, account, otherAccount, units);
+        switch (type) {
+            case TRANSFER:
+                ledger.restoreDelta(account, -units);
+                ledger.restoreDelta(otherAccount, units);
+                break;
+            case DEBIT:
+                ledger.restoreDelta(account, -units);
+                break;
+            case CREDIT:
+            case REFUND:
+                ledger.restoreDelta(account, units);
+                break;
+            case BALANCE:
+                ledger.restoreBalance(account, units);
+                break;
+            case REMOVE:
+                ledger.restoreRemoval(account);
+                break;
+            default:
+                log.warn("Unknown journal record type: " + type);
+        }
+    }
+
+    private TreeMap<Long, Path> listFiles(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    try {
+                        files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), path);
+                    } catch (NumberFormatException ignored) {
+                        // not a journal file
+                    }
+                }
+            });
+        }
+        return files;
+    }
+
+    private static String fileName(String prefix, long sequence, String suffix) {
+        return String.format("%s%020d%s", prefix, sequence, suffix);
+    }
+
+    private static int checksum(long sequence, int type, long account, long otherAccount, long units) {
+        long hash = sequence * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ type) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ account) * 0x94D049BB133111EBL;
+        hash = (hash ^ otherAccount) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ units) * 0xBF58476D1CE4E5B9L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Debit of a transfer between shards, the payee is credited by another record.
+     */
+    @Value
+    static class OpenDebit {
+
+        private long fromAccountId;
+        private long toAccountId;
+        private long units;
+
+    }
+
+    /**
+     * Caller waiting for its record to become durable.
+     */
+    private static class Waiter {
+
+        private final long sequence;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(long sequence) {
+            this.sequence = sequence;
+        }
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.technologies.transfer;
+
+/**
+ * How transfers are executed, selected by transfer_mode property.
+ */
+public enum TransferMode {
+
+    /**
+     * Database transaction with row locks taken in account id order
+     */
+    JDBC,
+
+    /**
+     * Database transaction of two guarded single-statement updates, no row is read before it's written
+     */
+    OPTIMISTIC,
+
+    /**
+     * In-memory ledger with per-account locks and write-behind to the database
+     */
+    LEDGER,
+
+    /**
+     * In-memory ledger partitioned between single-writer shard threads fed by ring buffers
+     */
+    PIPELINE
+
+}
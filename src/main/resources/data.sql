@@ -6,7 +6,8 @@ DROP TABLE IF EXISTS User;
 CREATE TABLE User (userId LONG PRIMARY KEY AUTO_INCREMENT NOT NULL,
                    userName VARCHAR(35) NOT NULL,
                    userPhone VARCHAR(15) NOT NULL,
-                   userEmail VARCHAR(25));
+                   userEmail VARCHAR(25),
+                   version LONG DEFAULT 0 NOT NULL);
 
 CREATE UNIQUE INDEX idx_user on User(userName, userEmail);
 
@@ -20,7 +21,8 @@ DROP TABLE IF EXISTS Account;
 -- Create account table
 CREATE TABLE Account (accountId LONG PRIMARY KEY AUTO_INCREMENT NOT NULL,
                       accountNumber VARCHAR(30),
-                      accountBalance DECIMAL(19,3));
+                      accountBalance DECIMAL(19,3),
+                      version LONG DEFAULT 0 NOT NULL);
 
 CREATE UNIQUE INDEX idx_acc on Account(accountNumber);
 
@@ -0,0 +1,68 @@
+package com.technologies.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for entity cache.
+ */
+public class EntityCacheTest {
+
+    @Test
+    public void testLoadsOnceUntilWritten() throws Exception {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10, 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, () -> "v" + loads.incrementAndGet());
+        cache.get(1L, () -> "v" + loads.incrementAndGet());
+
+        assertTrue(loads.get() == 1);
+
+        cache.beginWrite(1L);
+        cache.endWrite(1L);
+
+        assertTrue("v2".equals(cache.get(1L, () -> "v" + loads.incrementAndGet())));
+        assertTrue(cache.getStats().getHits() == 1);
+        assertTrue(cache.getStats().getInvalidations() == 0);
+    }
+
+    @Test
+    public void testDoesNotKeepValueLoadedDuringWrite() throws Exception {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10, 60000);
+
+        // write commits while the old value is being read
+        cache.get(1L, () -> {
+            cache.beginWrite(1L);
+            cache.endWrite(1L);
+            return "old";
+        });
+
+        assertTrue("new".equals(cache.get(1L, () -> "new")));
+
+        cache.beginWrite(1L);
+
+        assertTrue("during".equals(cache.get(1L, () -> "during")));
+        assertTrue("fresh".equals(cache.get(1L, () -> "fresh")));
+
+        cache.endWrite(1L);
+
+        assertTrue("after".equals(cache.get(1L, () -> "after")));
+    }
+
+    @Test
+    public void testEvictsOldestOverSize() throws Exception {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 2, 60000);
+        for (long id = 1; id <= 3; id++) {
+            long value = id;
+            cache.get(id, () -> "v" + value);
+        }
+
+        assertTrue(cache.getStats().getSize() == 2);
+        assertTrue(cache.getStats().getEvictions() == 1);
+        assertTrue("reloaded".equals(cache.get(1L, () -> "reloaded")));
+    }
+
+}
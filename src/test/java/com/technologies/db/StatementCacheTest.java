@@ -0,0 +1,111 @@
+package com.technologies.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for prepared statements cached by pooled connections.
+ */
+public class StatementCacheTest {
+
+    private static final String SELECT_PARAMETER = "SELECT CAST(? AS INT)";
+
+    private final ConnectionPool pool = new ConnectionPool(PoolSettings.builder()
+            .url("jdbc:h2:mem:statement_cache_test")
+            .user("sa")
+            .password("")
+            .minIdle(0)
+            .maxSize(1)
+            .acquireTimeoutMillis(1000)
+            .idleTimeoutMillis(60000)
+            .housekeepingIntervalMillis(60000)
+            .statementCacheSize(4)
+            .build());
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void testStaleStatementDoesNotTouchNextBorrower() throws SQLException {
+        Connection first = pool.getConnection();
+        PreparedStatement stale = first.prepareStatement(SELECT_PARAMETER);
+        stale.setInt(1, 1);
+        first.close();
+
+        Connection second = pool.getConnection();
+        PreparedStatement current = second.prepareStatement(SELECT_PARAMETER);
+
+        assertTrue(pool.getStats().getStatementCacheHits() == 1);
+
+        current.setInt(1, 42);
+        stale.close();
+
+        assertTrue(stale.isClosed());
+        assertTrue(!current.isClosed());
+        try (ResultSet resultSet = current.executeQuery()) {
+            assertTrue(resultSet.next());
+            assertTrue(resultSet.getInt(1) == 42);
+        }
+        current.close();
+        second.close();
+    }
+
+    @Test
+    public void testStaleStatementFails() throws SQLException {
+        Connection first = pool.getConnection();
+        PreparedStatement stale = first.prepareStatement(SELECT_PARAMETER);
+        first.close();
+
+        Connection second = pool.getConnection();
+        boolean failed = false;
+        try {
+            stale.setInt(1, 1);
+        } catch (SQLException ex) {
+            failed = true;
+        }
+
+        assertTrue(failed);
+        second.close();
+    }
+
+    @Test
+    public void testStatementReportsLeasedConnection() throws SQLException {
+        Connection conn = pool.getConnection();
+        PreparedStatement statement = conn.prepareStatement(SELECT_PARAMETER);
+
+        assertTrue(statement.getConnection() == conn);
+
+        statement.getConnection().close();
+        assertTrue(conn.isClosed());
+        assertTrue(pool.getStats().getActive() == 0);
+    }
+
+    @Test
+    public void testEvictedStatementInUseClosedWithLease() throws SQLException {
+        Connection first = pool.getConnection();
+        PreparedStatement evicted = first.prepareStatement(SELECT_PARAMETER);
+        for (int i = 0; i < 4; i++) {
+            first.prepareStatement("SELECT " + i).close();
+        }
+        first.close();
+
+        Connection second = pool.getConnection();
+        PreparedStatement current = second.prepareStatement(SELECT_PARAMETER);
+
+        assertTrue(pool.getStats().getStatementCacheEvictions() == 1);
+        assertTrue(evicted.isClosed());
+        assertTrue(current != evicted);
+        current.close();
+        second.close();
+    }
+
+}
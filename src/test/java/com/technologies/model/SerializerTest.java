@@ -0,0 +1,78 @@
+package com.technologies.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that hand-written Account and User JSON is the same as bean serialization.
+ */
+public class SerializerTest {
+
+    @Test
+    public void testSameAsBeanSerialization() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        // without annotations @JsonSerialize is ignored and Jackson introspects the beans
+        ObjectMapper beanMapper = new ObjectMapper().configure(MapperFeature.USE_ANNOTATIONS, false);
+
+        assertSame(mapper, beanMapper);
+    }
+
+    @Test
+    public void testSameAsBeanSerializationWithoutNulls() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        ObjectMapper beanMapper = new ObjectMapper().configure(MapperFeature.USE_ANNOTATIONS, false)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        assertSame(mapper, beanMapper);
+    }
+
+    private void assertSame(ObjectMapper mapper, ObjectMapper beanMapper) throws Exception {
+        User owner = user(7L);
+        owner.setUserAccount(new LinkedHashSet<>(Arrays.asList(account(1L, null), account(2L, null))));
+        User withoutAccounts = user(8L);
+        withoutAccounts.setUserAccount(null);
+        Object[] entities = {
+                account(3L, user(9L)),
+                account(4L, withoutAccounts),
+                account(5L, null),
+                new Account(),
+                owner,
+                withoutAccounts,
+                new User(),
+                Arrays.asList(account(6L, null), new Account())
+        };
+
+        for (Object entity : entities) {
+            assertEquals(beanMapper.writeValueAsString(entity), mapper.writeValueAsString(entity));
+        }
+    }
+
+    private static Account account(long id, User user) {
+        Account account = new Account();
+        account.setAccountId(id);
+        account.setAccountNumber("\"N-" + id + "\"");
+        account.setAccountBalance(new BigDecimal("150.050").add(BigDecimal.valueOf(id)));
+        account.setVersion(id * 2);
+        account.setUser(user);
+        return account;
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setUserId(id);
+        user.setUserName("User " + id);
+        user.setUserPhone(null);
+        user.setUserEmail("user_" + id + "@mail.io");
+        user.setVersion(0L);
+        return user;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.technologies.resource;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.User;
+import com.technologies.service.RowHandler;
+
+import java.io.IOException;
+
+/**
+ * Rows of users, failing after the given count of them.
+ */
+class FailingSource implements JsonArrayOutput.RowSource {
+
+    private final int rows;
+    private final boolean fail;
+    boolean closed;
+
+    FailingSource(int rows, boolean fail) {
+        this.rows = rows;
+        this.fail = fail;
+    }
+
+    @Override
+    public void stream(RowHandler<Object> handler) throws AccountTransferException, IOException {
+        for (long i = 1; i <= rows; i++) {
+            User user = new User();
+            user.setUserId(i);
+            user.setUserName("Stream Tester " + i);
+            handler.handle(user);
+        }
+        if (fail) {
+            throw new AccountTransferException("User data: connection lost");
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.technologies.resource;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for results of requests with an Idempotency-Key.
+ */
+public class IdempotencyCacheTest {
+
+    @Test
+    public void testRunningRequestNotEvicted() {
+        IdempotencyCache cache = new IdempotencyCache(1, 60);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<String> running = new CompletableFuture<>();
+
+        cache.execute("transfer:1", "a", () -> {
+            runs.incrementAndGet();
+            return running;
+        });
+        for (int i = 2; i < 10; i++) {
+            cache.execute("transfer:" + i, "a", () -> CompletableFuture.completedFuture("done"));
+        }
+        CompletableFuture<String> repeated = cache.execute("transfer:1", "a", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture("again");
+        });
+        running.complete("first");
+
+        assertTrue(runs.get() == 1);
+        assertTrue("first".equals(repeated.join()));
+        assertTrue(cache.getStats().getEvictions() > 0);
+    }
+
+    @Test
+    public void testExpiredRunningRequestNotRunAgain() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(10, 0);
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<String> running = new CompletableFuture<>();
+
+        cache.execute("transfer:1", "a", () -> {
+            runs.incrementAndGet();
+            return running;
+        });
+        Thread.sleep(1);
+        cache.execute("transfer:1", "a", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture("again");
+        });
+
+        assertTrue(runs.get() == 1);
+    }
+
+    @Test
+    public void testFailedRequestRunsAgain() {
+        IdempotencyCache cache = new IdempotencyCache(10, 60);
+        CompletableFuture<String> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("failed"));
+
+        cache.execute("batch:1", "a", () -> failed);
+        CompletableFuture<String> retried = cache.execute("batch:1", "a",
+                () -> CompletableFuture.completedFuture("retried"));
+
+        assertTrue("retried".equals(retried.join()));
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.technologies.resource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.exception.AccountTransferException;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for rows streamed as a JSON array.
+ */
+public class JsonArrayOutputTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int ROWS = 1000;
+
+    @Test
+    public void testCompleteArray() throws IOException {
+        FailingSource source = new FailingSource(ROWS, false);
+        AtomicReference<Throwable> aborted = new AtomicReference<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        new JsonArrayOutput(source, aborted::set).write(body);
+
+        assertTrue(MAPPER.readTree(body.toByteArray()).size() == ROWS);
+        assertTrue(aborted.get() == null);
+        assertTrue(source.closed);
+    }
+
+    @Test
+    public void testFailingSourceAbortsResponse() throws IOException {
+        // more rows than the generator buffers, so a part of the body is already sent
+        FailingSource source = new FailingSource(ROWS, true);
+        AtomicReference<Throwable> aborted = new AtomicReference<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try {
+            new JsonArrayOutput(source, aborted::set).write(body);
+            assertTrue(false);
+        } catch (WebApplicationException ex) {
+            assertTrue(ex.getCause() instanceof AccountTransferException);
+        }
+
+        // the array is left open, the client doesn't get a shorter valid array
+        assertTrue(body.size() > 0);
+        try {
+            MAPPER.readTree(body.toByteArray());
+            assertTrue(false);
+        } catch (JsonProcessingException ex) {
+            assertTrue(ex.getMessage() != null);
+        }
+        assertTrue(aborted.get() instanceof AccountTransferException);
+        assertTrue(source.closed);
+    }
+
+}
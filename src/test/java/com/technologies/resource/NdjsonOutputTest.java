@@ -0,0 +1,73 @@
+package com.technologies.resource;
+
+import com.technologies.exception.AccountTransferException;
+import org.junit.Test;
+
+import javax.ws.rs.WebApplicationException;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for rows exported as gzipped NDJSON.
+ */
+public class NdjsonOutputTest {
+
+    private static final int ROWS = 1000;
+
+    @Test
+    public void testCompleteExport() throws IOException {
+        FailingSource source = new FailingSource(ROWS, false);
+        AtomicReference<Throwable> aborted = new AtomicReference<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        new NdjsonOutput(source, true, aborted::set).write(body);
+
+        assertTrue(countLines(body) == ROWS);
+        assertTrue(aborted.get() == null);
+        assertTrue(source.closed);
+    }
+
+    @Test
+    public void testFailingSourceAbortsExport() throws IOException {
+        FailingSource source = new FailingSource(ROWS, true);
+        AtomicReference<Throwable> aborted = new AtomicReference<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try {
+            new NdjsonOutput(source, true, aborted::set).write(body);
+            assertTrue(false);
+        } catch (WebApplicationException ex) {
+            assertTrue(ex.getCause() instanceof AccountTransferException);
+        }
+
+        // no gzip trailer, the client can't take the rows sent so far for the whole table
+        try {
+            countLines(body);
+            assertTrue(false);
+        } catch (EOFException ex) {
+            assertTrue(aborted.get() instanceof AccountTransferException);
+        }
+        assertTrue(source.closed);
+    }
+
+    private static int countLines(ByteArrayOutputStream body) throws IOException {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+}
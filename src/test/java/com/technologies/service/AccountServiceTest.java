@@ -1,21 +1,40 @@
 package com.technologies.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.technologies.model.Account;
+import com.technologies.model.BatchTransferResult;
+import com.technologies.model.ImportResult;
+import com.technologies.model.TransferItemResult;
+import com.technologies.model.TransferRequest;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertTrue;
 
@@ -33,6 +52,15 @@ public class AccountServiceTest extends ServiceTest {
     private final String ADD_ACCOUNT = "/account/add";
     private final String DELETE_ACCOUNT = "/account/1";
     private final String TRANSFER_BALANCE = "/account/transfer/1/2/456";
+    private final String TRANSFER_FORWARD = "/account/transfer/3/4/1";
+    private final String TRANSFER_BACKWARD = "/account/transfer/4/3/1";
+    private final String GET_ACCOUNT = "/account/";
+    private final String TRANSFER_BATCH = "/account/transfer/batch";
+    private final String TRANSFER_HALF = "/account/transfer/4/3/0.5";
+    private final String TRANSFER_MORE = "/account/transfer/4/3/0.6";
+    private final String IMPORT_ACCOUNTS = "/account/import";
+    private final String EXPORT_ACCOUNTS = "/account/export";
+    private final String LOOKUP_ACCOUNTS = "/account/lookup";
 
     @Test
     public void testShouldNotGetAccountById() throws IOException, URISyntaxException {
@@ -59,6 +87,35 @@ public class AccountServiceTest extends ServiceTest {
         assertTrue(accounts.length > 0);
     }
 
+    @Test
+    public void testGetAccountsByPages() throws IOException, URISyntaxException {
+        Account[] allAccounts = mapper.readValue(EntityUtils.toString(httpClient.execute(
+                new HttpGet(new URIBuilder(uriBuilder.build()).setPath(GET_ALL_ACCOUNTS).build())).getEntity()), Account[].class);
+        List<Long> pagedIds = new ArrayList<>();
+        URI next = new URIBuilder(uriBuilder.build()).setPath(GET_ALL_ACCOUNTS).setParameter("limit", "2").build();
+        while (next != null) {
+            HttpResponse response = httpClient.execute(new HttpGet(next));
+
+            assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+            Account[] page = mapper.readValue(EntityUtils.toString(response.getEntity()), Account[].class);
+
+            assertTrue(page.length <= 2);
+
+            for (Account account : page) {
+                pagedIds.add(account.getAccountId());
+            }
+            Header link = response.getFirstHeader("Link");
+            next = link == null ? null : URI.create(link.getValue().substring(1, link.getValue().indexOf('>')));
+        }
+
+        assertTrue(allAccounts.length > 2);
+        assertTrue(pagedIds.size() == allAccounts.length);
+        for (int i = 0; i < allAccounts.length; i++) {
+            assertTrue(allAccounts[i].getAccountId().equals(pagedIds.get(i)));
+        }
+    }
+
     @Test
     public void testAddUser() throws IOException, URISyntaxException {
         URI uri = uriBuilder.setPath(ADD_ACCOUNT).build();
@@ -96,6 +153,18 @@ public class AccountServiceTest extends ServiceTest {
         assertTrue(statusCode == 200);
     }
 
+    @Test
+    public void testUpdateWithoutBalance() throws IOException, URISyntaxException {
+        URI uri = uriBuilder.setPath(UPDATE_ACCOUNT).build();
+        HttpPut request = new HttpPut(uri);
+        request.setHeader("Content-type", "application/json");
+        request.setEntity(new StringEntity("{\"accountNumber\":\"235345\"}"));
+        HttpResponse response = httpClient.execute(request);
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        assertTrue(statusCode == 400);
+    }
+
     @Test
     public void testDeleteUser() throws IOException, URISyntaxException {
         URI uri = uriBuilder.setPath(DELETE_ACCOUNT).build();
@@ -110,11 +179,294 @@ public class AccountServiceTest extends ServiceTest {
     @Test
     public void testTransferBalance() throws IOException, URISyntaxException {
         URI uri = uriBuilder.setPath(TRANSFER_BALANCE).build();
-        HttpGet request = new HttpGet(uri);
+        HttpPost request = new HttpPost(uri);
         HttpResponse response = httpClient.execute(request);
         int statusCode = response.getStatusLine().getStatusCode();
 
         assertTrue(statusCode == 200);
     }
 
+    @Test
+    public void testOppositeTransfersDontDeadlock() throws Exception {
+        BigDecimal totalBefore = getBalance(3).add(getBalance(4));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String path = i % 2 == 0 ? TRANSFER_FORWARD : TRANSFER_BACKWARD;
+            statuses.add(executor.submit(() -> {
+                HttpResponse response = httpClient.execute(new HttpPost(new URIBuilder(uriBuilder.build()).setPath(path).build()));
+                EntityUtils.consume(response.getEntity());
+                return response.getStatusLine().getStatusCode();
+            }));
+        }
+        for (Future<Integer> status : statuses) {
+            assertTrue(status.get() == 200);
+        }
+        executor.shutdown();
+
+        assertTrue(totalBefore.compareTo(getBalance(3).add(getBalance(4))) == 0);
+    }
+
+    @Test
+    public void testTransferBatchBestEffort() throws IOException, URISyntaxException {
+        List<TransferRequest> transfers = Arrays.asList(
+                new TransferRequest(3L, 4L, new BigDecimal("1.5")),
+                new TransferRequest(3L, 12345L, BigDecimal.ONE),
+                new TransferRequest(4L, 3L, new BigDecimal("2.5")));
+        URI uri = new URIBuilder(uriBuilder.build()).setPath(TRANSFER_BATCH).setParameter("mode", "best_effort").build();
+        HttpResponse response = postJson(uri, mapper.writeValueAsString(transfers));
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        assertTrue(statusCode == 200);
+
+        BatchTransferResult result = mapper.readValue(EntityUtils.toString(response.getEntity()), BatchTransferResult.class);
+
+        assertTrue(result.getDone() == 2);
+        assertTrue(result.getItems().get(1).getStatus() == TransferItemResult.Status.FAILED);
+    }
+
+    @Test
+    public void testTransferBatchAllOrNothing() throws IOException, URISyntaxException {
+        BigDecimal balanceBefore = getBalance(3);
+        List<TransferRequest> transfers = Arrays.asList(
+                new TransferRequest(3L, 4L, BigDecimal.ONE),
+                new TransferRequest(4L, 12345L, BigDecimal.ONE));
+        URI uri = new URIBuilder(uriBuilder.build()).setPath(TRANSFER_BATCH).build();
+        HttpResponse response = postJson(uri, mapper.writeValueAsString(transfers));
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        assertTrue(statusCode == 409);
+
+        BatchTransferResult result = mapper.readValue(EntityUtils.toString(response.getEntity()), BatchTransferResult.class);
+
+        assertTrue(result.getItems().get(0).getStatus() == TransferItemResult.Status.ROLLED_BACK);
+        assertTrue(balanceBefore.compareTo(getBalance(3)) == 0);
+    }
+
+    @Test
+    public void testTransferWithIdempotencyKey() throws IOException, URISyntaxException {
+        BigDecimal balanceBefore = getBalance(3);
+        String key = "transfer-" + System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            HttpPost request = new HttpPost(new URIBuilder(uriBuilder.build()).setPath(TRANSFER_HALF).build());
+            request.setHeader("Idempotency-Key", key);
+            HttpResponse response = httpClient.execute(request);
+            EntityUtils.consume(response.getEntity());
+
+            assertTrue(response.getStatusLine().getStatusCode() == 200);
+        }
+
+        assertTrue(balanceBefore.add(new BigDecimal("0.5")).compareTo(getBalance(3)) == 0);
+
+        HttpPost otherRequest = new HttpPost(new URIBuilder(uriBuilder.build()).setPath(TRANSFER_MORE).build());
+        otherRequest.setHeader("Idempotency-Key", key);
+        HttpResponse response = httpClient.execute(otherRequest);
+        EntityUtils.consume(response.getEntity());
+
+        assertTrue(response.getStatusLine().getStatusCode() == 422);
+    }
+
+    @Test
+    public void testTransferBatchWithIdempotencyKey() throws IOException, URISyntaxException {
+        BigDecimal balanceBefore = getBalance(3);
+        String key = "batch-" + System.nanoTime();
+        URI uri = new URIBuilder(uriBuilder.build()).setPath(TRANSFER_BATCH).build();
+        // a retry with the amount written differently is the same request
+        for (String amount : new String[]{"1.0", "1.00", "1"}) {
+            HttpPost request = new HttpPost(uri);
+            request.setHeader("Content-type", "application/json");
+            request.setHeader("Idempotency-Key", key);
+            request.setEntity(new StringEntity("[{\"fromAccountId\":4,\"toAccountId\":3,\"amount\":" + amount + "}]"));
+            HttpResponse response = httpClient.execute(request);
+            EntityUtils.consume(response.getEntity());
+
+            assertTrue(response.getStatusLine().getStatusCode() == 200);
+        }
+
+        assertTrue(balanceBefore.add(BigDecimal.ONE).compareTo(getBalance(3)) == 0);
+
+        HttpPost otherRequest = new HttpPost(uri);
+        otherRequest.setHeader("Content-type", "application/json");
+        otherRequest.setHeader("Idempotency-Key", key);
+        otherRequest.setEntity(new StringEntity("[{\"fromAccountId\":4,\"toAccountId\":3,\"amount\":2}]"));
+        HttpResponse response = httpClient.execute(otherRequest);
+        EntityUtils.consume(response.getEntity());
+
+        assertTrue(response.getStatusLine().getStatusCode() == 422);
+    }
+
+    private HttpResponse postJson(URI uri, String json) throws IOException {
+        HttpPost request = new HttpPost(uri);
+        request.setHeader("Content-type", "application/json");
+        request.setEntity(new StringEntity(json));
+        return httpClient.execute(request);
+    }
+
+    private BigDecimal getBalance(long accountId) throws IOException, URISyntaxException {
+        URI uri = new URIBuilder(uriBuilder.build()).setPath(GET_ACCOUNT + accountId).build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+        Account account = mapper.readValue(EntityUtils.toString(response.getEntity()), Account.class);
+        return account.getAccountBalance();
+    }
+
+    @Test
+    public void testImportAccounts() throws IOException, URISyntaxException {
+        HttpPost request = new HttpPost(uriBuilder.setPath(IMPORT_ACCOUNTS).build());
+        request.setEntity(new StringEntity("{\"accountNumber\":\"import-1\",\"accountBalance\":10.5}\n"
+                + "\n"
+                + "{\"accountNumber\":\"import-2\",\"accountBalance\":20}\n"
+                + "{\"accountNumber\":\"import-1\",\"accountBalance\":30}\n"
+                + "{\"accountNumber\":\"import-3\",\"accountBalance\":-1}\n"
+                + "not json\n", ContentType.create("application/x-ndjson")));
+        HttpResponse response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        ImportResult result = mapper.readValue(EntityUtils.toString(response.getEntity()), ImportResult.class);
+
+        assertTrue(result.getImported() == 2);
+        assertTrue(result.getRejected() == 3);
+        assertTrue(result.getRejections().get(0).getLine() == 5);
+        assertTrue(result.getRejections().get(1).getLine() == 6);
+        assertTrue(result.getRejections().get(2).getLine() == 4);
+    }
+
+    @Test
+    public void testShouldNotImportUnknownCsvColumn() throws IOException, URISyntaxException {
+        HttpPost request = new HttpPost(uriBuilder.setPath(IMPORT_ACCOUNTS).build());
+        request.setEntity(new StringEntity("accountNumber,owner\nimport-9,Den\n", ContentType.create("text/csv")));
+        HttpResponse response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 400);
+    }
+
+    @Test
+    public void testExportAccounts() throws IOException, URISyntaxException {
+        Account[] allAccounts = mapper.readValue(EntityUtils.toString(httpClient.execute(
+                new HttpGet(uriBuilder.setPath(GET_ALL_ACCOUNTS).build())).getEntity()), Account[].class);
+        HttpGet request = new HttpGet(uriBuilder.setPath(EXPORT_ACCOUNTS).build());
+        request.setHeader("Accept-Encoding", "identity");
+        HttpResponse response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+        assertTrue(response.getFirstHeader("Content-Type").getValue().startsWith("application/x-ndjson"));
+        assertTrue("Accept-Encoding".equals(response.getFirstHeader("Vary").getValue()));
+
+        String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+
+        assertTrue(lines.length >= allAccounts.length);
+        assertTrue(mapper.readValue(lines[0], Account.class).getAccountId() != null);
+    }
+
+    @Test
+    public void testExportAccountsGzipped() throws IOException, URISyntaxException {
+        try (CloseableHttpClient plainClient = HttpClients.custom().disableContentCompression().build()) {
+            HttpGet request = new HttpGet(uriBuilder.setPath(EXPORT_ACCOUNTS).build());
+            request.setHeader("Accept-Encoding", "gzip");
+            HttpResponse response = plainClient.execute(request);
+
+            assertTrue(response.getStatusLine().getStatusCode() == 200);
+            assertTrue("gzip".equals(response.getFirstHeader("Content-Encoding").getValue()));
+            assertTrue("Accept-Encoding".equals(response.getFirstHeader("Vary").getValue()));
+
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(response.getEntity().getContent()), StandardCharsets.UTF_8))) {
+                assertTrue(mapper.readValue(lines.readLine(), Account.class).getAccountId() != null);
+            }
+        }
+    }
+
+    @Test
+    public void testGetAccountsByIds() throws IOException, URISyntaxException {
+        URI uri = uriBuilder.setPath(GET_ALL_ACCOUNTS).setParameter("ids", "4,12345,3,4").build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        JsonNode result = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(result.get("items").size() == 4);
+        assertTrue(result.get("items").get(0).get("accountId").asLong() == 4);
+        assertTrue(result.get("items").get(1).isNull());
+        assertTrue(result.get("items").get(2).get("accountId").asLong() == 3);
+        assertTrue(result.get("items").get(3).get("accountId").asLong() == 4);
+        assertTrue(result.get("missing").size() == 1);
+        assertTrue(result.get("missing").get(0).asLong() == 12345);
+    }
+
+    @Test
+    public void testLookupAccounts() throws IOException, URISyntaxException {
+        HttpPost request = new HttpPost(uriBuilder.setPath(LOOKUP_ACCOUNTS).build());
+        request.setEntity(new StringEntity("[3, 12345]", ContentType.APPLICATION_JSON));
+        HttpResponse response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        JsonNode result = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(result.get("items").get(0).get("accountId").asLong() == 3);
+        assertTrue(result.get("missing").get(0).asLong() == 12345);
+    }
+
+    @Test
+    public void testShouldNotGetAccountsByWrongIds() throws IOException, URISyntaxException {
+        URI uri = uriBuilder.setPath(GET_ALL_ACCOUNTS).setParameter("ids", "3,abc").build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+
+        assertTrue(response.getStatusLine().getStatusCode() == 400);
+
+        HttpPost request = new HttpPost(uriBuilder.setPath(LOOKUP_ACCOUNTS).removeQuery().build());
+        request.setEntity(new StringEntity("[]", ContentType.APPLICATION_JSON));
+        EntityUtils.consume(response.getEntity());
+        response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 400);
+    }
+
+    @Test
+    public void testGetAccountNotModified() throws IOException, URISyntaxException {
+        HttpResponse response = httpClient.execute(new HttpGet(uriBuilder.setPath(GET_ACCOUNT + 2).build()));
+        String etag = response.getFirstHeader("ETag").getValue();
+        EntityUtils.consume(response.getEntity());
+
+        HttpGet request = new HttpGet(uriBuilder.setPath(GET_ACCOUNT + 2).build());
+        request.setHeader("If-None-Match", etag);
+        response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 304);
+        assertTrue(response.getEntity() == null);
+    }
+
+    @Test
+    public void testUpdateAccountIfMatch() throws IOException, URISyntaxException {
+        HttpResponse response = httpClient.execute(new HttpGet(uriBuilder.setPath(GET_ACCOUNT + 2).build()));
+        String etag = response.getFirstHeader("ETag").getValue();
+        Account account = mapper.readValue(EntityUtils.toString(response.getEntity()), Account.class);
+
+        HttpPut stale = new HttpPut(uriBuilder.setPath(GET_ACCOUNT + 2).build());
+        stale.setHeader("If-Match", "\"12345\"");
+        stale.setEntity(new StringEntity(mapper.writeValueAsString(account), ContentType.APPLICATION_JSON));
+        response = httpClient.execute(stale);
+        EntityUtils.consume(response.getEntity());
+
+        assertTrue(response.getStatusLine().getStatusCode() == 412);
+
+        HttpPut current = new HttpPut(uriBuilder.setPath(GET_ACCOUNT + 2).build());
+        current.setHeader("If-Match", etag);
+        current.setEntity(new StringEntity(mapper.writeValueAsString(account), ContentType.APPLICATION_JSON));
+        response = httpClient.execute(current);
+        EntityUtils.consume(response.getEntity());
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        HttpGet request = new HttpGet(uriBuilder.setPath(GET_ACCOUNT + 2).build());
+        request.setHeader("If-None-Match", etag);
+        response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+        assertTrue(!etag.equals(response.getFirstHeader("ETag").getValue()));
+        assertTrue(mapper.readValue(EntityUtils.toString(response.getEntity()), Account.class).getVersion()
+                == account.getVersion() + 1);
+    }
+
 }
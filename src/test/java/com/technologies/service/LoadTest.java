@@ -0,0 +1,324 @@
+package com.technologies.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.model.Account;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load harness on the test server, skipped unless run with -Dload.test=true.
+ *
+ * Closed loop: load.threads clients share load.rate per second, each sends its next request one
+ * interval after the previous one was sent, or when it returns if it took longer. Latency is
+ * corrected for coordinated omission with that intended interval of a client. Open loop: requests
+ * are started at load.rate per second whatever the server does, latency is measured from the
+ * time the request was due, so requests waiting for a free client count against the server.
+ * A run fails if requests are still running a minute after its end.
+ *
+ * mvn test -Dtest=LoadTest -Dload.test=true -Dload.mode=open -Dload.rate=2000 -Dload.duration_s=30
+ * -Dload.mix=get=60,add=5,update=5,transfer=30 -Dload.accounts=100 -Dload.zipf=1.1
+ */
+public class LoadTest extends ServiceTest {
+
+    private enum Operation { GET, ADD, UPDATE, TRANSFER }
+
+    private final String mode = System.getProperty("load.mode", "closed");
+    private final int threads = Integer.getInteger("load.threads", 16);
+    private final int rate = Integer.getInteger("load.rate", 2000);
+    private final long durationNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("load.duration_s", 30));
+    private final long warmupNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("load.warmup_s", 5));
+    private final int accountCount = Integer.getInteger("load.accounts", 100);
+    private final double zipfExponent = Double.parseDouble(System.getProperty("load.zipf", "1.1"));
+    private final String mix = System.getProperty("load.mix", "get=60,add=5,update=5,transfer=30");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong added = new AtomicLong();
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final Operation[] weighted = new Operation[100];
+
+    private List<Account> accounts;
+    private ZipfGenerator zipf;
+
+    @Test
+    public void testLoad() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("load.test"));
+        if (rate <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("load.rate and load.threads must be positive");
+        }
+        if (durationNanos <= warmupNanos) {
+            throw new IllegalArgumentException("load.duration_s must be longer than load.warmup_s");
+        }
+
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new LongAdder());
+        }
+        parseMix();
+        accounts = createAccounts();
+        zipf = new ZipfGenerator(accounts.size(), zipfExponent);
+
+        long start = System.nanoTime();
+        if ("open".equals(mode)) {
+            runOpenLoop(start);
+        } else {
+            runClosedLoop(start);
+        }
+        // counted requests were due between the warmup and the end, draining the last ones isn't load
+        double seconds = (durationNanos - warmupNanos) / 1e9;
+        double drainSeconds = Math.max(0, System.nanoTime() - start - durationNanos) / 1e9;
+
+        long total = report(seconds, drainSeconds);
+        assertTrue(total > 0);
+    }
+
+    /**
+     * Every client waits for its response before the next request
+     */
+    private void runClosedLoop(long start) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        long intervalNanos = clientIntervalNanos();
+        for (int i = 0; i < threads; i++) {
+            clients.execute(() -> {
+                long now;
+                while ((now = System.nanoTime()) - start < durationNanos) {
+                    send(nextOperation(), now, start);
+                    long wait = now + intervalNanos - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        awaitClients(clients, start);
+    }
+
+    /**
+     * Requests are due at a constant rate, a late request is timed from when it was due
+     */
+    private void runOpenLoop(long start) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        for (long i = 0; ; i++) {
+            long due = start + i * periodNanos;
+            if (due - start >= durationNanos) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = nextOperation();
+            clients.execute(() -> send(operation, due, start));
+        }
+        clients.shutdown();
+        awaitClients(clients, start);
+    }
+
+    /**
+     * Wait for requests still running, a run with requests left over isn't reported
+     */
+    private void awaitClients(ExecutorService clients, long start) throws InterruptedException {
+        long timeout = start + durationNanos + TimeUnit.MINUTES.toNanos(1) - System.nanoTime();
+        if (!clients.awaitTermination(timeout, TimeUnit.NANOSECONDS)) {
+            clients.shutdownNow();
+            throw new AssertionError("Requests still running a minute after the end of the run");
+        }
+    }
+
+    /**
+     * Time between requests a closed loop client intends, load.rate spread over the clients
+     */
+    private long clientIntervalNanos() {
+        return TimeUnit.SECONDS.toNanos(1) * threads / rate;
+    }
+
+    private void send(Operation operation, long due, long start) {
+        boolean failed;
+        try {
+            HttpResponse response = httpClient.execute(request(operation));
+            EntityUtils.consume(response.getEntity());
+            failed = response.getStatusLine().getStatusCode() >= 300;
+        } catch (IOException | URISyntaxException ex) {
+            failed = true;
+        }
+        if (due - start < warmupNanos) {
+            return;
+        }
+        latencies.get(operation).recordValue(System.nanoTime() - due);
+        if (failed) {
+            errors.get(operation).increment();
+        }
+    }
+
+    private HttpUriRequest request(Operation operation) throws URISyntaxException {
+        Account account = accounts.get(zipf.next());
+        URIBuilder uriBuilder = new URIBuilder().setScheme("http").setHost("localhost:8088");
+        switch (operation) {
+            case GET:
+                return new HttpGet(uriBuilder.setPath("/account/" + account.getAccountId()).build());
+            case ADD:
+                HttpPost add = new HttpPost(uriBuilder.setPath("/account/add").build());
+                add.setEntity(json("LOAD-ADD-" + added.incrementAndGet()));
+                return add;
+            case UPDATE:
+                HttpPut update = new HttpPut(uriBuilder.setPath("/account/" + account.getAccountId()).build());
+                update.setEntity(json(account.getAccountNumber()));
+                return update;
+            default:
+                Account other = accounts.get(zipf.next());
+                if (other == account) {
+                    other = accounts.get((accounts.indexOf(account) + 1) % accounts.size());
+                }
+                return new HttpPost(uriBuilder.setPath("/account/transfer/" + account.getAccountId() + "/"
+                        + other.getAccountId() + "/0.01").build());
+        }
+    }
+
+    private StringEntity json(String accountNumber) {
+        return new StringEntity("{\"accountNumber\":\"" + accountNumber + "\",\"accountBalance\":1000000000}",
+                ContentType.APPLICATION_JSON);
+    }
+
+    private Operation nextOperation() {
+        return weighted[ThreadLocalRandom.current().nextInt(weighted.length)];
+    }
+
+    /**
+     * Spread weights like get=60,add=5,update=5,transfer=30 over 100 slots
+     */
+    private void parseMix() {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        int sum = 0;
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+            sum += weight;
+        }
+        int slot = 0;
+        double filled = 0;
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            filled += weight.getValue() * (double) weighted.length / sum;
+            while (slot < Math.round(filled)) {
+                weighted[slot++] = weight.getKey();
+            }
+        }
+        while (slot < weighted.length) {
+            weighted[slot] = weighted[slot - 1];
+            slot++;
+        }
+    }
+
+    /**
+     * Add accounts for the run, rank 0 of the Zipf distribution is the first of them
+     */
+    private List<Account> createAccounts() throws IOException, URISyntaxException {
+        URIBuilder uriBuilder = new URIBuilder().setScheme("http").setHost("localhost:8088");
+        for (int i = 0; i < accountCount; i++) {
+            HttpPost add = new HttpPost(uriBuilder.setPath("/account/add").build());
+            add.setEntity(json("LOAD-" + i));
+            EntityUtils.consume(httpClient.execute(add).getEntity());
+        }
+
+        List<Account> created = new ArrayList<>(accountCount);
+        Long after = null;
+        while (true) {
+            URIBuilder page = new URIBuilder(uriBuilder.setPath("/account").build()).setParameter("limit", "1000");
+            if (after != null) {
+                page.setParameter("after", after.toString());
+            }
+            URI uri = page.build();
+            Account[] accounts = mapper.readValue(EntityUtils.toString(httpClient.execute(new HttpGet(uri)).getEntity()),
+                    Account[].class);
+            if (accounts.length == 0) {
+                break;
+            }
+            for (Account account : accounts) {
+                if (account.getAccountNumber() != null && account.getAccountNumber().startsWith("LOAD-")) {
+                    created.add(account);
+                }
+            }
+            after = accounts[accounts.length - 1].getAccountId();
+        }
+        return created;
+    }
+
+    private long report(double seconds, double drainSeconds) {
+        System.out.printf("%nLoad %s loop, %d clients, %d req/s, %.1f s measured, %.1f s drain, %d accounts, "
+                + "zipf %.2f, mix %s%n", mode, threads, rate, seconds, drainSeconds, accounts.size(), zipfExponent, mix);
+        System.out.printf("%-10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        Histogram all = new Histogram(3);
+        long count = 0;
+        long errorCount = 0;
+        for (Operation operation : Operation.values()) {
+            Histogram recorded = latencies.get(operation);
+            if (recorded.getTotalCount() == 0) {
+                continue;
+            }
+            Histogram histogram = corrected(recorded);
+            all.add(histogram);
+            count += recorded.getTotalCount();
+            errorCount += errors.get(operation).sum();
+            print(operation.name().toLowerCase(), recorded.getTotalCount(), histogram, errors.get(operation).sum(), seconds);
+        }
+        print("all", count, all, errorCount, seconds);
+        return count - errorCount;
+    }
+
+    /**
+     * Closed loop clients don't send while waiting, fill in the requests they would have sent
+     */
+    private Histogram corrected(Histogram histogram) {
+        if ("open".equals(mode) || histogram.getTotalCount() == 0) {
+            return histogram.copy();
+        }
+        return histogram.copyCorrectedForCoordinatedOmission(clientIntervalNanos());
+    }
+
+    /**
+     * Count and rate are of the sent requests, percentiles of the corrected histogram
+     */
+    private void print(String name, long count, Histogram histogram, long errorCount, double seconds) {
+        System.out.printf("%-10s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n", name, count,
+                errorCount, count / seconds, millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+}
@@ -1,19 +1,17 @@
 package com.technologies.service;
 
 import com.technologies.config.DbConfig;
-import com.technologies.resource.AccountResource;
-import com.technologies.resource.UserResource;
+import com.technologies.config.ServerFactory;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.servlet.ServletContextHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
-import org.glassfish.jersey.servlet.ServletContainer;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Common part for tests.
  */
@@ -27,7 +25,7 @@ public abstract class ServiceTest {
 
     @BeforeClass
     public static void setupTest() throws Exception {
-        DbConfig.getConnection();
+        DbConfig.getConnection().close();
         runServer();
         connectionManager.setDefaultMaxPerRoute(80);
         connectionManager.setMaxTotal(100);
@@ -37,6 +35,8 @@ public abstract class ServiceTest {
     @AfterClass
     public static void stopServer() throws Exception {
         server.stop();
+        server = null;
+        connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
         HttpClientUtils.closeQuietly(httpClient);
     }
 
@@ -47,13 +47,7 @@ public abstract class ServiceTest {
      */
     private static void runServer() throws Exception {
         if (server == null) {
-            server = new Server(8088);
-            ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
-            context.setContextPath("/");
-            server.setHandler(context);
-            ServletHolder servletHolder = context.addServlet(ServletContainer.class, "/*");
-            servletHolder.setInitParameter("jersey.config.server.provider.classnames",
-                    UserResource.class.getCanonicalName() + "," + AccountResource.class.getCanonicalName());
+            server = ServerFactory.createServer();
             server.start();
         }
     }
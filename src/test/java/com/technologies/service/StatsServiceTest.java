@@ -0,0 +1,120 @@
+package com.technologies.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for runtime statistics.
+ */
+public class StatsServiceTest extends ServiceTest {
+
+    private URIBuilder uriBuilder = new URIBuilder().setScheme("http").setHost("localhost:8088");
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private final String GET_ACCOUNT = "/account/2";
+    private final String GET_ACCOUNTS_PAGE = "/account";
+    private final String POOL_STATS = "/stats/pool";
+    private final String CACHE_STATS = "/stats/cache";
+    private final String DB_EXECUTOR_STATS = "/stats/db-executor";
+    private final String METRICS = "/metrics";
+
+    @Test
+    public void testGetPoolStats() throws IOException, URISyntaxException {
+        HttpResponse accountResponse = httpClient.execute(new HttpGet(uriBuilder.setPath(GET_ACCOUNT).build()));
+        EntityUtils.consume(accountResponse.getEntity());
+
+        URI uri = uriBuilder.setPath(POOL_STATS).build();
+        HttpGet request = new HttpGet(uri);
+        HttpResponse response = httpClient.execute(request);
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        assertTrue(statusCode == 200);
+
+        JsonNode stats = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(stats.get("acquired").asLong() > 0);
+        assertTrue(stats.get("total").asInt() <= stats.get("maxSize").asInt());
+        assertTrue(stats.get("active").asInt() == 0);
+    }
+
+    @Test
+    public void testReuseCachedStatements() throws IOException, URISyntaxException {
+        for (int i = 0; i < 20; i++) {
+            URI pageUri = new URIBuilder(uriBuilder.build()).setPath(GET_ACCOUNTS_PAGE).setParameter("limit", "2").build();
+            HttpResponse accountResponse = httpClient.execute(new HttpGet(pageUri));
+            EntityUtils.consume(accountResponse.getEntity());
+        }
+
+        URI uri = uriBuilder.setPath(POOL_STATS).build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+        JsonNode stats = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(stats.get("statementCacheHits").asLong() > 0);
+    }
+
+    @Test
+    public void testGetCacheStats() throws IOException, URISyntaxException {
+        for (int i = 0; i < 5; i++) {
+            HttpResponse accountResponse = httpClient.execute(new HttpGet(uriBuilder.setPath(GET_ACCOUNT).build()));
+            EntityUtils.consume(accountResponse.getEntity());
+        }
+
+        URI uri = uriBuilder.setPath(CACHE_STATS).build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+        JsonNode accountCache = mapper.readTree(EntityUtils.toString(response.getEntity())).get(0);
+
+        assertTrue("account".equals(accountCache.get("name").asText()));
+        assertTrue(accountCache.get("hits").asLong() >= 4);
+    }
+
+    @Test
+    public void testGetDbExecutorStats() throws IOException, URISyntaxException {
+        HttpResponse accountResponse = httpClient.execute(new HttpGet(uriBuilder.setPath(GET_ACCOUNT).build()));
+        EntityUtils.consume(accountResponse.getEntity());
+
+        URI uri = uriBuilder.setPath(DB_EXECUTOR_STATS).build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        assertTrue(statusCode == 200);
+
+        JsonNode stats = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(stats.get("threads").asInt() > 0);
+        assertTrue(stats.get("queueCapacity").asInt() == 1000);
+        assertTrue(stats.get("rejected").asLong() == 0);
+    }
+
+    @Test
+    public void testGetMetrics() throws IOException, URISyntaxException {
+        HttpResponse accountResponse = httpClient.execute(new HttpGet(uriBuilder.setPath(GET_ACCOUNT).build()));
+        EntityUtils.consume(accountResponse.getEntity());
+
+        URI uri = uriBuilder.setPath(METRICS).build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        assertTrue(statusCode == 200);
+        assertTrue(response.getFirstHeader("Content-Type").getValue().startsWith("text/plain"));
+
+        String metrics = EntityUtils.toString(response.getEntity());
+
+        assertTrue(metrics.contains("# TYPE http_request_duration_seconds histogram"));
+        assertTrue(metrics.contains("http_requests_total{resource=\"AccountResource.getAccountById\",status=\"200\"}"));
+        assertTrue(metrics.contains("http_request_duration_seconds_bucket{resource=\"AccountResource.getAccountById\",le=\"+Inf\"}"));
+        assertTrue(metrics.contains("sql_query_duration_seconds_count{query=\"get_account_by_id\"}"));
+        assertTrue(metrics.contains("db_connection_acquire_seconds_count "));
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.technologies.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for HTTP/2 cleartext and response compression.
+ */
+public class TransportServiceTest extends ServiceTest {
+
+    private URIBuilder uriBuilder = new URIBuilder().setScheme("http").setHost("localhost:8088");
+    private ObjectMapper mapper = new ObjectMapper();
+
+    private final String GET_ACCOUNT = "/account/3";
+    private final String GET_ALL_ACCOUNTS = "/account";
+    private final String IMPORT_ACCOUNTS = "/account/import";
+    private final String CONNECTION_STATS = "/stats/connections";
+
+    @Test
+    public void testConcurrentCallsShareOneH2cConnection() throws Exception {
+        long connectionsBefore = connectionStats().get("total").asLong();
+        HttpClient h2cClient = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()), null);
+        h2cClient.start();
+        try {
+            URI uri = uriBuilder.setPath(GET_ACCOUNT).build();
+            // the client opens more connections while the first one is connecting
+            assertTrue(h2cClient.GET(uri).getVersion() == HttpVersion.HTTP_2);
+            List<FutureResponseListener> responses = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Request request = h2cClient.newRequest(uri);
+                FutureResponseListener response = new FutureResponseListener(request);
+                request.send(response);
+                responses.add(response);
+            }
+            for (FutureResponseListener response : responses) {
+                ContentResponse content = response.get(10, TimeUnit.SECONDS);
+
+                assertTrue(content.getStatus() == 200);
+                assertTrue(content.getVersion() == HttpVersion.HTTP_2);
+            }
+        } finally {
+            h2cClient.stop();
+        }
+
+        assertTrue(connectionStats().get("total").asLong() - connectionsBefore <= 2);
+    }
+
+    @Test
+    public void testGzipLargeList() throws IOException, URISyntaxException {
+        StringBuilder accounts = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            accounts.append("{\"accountNumber\":\"GZIP-").append(i).append("\",\"accountBalance\":10}\n");
+        }
+        HttpPost importRequest = new HttpPost(uriBuilder.setPath(IMPORT_ACCOUNTS).build());
+        importRequest.setEntity(new StringEntity(accounts.toString(), ContentType.create("application/x-ndjson")));
+        EntityUtils.consume(httpClient.execute(importRequest).getEntity());
+
+        try (CloseableHttpClient plainClient = HttpClients.custom().disableContentCompression().build()) {
+            HttpGet request = new HttpGet(uriBuilder.setPath(GET_ALL_ACCOUNTS).build());
+            request.setHeader("Accept-Encoding", "gzip");
+            HttpResponse response = plainClient.execute(request);
+            EntityUtils.consume(response.getEntity());
+
+            assertTrue(response.getStatusLine().getStatusCode() == 200);
+            assertTrue("gzip".equals(response.getFirstHeader("Content-Encoding").getValue()));
+        }
+    }
+
+    @Test
+    public void testShouldNotGzipSmallBody() throws IOException, URISyntaxException {
+        try (CloseableHttpClient plainClient = HttpClients.custom().disableContentCompression().build()) {
+            HttpGet request = new HttpGet(uriBuilder.setPath(GET_ACCOUNT).build());
+            request.setHeader("Accept-Encoding", "gzip");
+            HttpResponse response = plainClient.execute(request);
+
+            assertTrue(response.getStatusLine().getStatusCode() == 200);
+            assertTrue(response.getFirstHeader("Content-Encoding") == null);
+            assertTrue(mapper.readTree(EntityUtils.toString(response.getEntity())).get("accountId").asLong() == 3);
+        }
+    }
+
+    private JsonNode connectionStats() throws IOException, URISyntaxException {
+        HttpResponse response = httpClient.execute(new HttpGet(uriBuilder.setPath(CONNECTION_STATS).build()));
+        return mapper.readTree(EntityUtils.toString(response.getEntity()));
+    }
+
+}
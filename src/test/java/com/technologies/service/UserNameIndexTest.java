@@ -0,0 +1,106 @@
+package com.technologies.service;
+
+import com.technologies.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for user lookup by name.
+ */
+public class UserNameIndexTest {
+
+    private final UserService userService = new UserService();
+
+    @Before
+    public void loadIndex() throws Exception {
+        userService.loadNameIndex();
+    }
+
+    @Test
+    public void testFindLoadedUser() throws Exception {
+        User user = userService.getUserByName("Den Cook");
+
+        assertTrue(user != null);
+        assertTrue("den_cook@gmail.com".equals(user.getUserEmail()));
+        assertTrue(userService.getUserByName("Nobody") == null);
+    }
+
+    @Test
+    public void testIndexFollowsChanges() throws Exception {
+        User user = new User();
+        user.setUserName("Index Tester");
+        user.setUserPhone("55-555-55");
+        user.setUserEmail("index@tester.com");
+        userService.addUser(user);
+
+        User added = userService.getUserByName("Index Tester");
+
+        assertTrue(added != null);
+        assertTrue(userService.getNameIndexStats().getEstimatedBytes() > 0);
+
+        user.setUserName("Renamed Tester");
+        userService.updateUser(added.getUserId(), user);
+
+        assertTrue(userService.getUserByName("Index Tester") == null);
+        assertTrue(userService.getUserByName("Renamed Tester").getUserId().equals(added.getUserId()));
+
+        userService.deleteUser(added.getUserId());
+
+        assertTrue(userService.getUserByName("Renamed Tester") == null);
+        assertTrue(userService.getNameIndexStats().getLookups() >= 4);
+    }
+
+    @Test
+    public void testDropStaleChanges() {
+        UserNameIndex index = new UserNameIndex();
+        index.put(1, "Newer", 2);
+        index.put(1, "Older", 1);
+
+        assertTrue(index.lookup("Older").length == 0);
+        assertTrue(index.lookup("Newer").length == 1);
+
+        index.remove(1);
+        index.put(1, "Late", 3);
+
+        assertTrue(index.lookup("Newer").length == 0);
+        assertTrue(index.lookup("Late").length == 0);
+        assertTrue(index.getStats().getUsers() == 0);
+    }
+
+    @Test
+    public void testIndexImportedUsersOnCommit() throws Exception {
+        // one commit of 10000 rows and a tail longer than the reader buffers, ids stay below 12345 of the other tests
+        StringBuilder csv = new StringBuilder("userName,userPhone\n");
+        for (int i = 1; i <= 11000; i++) {
+            csv.append("Chunk Import ").append(i).append(",77-777-77\n");
+        }
+        User[] seenBeforeEnd = new User[1];
+        InputStream body = new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                int read = super.read(b, off, len);
+                if (read < 0 && seenBeforeEnd[0] == null) {
+                    try {
+                        seenBeforeEnd[0] = userService.getUserByName("Chunk Import 1");
+                    } catch (Exception ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                }
+                return read;
+            }
+        };
+
+        userService.importUsers(ImportReader.open(body, ImportReader.CSV, User.class, UserService.IMPORT_COLUMNS));
+
+        // the body ends after the first commit but before the last one
+        assertTrue(seenBeforeEnd[0] != null);
+        assertTrue(userService.getUserByName("Chunk Import 11000") != null);
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.technologies.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.technologies.model.ImportResult;
 import com.technologies.model.User;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpDelete;
@@ -8,6 +10,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
 import org.junit.Test;
@@ -31,6 +34,8 @@ public class UserServiceTest extends ServiceTest {
     private final String UPDATE_USER = "/user/1";
     private final String ADD_USER = "/user/add";
     private final String DELETE_USER = "/user/1";
+    private final String IMPORT_USERS = "/user/import";
+    private final String LOOKUP_USERS = "/user/lookup";
 
     @Test
     public void testShouldNotGetUserById() throws IOException, URISyntaxException {
@@ -107,4 +112,79 @@ public class UserServiceTest extends ServiceTest {
         assertTrue(statusCode == 200);
     }
 
+    @Test
+    public void testImportUsersFromCsv() throws IOException, URISyntaxException {
+        HttpPost request = new HttpPost(uriBuilder.setPath(IMPORT_USERS).build());
+        request.setEntity(new StringEntity("userName,userPhone,userEmail\n"
+                + "\"Stan, Import\",1111-111-11,stan@import.com\n"
+                + "Ann Import,2222-222-22,\n"
+                + "No Phone,,nophone@import.com\n"
+                + "Too,Many,Values,Here\n", ContentType.create("text/csv")));
+        HttpResponse response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        ImportResult result = mapper.readValue(EntityUtils.toString(response.getEntity()), ImportResult.class);
+
+        assertTrue(result.getImported() == 2);
+        assertTrue(result.getRejected() == 2);
+        assertTrue(result.getRejections().get(0).getLine() == 4);
+        assertTrue(result.getRejections().get(1).getLine() == 5);
+    }
+
+    @Test
+    public void testGetUsersByIds() throws IOException, URISyntaxException {
+        URI uri = uriBuilder.setPath(GET_ALL_USERS).setParameter("ids", "12345,2").build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        JsonNode result = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(result.get("items").get(0).isNull());
+        assertTrue(result.get("items").get(1).get("userId").asLong() == 2);
+        assertTrue(result.get("missing").get(0).asLong() == 12345);
+    }
+
+    @Test
+    public void testLookupUsers() throws IOException, URISyntaxException {
+        HttpPost request = new HttpPost(uriBuilder.setPath(LOOKUP_USERS).build());
+        request.setEntity(new StringEntity("[2]", ContentType.APPLICATION_JSON));
+        HttpResponse response = httpClient.execute(request);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        JsonNode result = mapper.readTree(EntityUtils.toString(response.getEntity()));
+
+        assertTrue(result.get("items").get(0).get("userId").asLong() == 2);
+        assertTrue(result.get("missing").size() == 0);
+    }
+
+    @Test
+    public void testUpdateUserIfMatch() throws IOException, URISyntaxException {
+        URI uri = uriBuilder.setPath("/user/2").build();
+        HttpResponse response = httpClient.execute(new HttpGet(uri));
+        String etag = response.getFirstHeader("ETag").getValue();
+        User user = mapper.readValue(EntityUtils.toString(response.getEntity()), User.class);
+
+        HttpGet notModified = new HttpGet(uri);
+        notModified.setHeader("If-None-Match", etag);
+        response = httpClient.execute(notModified);
+
+        assertTrue(response.getStatusLine().getStatusCode() == 304);
+
+        HttpPut update = new HttpPut(uri);
+        update.setHeader("If-Match", etag);
+        update.setEntity(new StringEntity(mapper.writeValueAsString(user), ContentType.APPLICATION_JSON));
+        response = httpClient.execute(update);
+        EntityUtils.consume(response.getEntity());
+
+        assertTrue(response.getStatusLine().getStatusCode() == 200);
+
+        response = httpClient.execute(update);
+        EntityUtils.consume(response.getEntity());
+
+        assertTrue(response.getStatusLine().getStatusCode() == 412);
+    }
+
 }
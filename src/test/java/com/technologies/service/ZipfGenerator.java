@@ -0,0 +1,36 @@
+package com.technologies.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent, rank 0 is the hottest.
+ */
+public class ZipfGenerator {
+
+    private final double[] cumulative;
+
+    public ZipfGenerator(int size, double exponent) {
+        cumulative = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    /**
+     * Get next rank
+     *
+     * @return int from 0 to size - 1
+     */
+    public int next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+}
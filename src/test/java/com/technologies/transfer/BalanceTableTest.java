@@ -0,0 +1,102 @@
+package com.technologies.transfer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for off-heap balance table.
+ */
+public class BalanceTableTest {
+
+    @Test
+    public void testInsertFindRemove() {
+        BalanceTable table = new BalanceTable(4);
+        for (long accountId = 1; accountId <= 4; accountId++) {
+            assertTrue(table.insert(accountId, accountId * 1000) >= 0);
+        }
+
+        assertTrue(table.isFull());
+        assertTrue(table.insert(5L, 0) == -1);
+        assertTrue(table.getBalance(table.find(3L)) == 3000);
+        assertTrue(table.remove(3L));
+        assertTrue(table.find(3L) == -1);
+        assertTrue(table.getBalance(table.find(4L)) == 4000);
+        assertTrue(table.size() == 3);
+    }
+
+    @Test
+    public void testSlotsFitIntoBuffer() {
+        int slots = BalanceTable.slotsFor(BalanceTable.MAX_ACCOUNTS);
+
+        assertTrue(slots / 2 >= BalanceTable.MAX_ACCOUNTS);
+        assertTrue((long) slots * BalanceTable.SLOT_BYTES + 8 <= Integer.MAX_VALUE);
+        assertTrue(BalanceTable.slotsFor(4) == 8);
+        assertTrue(BalanceTable.slotsFor(5) == 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShouldNotOverflowBuffer() {
+        // rounds up to 2^27 slots, more than 2 GB
+        BalanceTable.slotsFor(BalanceTable.MAX_ACCOUNTS + 1);
+    }
+
+    @Test
+    public void testCompareAndSetChecksVersion() {
+        BalanceTable table = new BalanceTable(1);
+        int slot = table.insert(7L, 100);
+        long version = table.getVersion(slot);
+
+        assertTrue(table.compareAndSet(slot, version, 50));
+        assertTrue(!table.compareAndSet(slot, version, 75));
+        assertTrue(table.getBalance(slot) == 50);
+        assertTrue(table.add(slot, -60, 0) == Long.MIN_VALUE);
+        assertTrue(table.add(slot, -50, 0) == 0);
+    }
+
+    @Test
+    public void testConcurrentAddsKeepTotal() throws Exception {
+        BalanceTable table = new BalanceTable(2);
+        int first = table.insert(1L, 1000000);
+        int second = table.insert(2L, 1000000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> moves = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            boolean forward = i % 2 == 0;
+            moves.add(executor.submit(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    if (table.add(forward ? first : second, -1, 0) != Long.MIN_VALUE) {
+                        table.add(forward ? second : first, 1, 0);
+                    }
+                }
+            }));
+        }
+        for (Future<?> move : moves) {
+            move.get();
+        }
+        executor.shutdown();
+
+        assertTrue(table.getBalance(first) + table.getBalance(second) == 2000000);
+    }
+
+    @Test
+    public void testCopyToDropsRemoved() {
+        BalanceTable table = new BalanceTable(2);
+        table.insert(1L, 10);
+        table.insert(2L, 20);
+        table.remove(1L);
+        BalanceTable bigger = new BalanceTable(table.getSlots());
+        table.copyTo(bigger);
+
+        assertTrue(bigger.size() == 1);
+        assertTrue(bigger.find(1L) == -1);
+        assertTrue(bigger.getBalance(bigger.find(2L)) == 20);
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.technologies.transfer;
+
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for in-memory ledger.
+ */
+public class LedgerTest {
+
+    private final String GET_BALANCE = "SELECT accountBalance FROM Account WHERE accountId = ? ";
+    private final String ADD_ACCOUNT = "INSERT INTO Account (accountNumber, accountBalance) VALUES ('removed', 10)";
+    private final String DELETE_ACCOUNT = "DELETE FROM Account WHERE accountId = ? ";
+
+    private Ledger ledger;
+
+    @Before
+    public void setupLedger() throws Exception {
+        ledger = new Ledger(60000, 2);
+        ledger.load();
+    }
+
+    @After
+    public void closeLedger() {
+        ledger.close();
+    }
+
+    @Test
+    public void testOppositeTransfersKeepTotal() throws Exception {
+        BigDecimal totalBefore = ledger.getBalance(3L).add(ledger.getBalance(4L));
+        long amount = Money.toUnits(new BigDecimal("0.5"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> transfers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long from = i % 2 == 0 ? 3L : 4L;
+            transfers.add(executor.submit(() -> ledger.transfer(from, 7 - from, amount)));
+        }
+        for (Future<Long> transfer : transfers) {
+            transfer.get();
+        }
+        executor.shutdown();
+
+        assertTrue(totalBefore.compareTo(ledger.getBalance(3L).add(ledger.getBalance(4L))) == 0);
+    }
+
+    @Test
+    public void testFlushWritesLatestBalance() throws Exception {
+        ledger.transfer(4L, 3L, Money.toUnits(new BigDecimal("1.25")));
+
+        assertTrue(ledger.getPendingWrites() == 2);
+
+        ledger.flush();
+
+        assertTrue(ledger.getPendingWrites() == 0);
+        assertTrue(ledger.getBalance(3L).compareTo(readBalance(3L)) == 0);
+        assertTrue(ledger.getBalance(4L).compareTo(readBalance(4L)) == 0);
+    }
+
+    @Test(expected = AccountTransferException.class)
+    public void testShouldNotOverdraw() throws Exception {
+        ledger.transfer(3L, 4L, Money.toUnits(ledger.getBalance(3L).add(BigDecimal.ONE)));
+    }
+
+    @Test
+    public void testGrowsBalanceTable() throws Exception {
+        Ledger small = new Ledger(60000, 2, 1);
+        try {
+            small.load();
+            small.transfer(3L, 4L, Money.toUnits(new BigDecimal("0.5")));
+            small.flush();
+
+            assertTrue(small.getBalance(3L).compareTo(readBalance(3L)) == 0);
+            assertTrue(small.getBalance(4L).compareTo(readBalance(4L)) == 0);
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void testShouldNotTransferToRemovedAccount() throws Exception {
+        long accountId = addAccount();
+        long amount = Money.toUnits(new BigDecimal("0.5"));
+        ledger.transfer(3L, accountId, amount);
+        BigDecimal payerBalance = ledger.getBalance(3L);
+
+        try (Connection conn = DbConfig.getConnection();
+             PreparedStatement prepStatement = conn.prepareStatement(DELETE_ACCOUNT)) {
+            prepStatement.setLong(1, accountId);
+
+            assertTrue(ledger.remove(accountId, () -> prepStatement.executeUpdate() > 0));
+        }
+
+        boolean failed = false;
+        try {
+            ledger.transfer(3L, accountId, amount);
+        } catch (AccountTransferException ex) {
+            failed = ex.getMessage().contains("not found");
+        }
+
+        assertTrue(failed);
+        assertTrue(ledger.getBalance(accountId) == null);
+        assertTrue(ledger.getBalance(3L).compareTo(payerBalance) == 0);
+    }
+
+    @Test
+    public void testTransferDuringUpdateIsKept() throws Exception {
+        long accountId = addAccount();
+        long amount = Money.toUnits(new BigDecimal("0.5"));
+        long expected = Money.toUnits(ledger.getBalance(accountId));
+
+        // the row is written without the account lock, a transfer may land meanwhile
+        assertTrue(ledger.setBalanceIf(accountId, expected, new BigDecimal("20"), () -> {
+            try {
+                ledger.transfer(3L, accountId, amount);
+            } catch (AccountTransferException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return true;
+        }));
+
+        assertTrue(ledger.getBalance(accountId).compareTo(new BigDecimal("20.5")) == 0);
+    }
+
+    @Test
+    public void testPeekDoesNotLoad() throws Exception {
+        long accountId = addAccount();
+
+        assertTrue(ledger.peekBalance(accountId) == null);
+        assertTrue(!ledger.isLoaded(accountId));
+        assertTrue(ledger.getBalance(accountId).compareTo(BigDecimal.TEN) == 0);
+        assertTrue(ledger.peekBalance(accountId).compareTo(BigDecimal.TEN) == 0);
+    }
+
+    private long addAccount() throws Exception {
+        try (Connection conn = DbConfig.getConnection();
+             PreparedStatement prepStatement = conn.prepareStatement(ADD_ACCOUNT, Statement.RETURN_GENERATED_KEYS)) {
+            prepStatement.executeUpdate();
+            try (ResultSet generatedKeys = prepStatement.getGeneratedKeys()) {
+                generatedKeys.next();
+                return generatedKeys.getLong(1);
+            }
+        }
+    }
+
+    private BigDecimal readBalance(long accountId) throws Exception {
+        try (Connection conn = DbConfig.getConnection();
+             PreparedStatement prepStatement = conn.prepareStatement(GET_BALANCE)) {
+            prepStatement.setLong(1, accountId);
+            try (ResultSet resultSet = prepStatement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getBigDecimal(1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for fixed-point money conversions.
+ */
+public class MoneyTest {
+
+    @Test
+    public void testConvertsBothWays() throws Exception {
+        assertTrue(Money.toUnits(new BigDecimal("1.5")) == 1500);
+        assertTrue(Money.toUnits(new BigDecimal("0.125")) == 125);
+        assertTrue(Money.toBigDecimal(1500).compareTo(new BigDecimal("1.5")) == 0);
+        assertTrue(Money.toBigDecimal(-125).compareTo(new BigDecimal("-0.125")) == 0);
+    }
+
+    @Test
+    public void testRoundsLikeBalanceColumn() throws Exception {
+        assertTrue(Money.roundToUnits(new BigDecimal("0.0005")) == 1);
+        assertTrue(Money.roundToUnits(new BigDecimal("0.0004")) == 0);
+        assertTrue(Money.roundToUnits(null) == 0);
+    }
+
+    @Test(expected = AccountTransferException.class)
+    public void testShouldNotTruncateAmount() throws Exception {
+        Money.toUnits(new BigDecimal("0.0001"));
+    }
+
+    @Test(expected = AccountTransferException.class)
+    public void testShouldNotOverflow() throws Exception {
+        Money.add(Long.MAX_VALUE - 1, 2);
+    }
+
+    @Test(expected = AccountTransferException.class)
+    public void testShouldNotOverflowSubtract() throws Exception {
+        Money.subtract(Long.MIN_VALUE + 1, 2);
+    }
+
+}
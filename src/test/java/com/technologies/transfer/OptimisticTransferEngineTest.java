@@ -0,0 +1,84 @@
+package com.technologies.transfer;
+
+import com.technologies.config.DbConfig;
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.TransferResult;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for transfers with guarded updates.
+ */
+public class OptimisticTransferEngineTest {
+
+    private final String GET_BALANCE = "SELECT accountBalance FROM Account WHERE accountId = ? ";
+
+    private final OptimisticTransferEngine engine = new OptimisticTransferEngine();
+
+    @Test
+    public void testOppositeTransfersKeepTotal() throws Exception {
+        BigDecimal totalBefore = readBalance(3L).add(readBalance(4L));
+        BigDecimal amount = new BigDecimal("0.5");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<TransferResult>> transfers = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long from = i % 2 == 0 ? 3L : 4L;
+            transfers.add(executor.submit(() -> engine.transfer(from, 7 - from, amount)));
+        }
+        for (Future<TransferResult> transfer : transfers) {
+            transfer.get();
+        }
+        executor.shutdown();
+
+        assertTrue(totalBefore.compareTo(readBalance(3L).add(readBalance(4L))) == 0);
+    }
+
+    @Test
+    public void testShouldNotOverdraw() throws Exception {
+        BigDecimal balance = readBalance(4L);
+        try {
+            engine.transfer(4L, 3L, balance.add(BigDecimal.ONE));
+            assertTrue(false);
+        } catch (AccountTransferException ex) {
+            assertTrue(ex.getMessage().contains("enough money"));
+        }
+
+        assertTrue(balance.compareTo(readBalance(4L)) == 0);
+    }
+
+    @Test
+    public void testShouldNotCreditMissingAccount() throws Exception {
+        BigDecimal balance = readBalance(3L);
+        try {
+            engine.transfer(3L, 12345L, BigDecimal.ONE);
+            assertTrue(false);
+        } catch (AccountTransferException ex) {
+            assertTrue(ex.getMessage().contains("12345"));
+        }
+
+        assertTrue(balance.compareTo(readBalance(3L)) == 0);
+    }
+
+    private BigDecimal readBalance(long accountId) throws Exception {
+        try (Connection conn = DbConfig.getConnection();
+             PreparedStatement prepStatement = conn.prepareStatement(GET_BALANCE)) {
+            prepStatement.setLong(1, accountId);
+            try (ResultSet resultSet = prepStatement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getBigDecimal(1);
+            }
+        }
+    }
+
+}
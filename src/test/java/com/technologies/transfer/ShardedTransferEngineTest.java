@@ -0,0 +1,170 @@
+package com.technologies.transfer;
+
+import com.technologies.exception.AccountTransferException;
+import com.technologies.model.TransferResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for sharded transfer pipeline.
+ */
+public class ShardedTransferEngineTest {
+
+    private final long[] accountIds = {2L, 3L, 4L};
+
+    private Ledger ledger;
+    private ShardedTransferEngine engine;
+
+    @Before
+    public void setupPipeline() throws Exception {
+        ledger = new Ledger(60000, 100);
+        ledger.load();
+        engine = new ShardedTransferEngine(ledger, 4, 64, 1000);
+    }
+
+    @After
+    public void closePipeline() {
+        engine.close();
+        ledger.close();
+    }
+
+    @Test
+    public void testTransfersBetweenShardsKeepTotal() throws Exception {
+        BigDecimal totalBefore = total();
+        BigDecimal amount = new BigDecimal("0.01");
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            long from = accountIds[i % 3];
+            long to = accountIds[(i + 1 + i / 3 % 2) % 3];
+            results.add(engine.transferAsync(from, to, amount));
+        }
+        for (CompletableFuture<TransferResult> result : results) {
+            result.get();
+        }
+
+        assertTrue(totalBefore.compareTo(total()) == 0);
+    }
+
+    @Test
+    public void testShouldNotOverdraw() throws Exception {
+        BigDecimal balance = ledger.getBalance(2L);
+        try {
+            engine.transferAsync(2L, 3L, balance.add(BigDecimal.ONE)).get();
+            assertTrue(false);
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof AccountTransferException);
+        }
+
+        assertTrue(balance.compareTo(ledger.getBalance(2L)) == 0);
+    }
+
+    @Test
+    public void testCloseFinishesSubmittedTransfers() throws Exception {
+        BigDecimal totalBefore = total();
+        BigDecimal amount = new BigDecimal("0.01");
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            results.add(engine.transferAsync(accountIds[i % 3], accountIds[(i + 1) % 3], amount));
+        }
+        engine.close();
+
+        for (CompletableFuture<TransferResult> result : results) {
+            assertTrue(result.isDone());
+        }
+        assertTrue(totalBefore.compareTo(total()) == 0);
+        try {
+            engine.transferAsync(2L, 3L, amount).get();
+            assertTrue(false);
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof AccountTransferException);
+        }
+    }
+
+    @Test
+    public void testCompleteOffShardThreads() throws Exception {
+        List<CompletableFuture<String>> threads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            threads.add(engine.transferAsync(accountIds[i % 3], accountIds[(i + 1) % 3], new BigDecimal("0.01"))
+                    .thenApply(result -> Thread.currentThread().getName()));
+        }
+
+        for (CompletableFuture<String> thread : threads) {
+            assertTrue(!thread.get().startsWith("transfer-shard-"));
+        }
+    }
+
+    @Test
+    public void testLoadMissingAccountOnExecutor() throws Exception {
+        AtomicInteger executed = new AtomicInteger();
+        Executor executor = command -> {
+            executed.incrementAndGet();
+            command.run();
+        };
+
+        engine.transferAsync(2L, 3L, new BigDecimal("0.01"), executor).get();
+        assertTrue(executed.get() == 0);
+
+        try {
+            engine.transferAsync(2L, 12345678L, new BigDecimal("0.01"), executor).get();
+            assertTrue(false);
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().getMessage().contains("12345678"));
+        }
+        assertTrue(executed.get() == 1);
+    }
+
+    @Test
+    public void testLockedTransfersWaitForShards() throws Exception {
+        BigDecimal totalBefore = total();
+        BigDecimal amount = new BigDecimal("0.01");
+        long units = Money.toUnits(amount);
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            results.add(engine.transferAsync(accountIds[i % 3], accountIds[(i + 1) % 3], amount));
+            // the stripe locks the shards hold while they apply transfers
+            ledger.transfer(accountIds[(i + 1) % 3], accountIds[i % 3], units);
+        }
+        for (CompletableFuture<TransferResult> result : results) {
+            result.get();
+        }
+
+        assertTrue(totalBefore.compareTo(total()) == 0);
+    }
+
+    @Test
+    public void testFailedCreditRefundedOnPayerShard() throws Exception {
+        BigDecimal payerBalance = ledger.getBalance(2L);
+        BigDecimal payeeBalance = ledger.getBalance(3L);
+        ledger.setBalance(3L, Money.toBigDecimal(Long.MAX_VALUE), () -> true);
+        try {
+            engine.transferAsync(2L, 3L, new BigDecimal("0.01")).get();
+            assertTrue(false);
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof AccountTransferException);
+        } finally {
+            ledger.setBalance(3L, payeeBalance, () -> true);
+        }
+
+        assertTrue(payerBalance.compareTo(ledger.getBalance(2L)) == 0);
+    }
+
+    private BigDecimal total() throws AccountTransferException {
+        BigDecimal total = BigDecimal.ZERO;
+        for (long accountId : accountIds) {
+            total = total.add(ledger.getBalance(accountId));
+        }
+        return total;
+    }
+
+}
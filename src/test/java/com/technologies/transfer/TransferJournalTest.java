@@ -0,0 +1,129 @@
+package com.technologies.transfer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for transfer journal replay.
+ */
+public class TransferJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayRestoresBalances() throws Exception {
+        Ledger ledger = new Ledger(60000, 100);
+        ledger.load();
+        TransferJournal journal = new TransferJournal(folder.getRoot().toPath(), 1 << 20, 100, 16);
+        ledger.attachJournal(journal);
+
+        ledger.transfer(3L, 4L, Money.toUnits(new BigDecimal("1.5")));
+        ledger.transfer(4L, 2L, Money.toUnits(new BigDecimal("0.125")));
+        ledger.debit(2L, 3L, Money.toUnits(new BigDecimal("2")));
+        ledger.credit(3L, 2L, Money.toUnits(new BigDecimal("2")));
+        ledger.setBalance(2L, new BigDecimal("42.5"), () -> true);
+        // crash after the debit, replay has to credit the payee
+        ledger.debit(3L, 4L, Money.toUnits(new BigDecimal("1")));
+        ledger.awaitDurable();
+        journal.close();
+
+        Ledger replayed = new Ledger(60000, 100);
+        replayed.load();
+        replayed.attachJournal(new TransferJournal(folder.getRoot().toPath(), 1 << 20, 100, 16));
+
+        assertTrue(replayed.getBalance(3L).compareTo(ledger.getBalance(3L)) == 0);
+        assertTrue(replayed.getBalance(4L).compareTo(ledger.getBalance(4L).add(BigDecimal.ONE)) == 0);
+        assertTrue(replayed.getBalance(2L).compareTo(new BigDecimal("42.5")) == 0);
+
+        ledger.close();
+        replayed.close();
+    }
+
+    @Test
+    public void testSnapshotCompactsSegments() throws Exception {
+        Ledger ledger = new Ledger(60000, 100);
+        ledger.load();
+        // room for ten records per segment
+        TransferJournal journal = new TransferJournal(folder.getRoot().toPath(), 16 + 40 * 10, 100, 16);
+        ledger.attachJournal(journal);
+
+        for (int i = 0; i < 35; i++) {
+            ledger.transfer(i % 2 == 0 ? 3L : 4L, i % 2 == 0 ? 4L : 3L, Money.toUnits(new BigDecimal("0.01")));
+        }
+        assertTrue(journal.isSnapshotDue());
+        ledger.snapshot();
+        for (int i = 0; i < 5; i++) {
+            ledger.transfer(3L, 4L, Money.toUnits(new BigDecimal("0.01")));
+        }
+        ledger.awaitDurable();
+        journal.close();
+
+        File[] segments = folder.getRoot().listFiles((dir, name) -> name.startsWith("journal-"));
+        assertTrue(segments.length <= 2);
+
+        Ledger replayed = new Ledger(60000, 100);
+        replayed.load();
+        replayed.attachJournal(new TransferJournal(folder.getRoot().toPath(), 16 + 40 * 10, 100, 16));
+
+        assertTrue(replayed.getBalance(3L).compareTo(ledger.getBalance(3L)) == 0);
+        assertTrue(replayed.getBalance(4L).compareTo(ledger.getBalance(4L)) == 0);
+
+        ledger.close();
+        replayed.close();
+    }
+
+    @Test
+    public void testSnapshotKeepsOpenDebit() throws Exception {
+        Ledger ledger = new Ledger(60000, 100);
+        ledger.load();
+        TransferJournal journal = new TransferJournal(folder.getRoot().toPath(), 1 << 20, 100, 16);
+        ledger.attachJournal(journal);
+        BigDecimal total = ledger.getBalance(3L).add(ledger.getBalance(4L));
+
+        // snapshot lands between the debit and the credit, the credit is never journaled
+        ledger.debit(3L, 4L, Money.toUnits(new BigDecimal("1")));
+        ledger.snapshot();
+        ledger.awaitDurable();
+        journal.close();
+
+        Ledger replayed = new Ledger(60000, 100);
+        replayed.load();
+        replayed.attachJournal(new TransferJournal(folder.getRoot().toPath(), 1 << 20, 100, 16));
+
+        assertTrue(total.compareTo(replayed.getBalance(3L).add(replayed.getBalance(4L))) == 0);
+        assertTrue(replayed.getBalance(4L).compareTo(ledger.getBalance(4L).add(BigDecimal.ONE)) == 0);
+
+        replayed.close();
+    }
+
+    @Test
+    public void testReplayDoesNotRepeatFlushedChanges() throws Exception {
+        Ledger ledger = new Ledger(60000, 100);
+        ledger.load();
+        TransferJournal journal = new TransferJournal(folder.getRoot().toPath(), 1 << 20, 100, 16);
+        ledger.attachJournal(journal);
+
+        ledger.transfer(3L, 4L, Money.toUnits(new BigDecimal("1.5")));
+        // write-behind already has the transfer in the database when the process dies
+        ledger.flush();
+        ledger.awaitDurable();
+        journal.close();
+
+        Ledger replayed = new Ledger(60000, 100);
+        replayed.load();
+        replayed.attachJournal(new TransferJournal(folder.getRoot().toPath(), 1 << 20, 100, 16));
+
+        assertTrue(replayed.getBalance(3L).compareTo(ledger.getBalance(3L)) == 0);
+        assertTrue(replayed.getBalance(4L).compareTo(ledger.getBalance(4L)) == 0);
+
+        replayed.close();
+    }
+
+}